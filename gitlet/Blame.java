@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Attribution of each line of a file to the commit that last changed it.
+ *  History is walked backwards from the head, carrying the lines not yet
+ *  attributed from each commit to its parents (including the step
+ *  parents of merge commits) by diffing the versions.  Commits in which
+ *  the file's blob is the same as in a parent pass all their lines on
+ *  without any content being read, and those the changed-path filters
+ *  rule out are not even read.  The walk stops once every line has been
+ *  attributed.
+ *  @author Ethan Herrera
+ */
+class Blame {
+
+    /** Lines of one version of the file awaiting attribution at one
+     *  commit. */
+    private static final class Pending {
+        /** Lines LINES (null until needed) of blob BLOB at COMMIT, where
+         *  line i of the blob is final line ORIGIN[i], or -1 if none. */
+        Pending(String commit, String blob, List<String> lines,
+                int[] origin) {
+            _commit = commit;
+            _blob = blob;
+            _lines = lines;
+            _origin = origin;
+        }
+
+        /** The commit. */
+        private final String _commit;
+        /** The file's blob sha1 at the commit. */
+        private final String _blob;
+        /** The lines of the blob, or null if not yet read. */
+        private List<String> _lines;
+        /** Final line numbers of the lines of the blob, or -1. */
+        private final int[] _origin;
+    }
+
+    /** Blame for FILENAME, starting at commit HEADCOMMIT, where the file's
+     *  blob is HEADBLOB. */
+    Blame(String fileName, String headCommit, String headBlob) {
+        _fileName = fileName;
+        _index = Repo.CHANGED_PATHS.load();
+        _diff = new Diff();
+        _diff.setAlgorithm(Diff.Algorithm.HISTOGRAM);
+        _lines = Diff.splitLines(Repo.readBlob(headBlob));
+        int[] origin = new int[_lines.size()];
+        for (int i = 0; i < origin.length; i += 1) {
+            origin[i] = i;
+        }
+        _result = new String[origin.length];
+        _remaining = origin.length;
+        enqueue(new Pending(headCommit, headBlob, _lines, origin));
+    }
+
+    /** Return the lines of the file at the head. */
+    List<String> lines() {
+        return _lines;
+    }
+
+    /** Attribute every line and return, for each line of the head
+     *  version, the sha1 of the commit that last changed it. */
+    String[] run() {
+        while (_remaining > 0 && !_queue.isEmpty()) {
+            Pending item = _queue.poll();
+            if (_waiting.get(item._commit) == item) {
+                _waiting.remove(item._commit);
+            }
+            ChangedPathIndex.Entry entry = _index.get(item._commit);
+            if (entry != null && entry.parent() != null
+                && !entry.mightHaveChanged(_fileName)) {
+                pass(entry.parent(), item._blob, item._lines, item._origin);
+                continue;
+            }
+            Commit commit = Repo.readCommit(item._commit);
+            String[] parents = {commit.getParentHash(), null};
+            if (commit instanceof MergeCommit) {
+                parents[1] = ((MergeCommit) commit).getStepParent();
+            }
+            int[] origin = item._origin.clone();
+            for (String parent : parents) {
+                if (parent != null) {
+                    passToParent(item, parent, origin);
+                }
+            }
+            for (int finalLine : origin) {
+                if (finalLine >= 0) {
+                    _result[finalLine] = item._commit;
+                    _remaining -= 1;
+                }
+            }
+        }
+        return _result;
+    }
+
+    /** Pass the lines of ITEM whose final line numbers are still in
+     *  ORIGIN on to PARENT wherever PARENT has the same lines, removing
+     *  them from ORIGIN. */
+    private void passToParent(Pending item, String parent, int[] origin) {
+        String parentBlob = Repo.blobOf(Repo.readCommit(parent), _fileName);
+        if (parentBlob == null) {
+            return;
+        }
+        if (parentBlob.equals(item._blob)) {
+            pass(parent, parentBlob, item._lines, origin.clone());
+            Arrays.fill(origin, -1);
+            return;
+        }
+        if (item._lines == null) {
+            item._lines = Diff.splitLines(Repo.readBlob(item._blob));
+        }
+        List<String> parentLines =
+            Diff.splitLines(Repo.readBlob(parentBlob));
+        _diff.setSequences(parentLines, item._lines);
+        int[] common = _diff.commonSubsequence();
+        int[] parentOrigin = new int[parentLines.size()];
+        Arrays.fill(parentOrigin, -1);
+        boolean any = false;
+        for (int k = 0; k < common.length; k += 3) {
+            for (int i = 0; i < common[k + 2]; i += 1) {
+                int j = common[k + 1] + i;
+                if (origin[j] >= 0) {
+                    parentOrigin[common[k] + i] = origin[j];
+                    origin[j] = -1;
+                    any = true;
+                }
+            }
+        }
+        if (any) {
+            pass(parent, parentBlob, parentLines, parentOrigin);
+        }
+    }
+
+    /** Queue lines LINES of BLOB, with final line numbers ORIGIN, for
+     *  attribution at COMMIT, combining them with lines already waiting
+     *  there when possible. */
+    private void pass(String commit, String blob, List<String> lines,
+                      int[] origin) {
+        Pending waiting = _waiting.get(commit);
+        if (waiting != null && waiting._blob.equals(blob)) {
+            boolean disjoint = true;
+            for (int i = 0; i < origin.length && disjoint; i += 1) {
+                disjoint = origin[i] < 0 || waiting._origin[i] < 0;
+            }
+            if (disjoint) {
+                for (int i = 0; i < origin.length; i += 1) {
+                    if (origin[i] >= 0) {
+                        waiting._origin[i] = origin[i];
+                    }
+                }
+                return;
+            }
+        }
+        enqueue(new Pending(commit, blob, lines, origin));
+    }
+
+    /** Add ITEM to the work queue. */
+    private void enqueue(Pending item) {
+        _queue.add(item);
+        _waiting.putIfAbsent(item._commit, item);
+    }
+
+    /** The file being blamed. */
+    private final String _fileName;
+    /** The commit graph's changed-path records. */
+    private final HashMap<String, ChangedPathIndex.Entry> _index;
+    /** Line matcher. */
+    private final Diff _diff;
+    /** Lines of the head version. */
+    private final List<String> _lines;
+    /** Attributions so far, by final line number. */
+    private final String[] _result;
+    /** Number of final lines not yet attributed. */
+    private int _remaining;
+    /** Lines awaiting attribution, in the order found. */
+    private final ArrayDeque<Pending> _queue = new ArrayDeque<>();
+    /** Queued items that may still absorb more lines, by commit. */
+    private final HashMap<String, Pending> _waiting = new HashMap<>();
+}
@@ -0,0 +1,267 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+
+/** The file contents of a repository, each named by the sha1 of the
+ *  whole contents.  Files smaller than LARGE_FILE are stored whole in
+ *  the blobs directory.  Larger ones are cut into content-defined chunks,
+ *  each stored once in the chunks directory under its own sha1, and
+ *  recorded as a chunk list in the chunk-lists directory: the total
+ *  size, the number of chunks, then each chunk's sha1 and length.  A new
+ *  version of a large file costs only the chunks it changes, and is read
+ *  back by streaming its chunks in order.
+ *  @author Ethan Herrera
+ */
+class BlobStore {
+
+    /** Size from which files are chunked. */
+    static final long LARGE_FILE = 1 << 20;
+    /** Size of copy buffers. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** The store of the repository whose .gitlet directory is DIR. */
+    BlobStore(File dir) {
+        _whole = new ObjectDirectory(Utils.join(dir, "blobs"));
+        _lists = new ObjectDirectory(Utils.join(dir, "chunk-lists"));
+        _chunks = new ObjectDirectory(Utils.join(dir, "chunks"));
+    }
+
+    /** Return the directory of blobs stored whole. */
+    ObjectDirectory whole() {
+        return _whole;
+    }
+
+    /** Return the directory of chunk lists, named by blob sha1. */
+    ObjectDirectory lists() {
+        return _lists;
+    }
+
+    /** Return the directory of chunks. */
+    ObjectDirectory chunks() {
+        return _chunks;
+    }
+
+    /** Return true iff the blob with sha1 HASH is present. */
+    boolean contains(String hash) {
+        return _whole.contains(hash) || _lists.contains(hash);
+    }
+
+    /** Return the size of the blob with sha1 HASH. */
+    long size(String hash) throws IOException {
+        if (_whole.contains(hash)) {
+            return _whole.file(hash).length();
+        }
+        try (DataInputStream in = openList(hash)) {
+            return in.readLong();
+        }
+    }
+
+    /** Return a stream of the contents of the blob with sha1 HASH. */
+    InputStream open(String hash) throws IOException {
+        if (!_lists.contains(hash)) {
+            return Files.newInputStream(_whole.file(hash).toPath());
+        }
+        List<String> chunks = chunksOf(hash);
+        Iterator<String> iter = chunks.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return iter.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                try {
+                    return Files.newInputStream(
+                        _chunks.file(iter.next()).toPath());
+                } catch (IOException excp) {
+                    throw Utils.error("Missing chunk of blob %s.", hash);
+                }
+            }
+        });
+    }
+
+    /** Return the contents of the blob with sha1 HASH, or null if HASH is
+     *  null. */
+    byte[] read(String hash) {
+        if (hash == null) {
+            return null;
+        }
+        if (!_lists.contains(hash)) {
+            return Utils.readContents(_whole.file(hash));
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream in = open(hash)) {
+            in.transferTo(result);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read blob %s.", hash);
+        }
+        return result.toByteArray();
+    }
+
+    /** Write the contents of the blob with sha1 HASH to TARGET, streaming
+     *  large blobs chunk by chunk. */
+    void copyTo(String hash, File target) {
+        try (InputStream in = open(hash)) {
+            Files.copy(in, target.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s.", target.getName());
+        }
+    }
+
+    /** Store the contents of FILE, returning their sha1. */
+    String store(File file) {
+        try (InputStream in = new BufferedInputStream(
+                 Files.newInputStream(file.toPath()), BUFFER_SIZE)) {
+            return store(in, file.length());
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", file.getName());
+        }
+    }
+
+    /** Store the LENGTH bytes read from IN, returning their sha1. */
+    String store(InputStream in, long length) throws IOException {
+        if (length >= LARGE_FILE) {
+            return storeChunked(in);
+        }
+        File temp = _whole.createTemp();
+        MessageDigest digest = Utils.newSha1();
+        try (OutputStream out = new DigestOutputStream(
+                 Files.newOutputStream(temp.toPath()), digest)) {
+            in.transferTo(out);
+        }
+        String hash = Utils.toHex(digest.digest());
+        install(temp, hash);
+        return hash;
+    }
+
+    /** Return a new, empty temporary file, to be written and then
+     *  installed. */
+    File createTemp() {
+        return _whole.createTemp();
+    }
+
+    /** Move the finished temporary file TEMP into place as the blob with
+     *  sha1 HASH, or discard it if that blob is already present, then
+     *  freshening the blob. */
+    void install(File temp, String hash) {
+        if (freshen(hash)) {
+            temp.delete();
+        } else {
+            _whole.install(temp, hash);
+        }
+    }
+
+    /** Return true iff the blob with sha1 HASH is present, freshening it
+     *  and, if it is chunked, its chunks, as ObjectDirectory.freshen
+     *  does. */
+    private boolean freshen(String hash) {
+        if (_whole.freshen(hash)) {
+            return true;
+        } else if (!_lists.freshen(hash)) {
+            return false;
+        }
+        try {
+            for (String chunk : chunksOf(hash)) {
+                _chunks.freshen(chunk);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read blob %s.", hash);
+        }
+        return true;
+    }
+
+    /** Return the sha1s of the chunks of the blob with sha1 HASH, in
+     *  order, or an empty list if it is stored whole. */
+    List<String> chunksOf(String hash) throws IOException {
+        if (!_lists.contains(hash)) {
+            return Collections.emptyList();
+        }
+        try (DataInputStream in = openList(hash)) {
+            in.readLong();
+            int count = in.readInt();
+            ArrayList<String> result = new ArrayList<>(count);
+            byte[] chunk = new byte[Utils.UID_LENGTH / 2];
+            for (int i = 0; i < count; i += 1) {
+                in.readFully(chunk);
+                in.readInt();
+                result.add(Utils.toHex(chunk));
+            }
+            return result;
+        }
+    }
+
+    /** Store the contents of IN as chunks and a chunk list, returning
+     *  their sha1. */
+    private String storeChunked(InputStream in) throws IOException {
+        MessageDigest whole = Utils.newSha1();
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream entryData = new DataOutputStream(entries);
+        Chunker chunker = new Chunker(in);
+        long size = 0;
+        int count = 0;
+        for (int n = chunker.next(); n >= 0; n = chunker.next()) {
+            byte[] buffer = chunker.buffer();
+            int start = chunker.start();
+            whole.update(buffer, start, n);
+            MessageDigest digest = Utils.newSha1();
+            digest.update(buffer, start, n);
+            String chunk = Utils.toHex(digest.digest());
+            if (!_chunks.freshen(chunk)) {
+                File temp = _chunks.createTemp();
+                try (OutputStream out = Files.newOutputStream(
+                         temp.toPath())) {
+                    out.write(buffer, start, n);
+                }
+                _chunks.install(temp, chunk);
+            }
+            entryData.write(Utils.fromHex(chunk));
+            entryData.writeInt(n);
+            size += n;
+            count += 1;
+        }
+        String hash = Utils.toHex(whole.digest());
+        if (!_whole.freshen(hash) && !_lists.freshen(hash)) {
+            File temp = _lists.createTemp();
+            try (DataOutputStream out = new DataOutputStream(
+                     Files.newOutputStream(temp.toPath()))) {
+                out.writeLong(size);
+                out.writeInt(count);
+                entries.writeTo(out);
+            }
+            _lists.install(temp, hash);
+        }
+        return hash;
+    }
+
+    /** Return a stream of the chunk list of the blob with sha1 HASH. */
+    private DataInputStream openList(String hash) throws IOException {
+        return new DataInputStream(new BufferedInputStream(
+            Files.newInputStream(_lists.file(hash).toPath())));
+    }
+
+    /** Blobs stored whole. */
+    private final ObjectDirectory _whole;
+    /** Chunk lists of chunked blobs. */
+    private final ObjectDirectory _lists;
+    /** Chunks of chunked blobs. */
+    private final ObjectDirectory _chunks;
+}
@@ -0,0 +1,188 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** A repository, or the part of one missing from a receiver, in a single
+ *  file.  A bundle is a text header naming the commits the receiver must
+ *  already hold, each as "-SHA1", and the branches it carries, each as
+ *  "SHA1 NAME", ended by a blank line; then a pack of the objects.  The
+ *  pack's trailing checksum covers the header too.  Bundles are written
+ *  and read front to back, one object at a time.
+ *  @author Ethan Herrera
+ */
+class Bundle implements Closeable {
+
+    /** First line of every bundle. */
+    static final String SIGNATURE = "# gitlet bundle v1";
+    /** Longest header line accepted. */
+    static final int MAX_LINE = 4096;
+
+    /** Write to FILE a bundle of the branches REFS, mapping names to head
+     *  sha1s, for a receiver holding the commits BASES and their history.
+     *  Commits are read from COMMITDIR, trees from TREEDIR and blobs from
+     *  BLOBDIR.  Returns the number of commits bundled. */
+    static int create(File file, Map<String, String> refs,
+                      Collection<String> bases, ObjectDirectory commitDir,
+                      TreeStore treeDir, BlobStore blobDir) {
+        HashSet<ObjectId> known = ancestors(bases, commitDir);
+        PackPlan plan = new PackPlan(commitDir, treeDir, refs.values(),
+            hash -> known.contains(ObjectId.fromHex(hash)), tree -> false,
+            blob -> false);
+        StringBuilder header = new StringBuilder(SIGNATURE).append("\n");
+        for (String base : bases) {
+            header.append("-").append(base).append("\n");
+        }
+        for (Map.Entry<String, String> ref : refs.entrySet()) {
+            header.append(ref.getValue()).append(" ").append(ref.getKey())
+                .append("\n");
+        }
+        header.append("\n");
+        byte[] headerBytes =
+            header.toString().getBytes(StandardCharsets.UTF_8);
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(
+                     Files.newOutputStream(temp.toPath()),
+                     Pack.BUFFER_SIZE)) {
+                MessageDigest digest = Utils.newSha1();
+                digest.update(headerBytes);
+                out.write(headerBytes);
+                Pack.write(out, digest, plan.blobs(), plan.trees(),
+                           plan.commits(), blobDir, treeDir, commitDir);
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            temp.delete();
+            throw Utils.error("Cannot write %s.", file);
+        }
+        return plan.commits().size();
+    }
+
+    /** The bundle in FILE, with its header read. */
+    Bundle(File file) throws IOException {
+        _digest = Utils.newSha1();
+        _in = new BufferedInputStream(Files.newInputStream(file.toPath()),
+                                      Pack.BUFFER_SIZE);
+        _bases = new ArrayList<>();
+        _refs = new TreeMap<>();
+        try {
+            readHeader(new DigestInputStream(_in, _digest));
+        } catch (IOException | GitletException excp) {
+            _in.close();
+            throw excp;
+        }
+    }
+
+    /** Return the commits a receiver must already hold. */
+    List<String> bases() {
+        return _bases;
+    }
+
+    /** Return the branches carried, mapping names to head sha1s. */
+    TreeMap<String, String> refs() {
+        return _refs;
+    }
+
+    /** Install the bundled objects in the repository INTO, checking them
+     *  and the whole bundle against their checksums.  Returns the sha1s
+     *  of the commits received. */
+    List<String> unpack(Remote into) throws IOException {
+        return into.receive(_in, _digest);
+    }
+
+    @Override
+    public void close() throws IOException {
+        _in.close();
+    }
+
+    /** Read the header from IN, which is positioned at its start.  A
+     *  branch whose name Refs does not allow makes the bundle corrupt,
+     *  since its name would be used as a path. */
+    private void readHeader(InputStream in) throws IOException {
+        if (!SIGNATURE.equals(readLine(in))) {
+            throw Utils.error("Not a gitlet bundle.");
+        }
+        for (String line = readLine(in); !line.isEmpty();
+             line = readLine(in)) {
+            if (line.startsWith("-")) {
+                _bases.add(checkHash(line.substring(1)));
+            } else {
+                int space = line.indexOf(' ');
+                if (space < 0) {
+                    throw Utils.error("Not a gitlet bundle.");
+                }
+                String branch = line.substring(space + 1);
+                if (!Refs.isValid(branch)) {
+                    throw Utils.error("Corrupt bundle: bad branch name.");
+                }
+                _refs.put(branch, checkHash(line.substring(0, space)));
+            }
+        }
+    }
+
+    /** Return the sha1s of the commits in BASES and all their ancestors,
+     *  read from COMMITDIR. */
+    private static HashSet<ObjectId> ancestors(Collection<String> bases,
+                                               ObjectDirectory commitDir) {
+        HashSet<ObjectId> result = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>(bases);
+        while (!queue.isEmpty()) {
+            String hash = queue.remove();
+            if (result.add(ObjectId.fromHex(hash))) {
+                queue.addAll(PackPlan.parentsOf(Utils.readObject(
+                    commitDir.file(hash), Commit.class)));
+            }
+        }
+        return result;
+    }
+
+    /** Return the next newline-terminated line of IN, without its
+     *  newline, reading no further. */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int c = in.read(); c != '\n'; c = in.read()) {
+            if (c < 0 || line.size() >= MAX_LINE) {
+                throw Utils.error("Not a gitlet bundle.");
+            }
+            line.write(c);
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Return HASH if it is a well-formed sha1. */
+    private static String checkHash(String hash) {
+        if (!hash.matches("[0-9a-f]{40}")) {
+            throw Utils.error("Not a gitlet bundle.");
+        }
+        return hash;
+    }
+
+    /** The bundle contents, positioned after the header once read. */
+    private final InputStream _in;
+    /** Checksum of everything read so far. */
+    private final MessageDigest _digest;
+    /** Commits the receiver must hold. */
+    private final List<String> _bases;
+    /** Branches carried. */
+    private final TreeMap<String, String> _refs;
+}
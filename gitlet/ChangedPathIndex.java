@@ -0,0 +1,284 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/** The commit graph with a changed-path Bloom filter for each commit.
+ *  Each record holds a commit's parents and a filter of the files that
+ *  differ between it and its first parent, so history can be walked and
+ *  most commits ruled out for a given file without reading any commit.
+ *  Records are appended as commits are made, each under a lock on the
+ *  file so that concurrent commits do not interleave.  Each record is
+ *  framed by its length before and after it and a CRC32 of its body, so
+ *  a reader stops at a record still being appended or torn by a crash,
+ *  and the next append cuts a torn tail off before writing.  Commits
+ *  with no record are read and compared in full.
+ *  @author Ethan Herrera
+ */
+class ChangedPathIndex {
+
+    /** Bits of filter per changed path. */
+    static final int BITS_PER_PATH = 10;
+    /** Hash functions applied to each path. */
+    static final int NUM_HASHES = 7;
+    /** Smallest filter, in bytes. */
+    static final int MIN_BYTES = 8;
+    /** Commits changing more paths than this get no filter, and are
+     *  always taken to have possibly changed any path. */
+    static final int MAX_PATHS = 512;
+    /** Bytes framing each record: its length, and after it a CRC32 and
+     *  its length again. */
+    private static final int FRAME = 12;
+
+    /** One commit's record. */
+    static final class Entry {
+        /** A record for a commit with parents PARENT and STEPPARENT (either
+         *  null) and filter FILTER (null if it matches everything). */
+        Entry(String parent, String stepParent, byte[] filter) {
+            _parent = parent;
+            _stepParent = stepParent;
+            _filter = filter;
+        }
+
+        /** Return the first parent's sha1, or null. */
+        String parent() {
+            return _parent;
+        }
+
+        /** Return the second parent's sha1, or null. */
+        String stepParent() {
+            return _stepParent;
+        }
+
+        /** Return false if PATH certainly did not change in this commit,
+         *  and true if it may have. */
+        boolean mightHaveChanged(String path) {
+            if (_filter == null) {
+                return true;
+            }
+            long bits = 8L * _filter.length;
+            long h = hash(path);
+            int h1 = (int) h, h2 = (int) (h >>> 32);
+            for (int i = 0; i < NUM_HASHES; i += 1) {
+                int bit = (int) (Integer.toUnsignedLong(h1 + i * h2) % bits);
+                if ((_filter[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** First parent. */
+        private final String _parent;
+        /** Second parent. */
+        private final String _stepParent;
+        /** Bloom filter bits, or null. */
+        private final byte[] _filter;
+    }
+
+    /** An index stored in FILE. */
+    ChangedPathIndex(File file) {
+        _file = file;
+    }
+
+    /** Append the record for COMMIT, which changed the paths CHANGED
+     *  relative to its first parent (or to nothing, for a root
+     *  commit). */
+    void add(Commit commit, Collection<String> changed) {
+        String stepParent = commit instanceof MergeCommit
+            ? ((MergeCommit) commit).getStepParent() : null;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(Utils.fromHex(commit.getHash()));
+            writeParent(out, commit.getParentHash());
+            writeParent(out, stepParent);
+            byte[] filter = filterOf(changed);
+            if (filter == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(filter.length);
+                out.write(filter);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error recording commit.");
+        }
+        byte[] body = bytes.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(body.length + FRAME);
+        record.putInt(body.length).put(body).putInt(crc(body, 0, body.length))
+            .putInt(body.length).flip();
+        _file.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(_file.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.READ,
+                 StandardOpenOption.WRITE)) {
+            channel.lock();
+            long end = validEnd(channel);
+            channel.truncate(end);
+            while (record.hasRemaining()) {
+                end += channel.write(record, end);
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s.", _file);
+        }
+    }
+
+    /** Return the length of the records in CHANNEL that are whole.  Only
+     *  the last record is checked unless it is torn. */
+    private static long validEnd(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size >= FRAME) {
+            int length = read(channel, size - 4, 4).getInt();
+            long start = size - FRAME - length;
+            if (length >= 0 && start >= 0
+                && parse(read(channel, start, length + FRAME).array(),
+                         null) == length + FRAME) {
+                return size;
+            }
+        }
+        return parse(read(channel, 0, (int) size).array(), null);
+    }
+
+    /** Return the LENGTH bytes of CHANNEL from POSITION. */
+    private static ByteBuffer read(FileChannel channel, long position,
+                                   int length) throws IOException {
+        ByteBuffer result = ByteBuffer.allocate(length);
+        while (result.hasRemaining()
+               && channel.read(result, position + result.position()) >= 0) {
+            continue;
+        }
+        result.flip();
+        return result;
+    }
+
+    /** Discard all records. */
+    void clear() {
+        _file.delete();
+    }
+
+    /** Return all whole records, keyed by commit sha1.  Returns an empty
+     *  map if nothing has been recorded. */
+    HashMap<String, Entry> load() {
+        HashMap<String, Entry> result = new HashMap<>();
+        if (!_file.isFile()) {
+            return result;
+        }
+        try {
+            parse(Files.readAllBytes(_file.toPath()), result);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", _file);
+        }
+        return result;
+    }
+
+    /** Add the records framed in DATA to RESULT, unless it is null,
+     *  stopping at the first that is torn or corrupt.  Returns the
+     *  length of the records read. */
+    private static int parse(byte[] data, HashMap<String, Entry> result) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int end = 0;
+        while (buffer.remaining() >= FRAME) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining() - FRAME + 4) {
+                break;
+            }
+            int body = buffer.position();
+            buffer.position(body + length);
+            if (buffer.getInt() != crc(data, body, length)
+                || buffer.getInt() != length) {
+                break;
+            }
+            if (result != null) {
+                try (DataInputStream in = new DataInputStream(
+                         new ByteArrayInputStream(data, body, length))) {
+                    byte[] hash = new byte[Utils.UID_LENGTH / 2];
+                    in.readFully(hash);
+                    String parent = readParent(in);
+                    String stepParent = readParent(in);
+                    int filterLength = in.readInt();
+                    byte[] filter = null;
+                    if (filterLength >= 0) {
+                        filter = new byte[filterLength];
+                        in.readFully(filter);
+                    }
+                    result.put(Utils.toHex(hash),
+                               new Entry(parent, stepParent, filter));
+                } catch (IOException excp) {
+                    break;
+                }
+            }
+            end = buffer.position();
+        }
+        return end;
+    }
+
+    /** Return the CRC32 of the LENGTH bytes of DATA from OFFSET. */
+    private static int crc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /** Return a Bloom filter containing PATHS, or null if there are too
+     *  many for a useful one. */
+    static byte[] filterOf(Collection<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            return null;
+        }
+        int bytes = Math.max(MIN_BYTES,
+                             (paths.size() * BITS_PER_PATH + 7) / 8);
+        byte[] filter = new byte[bytes];
+        long bits = 8L * bytes;
+        for (String path : paths) {
+            long h = hash(path);
+            int h1 = (int) h, h2 = (int) (h >>> 32);
+            for (int i = 0; i < NUM_HASHES; i += 1) {
+                int bit = (int) (Integer.toUnsignedLong(h1 + i * h2) % bits);
+                filter[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+        return filter;
+    }
+
+    /** Return a 64-bit FNV-1a hash of PATH's UTF-8 encoding. */
+    private static long hash(String path) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Write PARENT, which may be null, to OUT. */
+    private static void writeParent(DataOutputStream out, String parent)
+        throws IOException {
+        out.writeBoolean(parent != null);
+        if (parent != null) {
+            out.write(Utils.fromHex(parent));
+        }
+    }
+
+    /** Read a parent written by writeParent from IN. */
+    private static String readParent(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        byte[] hash = new byte[Utils.UID_LENGTH / 2];
+        in.readFully(hash);
+        return Utils.toHex(hash);
+    }
+
+    /** Where the records are kept. */
+    private final File _file;
+}
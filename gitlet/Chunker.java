@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/** A content-defined splitter of streams into chunks, after FastCDC.  A
+ *  gear hash is rolled over the input and a chunk ends where its top bits
+ *  are zero, so boundaries follow the content: an edit moves only the
+ *  boundaries near it, and the chunks elsewhere are stored once however
+ *  many versions share them.  Chunks are between MIN_SIZE and MAX_SIZE
+ *  bytes; a stricter mask before AVG_SIZE and a looser one after it keep
+ *  most chunks close to AVG_SIZE.  The input is read through a buffer of
+ *  twice the largest chunk.
+ *  @author Ethan Herrera
+ */
+class Chunker {
+
+    /** Smallest chunk, except at the end of the input. */
+    static final int MIN_SIZE = 16 << 10;
+    /** Target chunk size. */
+    static final int AVG_SIZE = 64 << 10;
+    /** Largest chunk. */
+    static final int MAX_SIZE = 256 << 10;
+    /** Cut mask used before AVG_SIZE: two more bits than AVG_SIZE. */
+    static final long MASK_SMALL = -1L << (64 - 18);
+    /** Cut mask used after AVG_SIZE: two fewer bits than AVG_SIZE. */
+    static final long MASK_LARGE = -1L << (64 - 14);
+
+    /** A chunker reading IN. */
+    Chunker(InputStream in) {
+        _in = in;
+        _buffer = new byte[2 * MAX_SIZE];
+    }
+
+    /** Advance to the next chunk, returning its length, or -1 at the end
+     *  of the input.  The chunk is buffer()[start() .. start() + length),
+     *  valid until the next call. */
+    int next() throws IOException {
+        _start += _length;
+        if (_limit - _start < MAX_SIZE && !_eof) {
+            System.arraycopy(_buffer, _start, _buffer, 0, _limit - _start);
+            _limit -= _start;
+            _start = 0;
+            while (_limit < _buffer.length) {
+                int n = _in.read(_buffer, _limit, _buffer.length - _limit);
+                if (n < 0) {
+                    _eof = true;
+                    break;
+                }
+                _limit += n;
+            }
+        }
+        if (_start == _limit) {
+            _length = 0;
+            return -1;
+        }
+        _length = cut(_buffer, _start, _limit - _start);
+        return _length;
+    }
+
+    /** Return the buffer holding the current chunk. */
+    byte[] buffer() {
+        return _buffer;
+    }
+
+    /** Return the offset of the current chunk in buffer(). */
+    int start() {
+        return _start;
+    }
+
+    /** Return the length of the first chunk of the LEN bytes of DATA
+     *  starting at OFF, which are either all that is left of the input or
+     *  at least MAX_SIZE bytes. */
+    static int cut(byte[] data, int off, int len) {
+        if (len <= MIN_SIZE) {
+            return len;
+        }
+        int end = Math.min(len, MAX_SIZE);
+        int normal = Math.min(end, AVG_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[data[off + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i += 1) {
+            hash = (hash << 1) + GEAR[data[off + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /** Random values added to the hash for each byte value.  They are
+     *  generated from a fixed seed, so every repository cuts the same
+     *  content at the same places. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x6769746c65744344L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            seed += 0x9e3779b97f4a7c15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /** The input. */
+    private final InputStream _in;
+    /** Input read but not yet chunked, from _start to _limit. */
+    private final byte[] _buffer;
+    /** Start of the current chunk. */
+    private int _start;
+    /** Length of the current chunk. */
+    private int _length;
+    /** End of the input read so far. */
+    private int _limit;
+    /** True once the input is exhausted. */
+    private boolean _eof;
+}
@@ -4,9 +4,11 @@ import java.io.File;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
 
 public class Commit implements Serializable {
+    /** Fixed so that adding methods does not orphan stored commits;
+     *  change it only with the fields. */
+    private static final long serialVersionUID = 2747638397630735938L;
     /** sha1. */
     protected final String hash;
     /** parent sha1. */
@@ -17,11 +19,24 @@ public class Commit implements Serializable {
     protected final String message;
     /** the branch the commit belongs to. */
     protected final String branch;
-    /** HashMap mapped String fileName to byte[] contents. */
-    protected final HashMap<String, byte[]> blobs;
+    /** sha1 of the root tree of the files tracked. */
+    protected final String tree;
 
     Commit(String parHash, String inputMessage,
-           HashMap<String, byte[]> referencedBlobs, String belongingBranch) {
+           String rootTree, String belongingBranch) {
+        this(parHash, null, inputMessage, rootTree, belongingBranch);
+    }
+
+    /**
+     * A commit with a second parent, which subclasses record.
+     * @param parHash first parent sha1, or null
+     * @param stepParHash second parent sha1, or null
+     * @param inputMessage commit message
+     * @param rootTree sha1 of the root tree
+     * @param belongingBranch the branch the commit belongs to
+     */
+    protected Commit(String parHash, String stepParHash, String inputMessage,
+                     String rootTree, String belongingBranch) {
         if (parHash == null) {
             parentHash = null;
             dateAndTime = "Wed Dec 31 16:00:00 1969 -0800";
@@ -33,9 +48,21 @@ public class Commit implements Serializable {
             dateAndTime = formatter.format(ldt) + " -0800";
         }
         message = inputMessage;
-        blobs = referencedBlobs;
+        tree = rootTree;
         branch = belongingBranch;
-        hash = MyUtils.commitHash(this);
+        hash = MyUtils.commitHash(tree, new String[] {
+            parentHash, stepParHash }, dateAndTime, branch, message);
+    }
+
+    /**
+     * Recomputes the sha1 of this commit from its contents.
+     * @return true iff it matches the sha1 the commit records
+     */
+    public boolean isIntact() {
+        String stepParent = this instanceof MergeCommit
+                ? ((MergeCommit) this).getStepParent() : null;
+        return hash.equals(MyUtils.commitHash(tree, new String[] {
+            parentHash, stepParent }, dateAndTime, branch, message));
     }
 
     /**
@@ -71,11 +98,11 @@ public class Commit implements Serializable {
     }
 
     /**
-     * get blobs.
-     * @return blobs map
+     * get tree.
+     * @return sha1 of the root tree
      */
-    public HashMap<String, byte[]> getBlobs() {
-        return blobs;
+    public String getTree() {
+        return tree;
     }
 
     /**
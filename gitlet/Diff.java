@@ -11,6 +11,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.InvalidPathException;
 
 import static java.lang.Math.max;
@@ -22,6 +23,30 @@ import static java.lang.Math.max;
  *  @author P. N. Hilfinger */
 public class Diff {
 
+    /** The ways of choosing which lines of the two sequences correspond. */
+    public enum Algorithm {
+        /** A longest common subsequence. */
+        LCS,
+        /** Patience diff, anchored on lines unique to both sequences. */
+        PATIENCE,
+        /** Histogram diff, anchored on the least frequent common lines. */
+        HISTOGRAM
+    }
+
+    /** Bytes examined when deciding whether content is binary. */
+    static final int BINARY_PROBE = 8000;
+
+    /** Use ALGORITHM to match lines in subsequent calls of
+     *  commonSubsequence and diffs. */
+    public void setAlgorithm(Algorithm algorithm) {
+        _algorithm = algorithm;
+    }
+
+    /** Return the current matching algorithm. */
+    public Algorithm algorithm() {
+        return _algorithm;
+    }
+
     /** Set the sequences currently being compared to the contents
      *  of SEQ1 and SEQ2 (as delivered by their iterators). */
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
@@ -166,6 +191,15 @@ public class Diff {
      *  first file (0-based), si2 is the starting position in the second
      *  file, and Li is the length of the subsequence. */
     public int[] commonSubsequence() {
+        checkData();
+        switch (_algorithm) {
+        case PATIENCE:
+            return new PatienceDiff(_lines1, _lines2).commonSubsequence();
+        case HISTOGRAM:
+            return new HistogramDiff(_lines1, _lines2).commonSubsequence();
+        default:
+            break;
+        }
         ArrayDeque<Integer> resultList = new ArrayDeque<>();
 
         int k1, k2;
@@ -224,6 +258,38 @@ public class Diff {
         return toIntArr(result);
     }
 
+    /** Return CONTENTS split into lines, each keeping its terminating
+     *  newline (the last line may lack one), so that concatenating the
+     *  result reproduces CONTENTS exactly. */
+    static List<String> splitLines(byte[] contents) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < contents.length; i += 1) {
+            if (contents[i] == '\n') {
+                result.add(new String(contents, start, i + 1 - start,
+                                      StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        if (start < contents.length) {
+            result.add(new String(contents, start, contents.length - start,
+                                  StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    /** Return true iff CONTENTS looks like binary data rather than text:
+     *  that is, if a NUL byte appears near its start. */
+    static boolean isBinary(byte[] contents) {
+        int n = Math.min(contents.length, BINARY_PROBE);
+        for (int i = 0; i < n; i += 1) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /** Raise an exception if there are no current data sequences for
      *  comparison. */
     private void checkData() {
@@ -260,6 +326,9 @@ public class Diff {
         return _todop <= 0;
     }
 
+    /** The matching algorithm in use. */
+    private Algorithm _algorithm = Algorithm.LCS;
+
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
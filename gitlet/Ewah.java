@@ -0,0 +1,112 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+/** Run-length compression of bitmaps as in EWAH, the Enhanced
+ *  Word-Aligned Hybrid code.  A bitmap is cut into 64-bit words.  Runs of
+ *  clean words, all zeros or all ones, are replaced by a count, and the
+ *  remaining dirty words are kept as they are.  The code is a sequence
+ *  of marker words, each followed by the dirty words it announces: the
+ *  marker's top bit gives the bit of its run, the next 32 bits the
+ *  number of clean words in the run and the low 31 bits the number of
+ *  dirty words that follow.  Reachability bitmaps are mostly long runs
+ *  of set or clear bits, since objects that are reachable together are
+ *  numbered together, so they shrink to a few words.
+ *  @author Ethan Herrera
+ */
+class Ewah {
+
+    /** Largest run of clean words one marker can count. */
+    static final long MAX_RUN = 0xffffffffL;
+    /** Largest number of dirty words one marker can announce. */
+    static final int MAX_DIRTY = 0x7fffffff;
+
+    /** Write the EWAH code of BITS to OUT: the number of marker words,
+     *  then the code itself. */
+    static void write(DataOutputStream out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        int markers = 0;
+        for (int i = 0; i < words.length; markers += 1) {
+            i = nextMarker(words, i, null);
+        }
+        out.writeInt(markers);
+        for (int i = 0; i < words.length;) {
+            i = nextMarker(words, i, out);
+        }
+    }
+
+    /** Return the bitmap whose EWAH code, as written by write, is next in
+     *  IN. */
+    static BitSet read(DataInputStream in) throws IOException {
+        int markers = in.readInt();
+        long[] words = new long[16];
+        int length = 0;
+        for (int m = 0; m < markers; m += 1) {
+            long marker = in.readLong();
+            long run = (marker >>> 31) & MAX_RUN;
+            int dirty = (int) (marker & MAX_DIRTY);
+            if (run + dirty > Integer.MAX_VALUE - length) {
+                throw Utils.error("Corrupt bitmap.");
+            }
+            words = grow(words, length + (int) run + dirty);
+            long clean = marker < 0 ? -1L : 0L;
+            for (long i = 0; i < run; i += 1) {
+                words[length++] = clean;
+            }
+            for (int i = 0; i < dirty; i += 1) {
+                words[length++] = in.readLong();
+            }
+        }
+        long[] result = new long[length];
+        System.arraycopy(words, 0, result, 0, length);
+        return BitSet.valueOf(result);
+    }
+
+    /** Encode the marker word starting at WORDS[FROM] and the dirty words
+     *  it announces to OUT, unless OUT is null.  Returns the index of the
+     *  first word the next marker covers. */
+    private static int nextMarker(long[] words, int from, DataOutputStream out)
+        throws IOException {
+        int i = from;
+        long clean = isClean(words[i]) ? words[i] : 0;
+        long run = 0;
+        while (i < words.length && words[i] == clean && isClean(words[i])
+               && run < MAX_RUN) {
+            run += 1;
+            i += 1;
+        }
+        int dirtyFrom = i;
+        while (i < words.length && !isClean(words[i])
+               && i - dirtyFrom < MAX_DIRTY) {
+            i += 1;
+        }
+        if (out != null) {
+            long marker = (clean == 0 ? 0 : Long.MIN_VALUE) | (run << 31)
+                | (i - dirtyFrom);
+            out.writeLong(marker);
+            for (int j = dirtyFrom; j < i; j += 1) {
+                out.writeLong(words[j]);
+            }
+        }
+        return i;
+    }
+
+    /** Return true iff WORD is all zeros or all ones. */
+    private static boolean isClean(long word) {
+        return word == 0 || word == -1L;
+    }
+
+    /** Return WORDS, or a copy of it, with room for at least LENGTH
+     *  words. */
+    private static long[] grow(long[] words, int length) {
+        if (length <= words.length) {
+            return words;
+        }
+        long[] result = new long[Math.max(length, 2 * words.length)];
+        System.arraycopy(words, 0, result, 0, words.length);
+        return result;
+    }
+}
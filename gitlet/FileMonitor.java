@@ -0,0 +1,317 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/** A long-lived watcher of the working directory, which tells gitlet
+ *  commands what has changed since they last asked.  Changes are
+ *  numbered as the file system reports them.  A query carries a token,
+ *  the monitor instance and change number of the previous answer, and is
+ *  answered with the files changed since, or with "full" if the monitor
+ *  cannot tell: the token is from another instance, or events were lost
+ *  to an overflow since.  To be sure every change made before a query
+ *  is seen, the client creates a cookie file in the state directory
+ *  first, and the monitor answers only once it has seen that cookie.
+ *  The monitor listens on a loopback port recorded in the state
+ *  directory's port file.  It watches every subdirectory of the working
+ *  directory other than .gitlet directories and those .gitletignore
+ *  ignores, and those created while it runs, and names changed files by
+ *  their paths relative to the working directory; a changed directory is
+ *  reported by its own path.  Changes to ignored paths are not recorded.
+ *  When .gitletignore itself changes, the rules are reloaded, newly
+ *  unignored directories are watched, and the next query is answered
+ *  "full".
+ *  @author Ethan Herrera
+ */
+class FileMonitor {
+
+    /** Milliseconds to wait for a query's cookie before answering
+     *  "full". */
+    static final long COOKIE_WAIT = 2000;
+    /** Prefix of cookie file names. */
+    static final String COOKIE = "cookie-";
+
+    /** A monitor of the files in WORKDIR, keeping its port file in
+     *  STATEDIR. */
+    FileMonitor(File workDir, File stateDir) {
+        _workDir = workDir;
+        _stateDir = stateDir;
+        _instance = Long.toHexString(new SecureRandom().nextLong());
+    }
+
+    /** Return the file recording where the monitor for STATEDIR
+     *  listens. */
+    static File portFile(File stateDir) {
+        return Utils.join(stateDir, "port");
+    }
+
+    /** Watch and answer queries until asked to stop.  The port file is
+     *  written whole and then renamed into place, so that no client ever
+     *  reads half of it. */
+    void run() throws IOException {
+        _stateDir.mkdirs();
+        File portFile = portFile(_stateDir);
+        try (WatchService watcher = FileSystems.getDefault()
+                 .newWatchService();
+             ServerSocket server = new ServerSocket(0, 0,
+                 InetAddress.getLoopbackAddress())) {
+            _watcher = watcher;
+            _rules = IgnoreRules.load(_workDir, ignoreCache());
+            register(watcher, _workDir.toPath());
+            _stateDir.toPath().register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE);
+            Thread watching = new Thread(() -> watch(watcher));
+            watching.setDaemon(true);
+            watching.start();
+            File temp = Utils.join(_stateDir, "port.tmp");
+            Utils.writeContents(temp,
+                                server.getLocalPort() + " " + _instance);
+            Files.move(temp.toPath(), portFile.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+            while (true) {
+                try (Socket client = server.accept()) {
+                    if (!answer(client)) {
+                        break;
+                    }
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } finally {
+            portFile.delete();
+        }
+    }
+
+    /** Ask the monitor for STATEDIR, if any, to stop.  Returns true iff
+     *  one was running. */
+    static boolean stop(File stateDir) {
+        File portFile = portFile(stateDir);
+        if (!portFile.isFile()) {
+            return false;
+        }
+        String[] port = Utils.readContentsAsString(portFile).split(" ");
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        Integer.parseInt(port[0]));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(),
+                                               true, StandardCharsets.UTF_8)) {
+            out.println("stop");
+            socket.getInputStream().read();
+            return true;
+        } catch (IOException | NumberFormatException excp) {
+            portFile.delete();
+            return false;
+        }
+    }
+
+    /** Return where the compiled ignore rules are cached. */
+    private File ignoreCache() {
+        return Utils.join(_stateDir, "ignore");
+    }
+
+    /** Have WATCHER watch DIR and the directories beneath it, other than
+     *  .gitlet directories and those the ignore rules ignore. */
+    private void register(WatchService watcher, Path dir) throws IOException {
+        dir.register(watcher,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_DELETE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        File[] files = dir.toFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory() && !file.getName().equals(".gitlet")
+                && !_rules.ignores(relative(file.toPath()), true)) {
+                register(watcher, file.toPath());
+            }
+        }
+    }
+
+    /** Return the path of PATH relative to the working directory, with
+     *  components separated by "/". */
+    private String relative(Path path) {
+        return _workDir.toPath().relativize(path).toString()
+            .replace(File.separatorChar, '/');
+    }
+
+    /** Record the events reported by WATCHER until it is closed.  New
+     *  directories are watched as they appear. */
+    private void watch(WatchService watcher) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            boolean cookies = dir.equals(_stateDir.toPath());
+            synchronized (this) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    _seq += 1;
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        _overflow = _seq;
+                        continue;
+                    }
+                    Path path = dir.resolve((Path) event.context());
+                    String name = path.getFileName().toString();
+                    if (cookies) {
+                        if (name.startsWith(COOKIE)) {
+                            _cookies.add(name);
+                        }
+                        continue;
+                    }
+                    String relative = relative(path);
+                    if (name.equals(".gitlet")
+                        || _rules.excludes(relative)
+                        || _rules.ignores(relative, true)
+                           && Files.isDirectory(path)) {
+                        continue;
+                    }
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                        && Files.isDirectory(path)) {
+                        try {
+                            register(watcher, path);
+                        } catch (IOException excp) {
+                            _overflow = _seq;
+                        }
+                    }
+                    _changed.put(relative, _seq);
+                }
+                if (!key.reset()) {
+                    _overflow = _seq;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /** Answer the request from CLIENT.  Returns false if it asks the
+     *  monitor to stop. */
+    private boolean answer(Socket client) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+            client.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter out = new PrintWriter(client.getOutputStream(), false,
+                                          StandardCharsets.UTF_8);
+        String request = in.readLine();
+        if (request == null) {
+            return true;
+        } else if (request.equals("stop")) {
+            out.println("stopped");
+            out.flush();
+            return false;
+        }
+        String[] words = request.split(" ");
+        if (words.length != 3 || !words[0].equals("query")) {
+            return true;
+        }
+        synchronized (this) {
+            boolean seen = awaitCookie(words[2]);
+            boolean reloaded = reloadRules();
+            out.println(_instance + ":" + _seq);
+            long since = since(words[1]);
+            if (!seen || reloaded || since < 0 || since < _overflow) {
+                out.println("full");
+            } else {
+                out.println("changed");
+                for (Map.Entry<String, Long> e : _changed.entrySet()) {
+                    if (e.getValue() > since) {
+                        out.println(e.getKey());
+                    }
+                }
+            }
+        }
+        out.flush();
+        return true;
+    }
+
+    /** Reload the ignore rules if .gitletignore has changed since they
+     *  were loaded, watching the directories they no longer ignore.
+     *  Returns true iff they were reloaded.  Must be called holding this
+     *  monitor's lock. */
+    private boolean reloadRules() {
+        File file = Utils.join(_workDir, IgnoreRules.FILE_NAME);
+        if (IgnoreRules.stamp(file).equals(_rules.stamp())) {
+            return false;
+        }
+        _rules = IgnoreRules.load(_workDir, ignoreCache());
+        try {
+            register(_watcher, _workDir.toPath());
+        } catch (IOException excp) {
+            _overflow = _seq;
+        }
+        return true;
+    }
+
+    /** Wait until the cookie COOKIE has been seen, or for COOKIE_WAIT
+     *  milliseconds, returning true iff it was seen.  Must be called
+     *  holding this monitor's lock. */
+    private boolean awaitCookie(String cookie) {
+        long deadline = System.currentTimeMillis() + COOKIE_WAIT;
+        while (!_cookies.remove(cookie)) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0) {
+                return false;
+            }
+            try {
+                wait(left);
+            } catch (InterruptedException excp) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the change number in TOKEN, or -1 if it is not a token from
+     *  this instance. */
+    private long since(String token) {
+        int colon = token.indexOf(':');
+        if (colon < 0 || !token.substring(0, colon).equals(_instance)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(colon + 1));
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+    }
+
+    /** The directory watched. */
+    private final File _workDir;
+    /** Where the port file and cookies are kept. */
+    private final File _stateDir;
+    /** Random name of this run of the monitor. */
+    private final String _instance;
+    /** The watch service, once running. */
+    private WatchService _watcher;
+    /** The ignore rules in force. */
+    private IgnoreRules _rules;
+    /** Number of the latest change. */
+    private long _seq;
+    /** Number of the latest overflow. */
+    private long _overflow;
+    /** Number of the latest change to each file name. */
+    private final HashMap<String, Long> _changed = new HashMap<>();
+    /** Cookies seen and not yet claimed. */
+    private final HashSet<String> _cookies = new HashSet<>();
+}
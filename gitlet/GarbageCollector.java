@@ -0,0 +1,220 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Mark-and-sweep collection of commits, trees and blobs that are no
+ *  longer reachable.  Marking walks the commit graph from the given roots
+ *  one generation at a time, reading each generation's commits in
+ *  parallel, and descends into each tree only the first time it is
+ *  reached, so the subtrees commits share are read once.  With
+ *  reachability bitmaps, marking is instead a union of the roots'
+ *  bitmaps, and only commits made since the bitmaps were written are
+ *  read.  Marked objects are held as ObjectIds.
+ *  Collection holds the repository lock shared, so other commands run
+ *  alongside it.  Sweeping deletes only unmarked objects older than a
+ *  grace period, so the objects those commands write survive until the
+ *  refs that name them are published; given a shorter grace period than
+ *  the default, gc holds the lock exclusive instead.
+ *  @author Ethan Herrera
+ */
+class GarbageCollector {
+
+    /** Default age, in milliseconds, below which unreachable objects are
+     *  kept: two weeks. */
+    static final long DEFAULT_GRACE = 14L * 24 * 60 * 60 * 1000;
+
+    /** A collector keeping everything reachable from the commits ROOTS
+     *  and the blobs STAGEDBLOBS. */
+    GarbageCollector(Collection<String> roots,
+                     Collection<String> stagedBlobs) {
+        _roots = new ArrayList<>(roots);
+        _liveCommits = ConcurrentHashMap.newKeySet();
+        _liveTrees = ConcurrentHashMap.newKeySet();
+        _liveBlobs = ConcurrentHashMap.newKeySet();
+        for (String blob : stagedBlobs) {
+            _liveBlobs.add(ObjectId.fromHex(blob));
+        }
+        _unreadable = ConcurrentHashMap.newKeySet();
+        _unreadableTrees = ConcurrentHashMap.newKeySet();
+    }
+
+    /** Mark all reachable commits, trees and blobs.  Commits and trees
+     *  that are missing or cannot be read are marked, but recorded as
+     *  unreadable and not followed further. */
+    void mark() {
+        List<String> frontier = new ArrayList<>();
+        for (String root : _roots) {
+            if (_liveCommits.add(ObjectId.fromHex(root))) {
+                frontier.add(root);
+            }
+        }
+        while (!frontier.isEmpty()) {
+            Set<String> next = ConcurrentHashMap.newKeySet();
+            frontier.parallelStream().forEach(hash -> {
+                Commit commit;
+                try {
+                    commit = Repo.readCommit(hash);
+                } catch (IllegalArgumentException excp) {
+                    _unreadable.add(ObjectId.fromHex(hash));
+                    return;
+                }
+                markTree(commit.getTree());
+                visit(commit.getParentHash(), next);
+                if (commit instanceof MergeCommit) {
+                    visit(((MergeCommit) commit).getStepParent(), next);
+                }
+            });
+            frontier = new ArrayList<>(next);
+        }
+    }
+
+    /** Mark TREE and everything beneath it, unless it has been marked
+     *  before. */
+    private void markTree(String tree) {
+        if (!_liveTrees.add(ObjectId.fromHex(tree))) {
+            return;
+        }
+        Collection<TreeStore.Entry> entries;
+        try {
+            entries = Repo.TREES.read(tree).values();
+        } catch (IllegalArgumentException | GitletException excp) {
+            _unreadableTrees.add(ObjectId.fromHex(tree));
+            return;
+        }
+        for (TreeStore.Entry entry : entries) {
+            if (entry.isTree()) {
+                markTree(entry.id());
+            } else {
+                _liveBlobs.add(ObjectId.fromHex(entry.id()));
+            }
+        }
+    }
+
+    /** Mark all reachable commits, trees and blobs using BITMAPS.  If an
+     *  object cannot be read along the way, mark as mark() does
+     *  instead, so that unreadable objects are recorded. */
+    void mark(ReachabilityBitmaps bitmaps) {
+        BitSet live;
+        try {
+            live = bitmaps.reachable(_roots);
+        } catch (IllegalArgumentException | GitletException excp) {
+            mark();
+            return;
+        }
+        _liveCommits.addAll(bitmaps.ids(live, Pack.COMMIT));
+        _liveTrees.addAll(bitmaps.ids(live, Pack.TREE));
+        _liveBlobs.addAll(bitmaps.ids(live, Pack.BLOB));
+    }
+
+    /** Add PARENT to NEXT if it has not been marked before. */
+    private void visit(String parent, Set<String> next) {
+        if (parent != null && _liveCommits.add(ObjectId.fromHex(parent))) {
+            next.add(parent);
+        }
+    }
+
+    /** Delete every unmarked object last modified more than GRACE
+     *  milliseconds ago.  Chunks are kept while any remaining chunk list
+     *  uses them.  Returns the numbers of commits, of blobs and of
+     *  trees deleted. */
+    int[] sweep(long grace) {
+        long cutoff = System.currentTimeMillis() - grace;
+        BlobStore blobs = Repo.BLOBS;
+        int[] result = new int[] {
+            sweep(Repo.COMMITS, _liveCommits, cutoff),
+            sweep(blobs.whole(), _liveBlobs, cutoff)
+                + sweep(blobs.lists(), _liveBlobs, cutoff),
+            sweep(Repo.TREES.dir(), _liveTrees, cutoff)
+        };
+        Set<ObjectId> liveChunks = ConcurrentHashMap.newKeySet();
+        blobs.lists().forEach(hash -> {
+            try {
+                for (String chunk : blobs.chunksOf(hash)) {
+                    liveChunks.add(ObjectId.fromHex(chunk));
+                }
+            } catch (IOException excp) {
+                throw Utils.error("Cannot read chunk list %s.", hash);
+            }
+        });
+        sweep(blobs.chunks(), liveChunks, cutoff);
+        return result;
+    }
+
+    /** Delete the objects in OBJECTS not in LIVE and last modified
+     *  before CUTOFF, along with abandoned temporary files.  Files not
+     *  named by a sha1 are left alone.  Shards are
+     *  swept in parallel.  Returns the number of objects deleted. */
+    private static int sweep(ObjectDirectory objects, Set<ObjectId> live,
+                             long cutoff) {
+        if (!objects.dir().isDirectory()) {
+            return 0;
+        }
+        for (String fileName : Utils.plainFilenamesIn(objects.dir())) {
+            File file = Utils.join(objects.dir(), fileName);
+            if (fileName.endsWith(".tmp") && file.lastModified() < cutoff) {
+                file.delete();
+            }
+        }
+        AtomicInteger deleted = new AtomicInteger();
+        objects.shards().parallelStream().forEach(shard ->
+            objects.forEachIn(shard, hash -> {
+                File file = objects.file(hash);
+                if (ObjectDirectory.isHash(hash)
+                    && !live.contains(ObjectId.fromHex(hash))
+                    && file.lastModified() < cutoff
+                    && file.delete()) {
+                    deleted.incrementAndGet();
+                }
+            }));
+        return deleted.get();
+    }
+
+    /** Return the reachable commits that could not be read; valid after
+     *  mark.  Sweeping is unsafe unless this and unreadableTrees() are
+     *  empty, since whatever those objects refer to was not marked. */
+    Set<ObjectId> unreadableCommits() {
+        return _unreadable;
+    }
+
+    /** Return the reachable trees that could not be read; valid after
+     *  mark. */
+    Set<ObjectId> unreadableTrees() {
+        return _unreadableTrees;
+    }
+
+    /** Return the reachable trees; valid after mark. */
+    Set<ObjectId> liveTrees() {
+        return _liveTrees;
+    }
+
+    /** Return the reachable commits; valid after mark. */
+    Set<ObjectId> liveCommits() {
+        return _liveCommits;
+    }
+
+    /** Return the reachable blobs; valid after mark. */
+    Set<ObjectId> liveBlobs() {
+        return _liveBlobs;
+    }
+
+    /** Commits from which marking starts. */
+    private final List<String> _roots;
+    /** Reachable commits. */
+    private final Set<ObjectId> _liveCommits;
+    /** Reachable trees. */
+    private final Set<ObjectId> _liveTrees;
+    /** Reachable blobs. */
+    private final Set<ObjectId> _liveBlobs;
+    /** Reachable commits that could not be read. */
+    private final Set<ObjectId> _unreadable;
+    /** Reachable trees that could not be read. */
+    private final Set<ObjectId> _unreadableTrees;
+}
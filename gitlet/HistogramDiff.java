@@ -0,0 +1,94 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Histogram diff: anchors each region on the longest common run that
+ *  contains the least frequent lines, so that repeated lines such as
+ *  braces and blank lines are the last thing used for alignment.  As in
+ *  JGit, each line's number of occurrences is counted once per region,
+ *  and once a run has been extended the scan of B resumes past its end,
+ *  and candidates in A inside it are skipped, so long common runs are
+ *  not walked again from each of their lines.
+ *  @author Ethan Herrera
+ */
+class HistogramDiff extends LineMatcher {
+
+    /** Lines occurring more often than this in a region are never used
+     *  as anchors. */
+    static final int MAX_CHAIN = 64;
+
+    /** A histogram matcher comparing A against B. */
+    HistogramDiff(List<String> a, List<String> b) {
+        super(a, b);
+    }
+
+    @Override
+    int[] anchors(int aLo, int aHi, int bLo, int bHi) {
+        HashMap<String, int[]> occurrences = new HashMap<>();
+        for (int i = aLo; i < aHi; i += 1) {
+            int[] e = occurrences.get(_a.get(i));
+            if (e == null) {
+                e = new int[4];
+                occurrences.put(_a.get(i), e);
+            } else if (e[0] + 1 == e.length && e[0] <= MAX_CHAIN) {
+                e = Arrays.copyOf(e, 2 * e.length);
+                occurrences.put(_a.get(i), e);
+            }
+            if (e[0] + 1 < e.length) {
+                e[e[0] + 1] = i;
+            }
+            e[0] += 1;
+        }
+        int[] counts = new int[aHi - aLo];
+        for (int i = aLo; i < aHi; i += 1) {
+            counts[i - aLo] = occurrences.get(_a.get(i))[0];
+        }
+        int bestA = -1, bestB = -1, bestLen = 0, bestCount = MAX_CHAIN + 1;
+        for (int j = bLo; j < bHi;) {
+            int next = j + 1;
+            int[] e = occurrences.get(_b.get(j));
+            if (e == null || e[0] > bestCount || e[0] > MAX_CHAIN) {
+                j = next;
+                continue;
+            }
+            int covered = aLo;
+            for (int k = 1; k <= e[0]; k += 1) {
+                int i = e[k];
+                if (i < covered) {
+                    continue;
+                }
+                int s1 = i, s2 = j;
+                while (s1 > aLo && s2 > bLo
+                       && _a.get(s1 - 1).equals(_b.get(s2 - 1))) {
+                    s1 -= 1;
+                    s2 -= 1;
+                }
+                int e1 = i + 1, e2 = j + 1;
+                while (e1 < aHi && e2 < bHi && _a.get(e1).equals(_b.get(e2))) {
+                    e1 += 1;
+                    e2 += 1;
+                }
+                next = Math.max(next, e2);
+                covered = e1;
+                int count = bestCount;
+                for (int p = s1; p < e1 && count > 1; p += 1) {
+                    count = Math.min(count, counts[p - aLo]);
+                }
+                if (count < bestCount
+                    || (count == bestCount && e1 - s1 > bestLen)) {
+                    bestA = s1;
+                    bestB = s2;
+                    bestLen = e1 - s1;
+                    bestCount = count;
+                }
+            }
+            j = next;
+        }
+        if (bestLen == 0) {
+            return new int[0];
+        }
+        return new int[] {bestA, bestB, bestLen};
+    }
+}
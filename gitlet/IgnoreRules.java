@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/** The paths the file .gitletignore, at the top of the working
+ *  directory, says to leave out of working-directory listings.  Each
+ *  line of the file is a glob; blank lines and lines starting with "#"
+ *  are skipped.  "*", "?" and "[...]" match within one path component
+ *  and "**" across components.  A glob ending in "/" matches only
+ *  directories.  A glob with no other "/" matches the last component of
+ *  a path at any depth; one with a "/" matches whole paths from the
+ *  top, a leading "/" being dropped.  A matched directory is left out
+ *  with everything beneath it, so walks never enter it.  Lines that are
+ *  not valid globs are skipped, and listed by invalid() so that
+ *  commands can report them.
+ *
+ *  The globs are compiled once into sets and a few regular expressions:
+ *  plain names and anchored paths are looked up in hash sets, globs of
+ *  the form "*SUFFIX" by the suffixes of a name after each ".", and the
+ *  rest are joined into one alternation per kind, so testing a path
+ *  costs a few lookups and at most two matches however many globs there
+ *  are.  The compiled rules are kept in a cache file with the size and
+ *  modification time of the .gitletignore they came from, and used
+ *  instead of recompiling until those change.
+ *  @author Ethan Herrera
+ */
+class IgnoreRules implements Serializable {
+
+    /** Name of the ignore file. */
+    static final String FILE_NAME = ".gitletignore";
+
+    /** Return the rules of the working directory WORKDIR, taking them
+     *  from the cache file CACHE if it is up to date, and otherwise
+     *  compiling them and updating CACHE. */
+    static IgnoreRules load(File workDir, File cache) {
+        File file = Utils.join(workDir, FILE_NAME);
+        String stamp = stamp(file);
+        if (!file.isFile()) {
+            return new IgnoreRules(stamp, new String[0]);
+        } else if (cache.isFile()) {
+            try {
+                IgnoreRules cached = Utils.readObject(cache,
+                                                      IgnoreRules.class);
+                if (cached._stamp.equals(stamp)) {
+                    return cached;
+                }
+            } catch (IllegalArgumentException excp) {
+                cache.delete();
+            }
+        }
+        IgnoreRules result = new IgnoreRules(
+            stamp, Utils.readContentsAsString(file).split("\n"));
+        cache.getParentFile().mkdirs();
+        Utils.replaceObject(cache, result);
+        return result;
+    }
+
+    /** Return the stamp of the ignore file FILE: its size and
+     *  modification time, or "none" if it does not exist. */
+    static String stamp(File file) {
+        return file.isFile() ? file.length() + ":" + file.lastModified()
+            : "none";
+    }
+
+    /** The rules compiled from the globs LINES, stamped STAMP. */
+    IgnoreRules(String stamp, String[] lines) {
+        _stamp = stamp;
+        ArrayList<String> names = new ArrayList<>(),
+            paths = new ArrayList<>(), dirNames = new ArrayList<>(),
+            dirPaths = new ArrayList<>();
+        for (String line : lines) {
+            String glob = line.trim();
+            if (glob.isEmpty() || glob.startsWith("#")) {
+                continue;
+            }
+            boolean dirOnly = glob.endsWith("/");
+            while (glob.endsWith("/")) {
+                glob = glob.substring(0, glob.length() - 1);
+            }
+            boolean anchored = glob.contains("/");
+            while (glob.startsWith("/")) {
+                glob = glob.substring(1);
+            }
+            if (glob.isEmpty()) {
+                continue;
+            }
+            HashSet<String> literals = anchored
+                ? (dirOnly ? _dirPaths : _paths)
+                : (dirOnly ? _dirNames : _names);
+            if (!hasWildcard(glob)) {
+                literals.add(glob);
+            } else if (!anchored && !dirOnly && glob.startsWith("*")
+                       && glob.indexOf('.') == 1
+                       && !hasWildcard(glob.substring(1))) {
+                _suffixes.add(glob.substring(1));
+            } else {
+                String regex = toRegex(glob);
+                if (regex == null) {
+                    _invalid.add(line);
+                    continue;
+                }
+                (anchored ? (dirOnly ? dirPaths : paths)
+                 : (dirOnly ? dirNames : names)).add(regex);
+            }
+        }
+        _namePattern = join(names);
+        _pathPattern = join(paths);
+        _dirNamePattern = join(dirNames);
+        _dirPathPattern = join(dirPaths);
+    }
+
+    /** Return the lines of the ignore file that are not valid globs, and
+     *  were skipped. */
+    List<String> invalid() {
+        return _invalid;
+    }
+
+    /** Return the stamp of the ignore file these rules came from. */
+    String stamp() {
+        return _stamp;
+    }
+
+    /** Return true iff there are no rules. */
+    boolean isEmpty() {
+        return _names.isEmpty() && _paths.isEmpty() && _dirNames.isEmpty()
+            && _dirPaths.isEmpty() && _suffixes.isEmpty()
+            && _namePattern == null && _pathPattern == null
+            && _dirNamePattern == null && _dirPathPattern == null;
+    }
+
+    /** Return true iff the file, or directory if DIR, at PATH is
+     *  ignored in itself, leaving aside the directories above it. */
+    boolean ignores(String path, boolean dir) {
+        if (isEmpty()) {
+            return false;
+        }
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        if (_names.contains(name) || _paths.contains(path)
+            || matches(_namePattern, name) || matches(_pathPattern, path)) {
+            return true;
+        }
+        for (int dot = name.indexOf('.'); dot >= 0;
+             dot = name.indexOf('.', dot + 1)) {
+            if (_suffixes.contains(name.substring(dot))) {
+                return true;
+            }
+        }
+        return dir && (_dirNames.contains(name) || _dirPaths.contains(path)
+                       || matches(_dirNamePattern, name)
+                       || matches(_dirPathPattern, path));
+    }
+
+    /** Return true iff the file at PATH is ignored, either in itself or
+     *  because a directory above it is. */
+    boolean excludes(String path) {
+        if (isEmpty()) {
+            return false;
+        }
+        for (int slash = path.indexOf('/'); slash >= 0;
+             slash = path.indexOf('/', slash + 1)) {
+            if (ignores(path.substring(0, slash), true)) {
+                return true;
+            }
+        }
+        return ignores(path, false);
+    }
+
+    /** Return true iff PATTERN is not null and matches all of TEXT. */
+    private static boolean matches(Pattern pattern, String text) {
+        return pattern != null && pattern.matcher(text).matches();
+    }
+
+    /** Return true iff GLOB has a wildcard. */
+    private static boolean hasWildcard(String glob) {
+        return glob.indexOf('*') >= 0 || glob.indexOf('?') >= 0
+            || glob.indexOf('[') >= 0;
+    }
+
+    /** Return the regular expression matching what GLOB matches, or null
+     *  if GLOB is not a valid glob. */
+    private static String toRegex(String glob) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < glob.length(); i += 1) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                result.append("(?:.*/)?");
+                i += 2;
+            } else if (glob.startsWith("**", i)) {
+                result.append(".*");
+                i += 1;
+            } else if (c == '*') {
+                result.append("[^/]*");
+            } else if (c == '?') {
+                result.append("[^/]");
+            } else if (c == '[') {
+                int end = bracket(glob, i, result);
+                if (end < 0) {
+                    return null;
+                }
+                i = end;
+            } else {
+                result.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return result.toString();
+    }
+
+    /** Append to RESULT the regular expression for the bracket expression
+     *  in GLOB starting at START, returning the index of its closing "]".
+     *  A "[" with no closing "]" stands for itself, and its index is
+     *  returned.  Returns -1 if the expression is invalid: a range that
+     *  runs backward.  A "]" first in the set, or after "!" or "^", is a
+     *  member; every member is escaped, so nothing in the set is taken
+     *  as regular-expression syntax. */
+    private static int bracket(String glob, int start, StringBuilder result) {
+        int i = start + 1;
+        boolean negated = i < glob.length()
+            && (glob.charAt(i) == '!' || glob.charAt(i) == '^');
+        if (negated) {
+            i += 1;
+        }
+        int close = glob.indexOf(']', i < glob.length()
+                                 && glob.charAt(i) == ']' ? i + 1 : i);
+        if (close < 0) {
+            result.append("\\[");
+            return start;
+        }
+        result.append(negated ? "[^" : "[");
+        while (i < close) {
+            char lo = glob.charAt(i);
+            result.append(escape(lo));
+            if (i + 2 < close && glob.charAt(i + 1) == '-') {
+                char hi = glob.charAt(i + 2);
+                if (hi < lo) {
+                    return -1;
+                }
+                result.append('-').append(escape(hi));
+                i += 3;
+            } else {
+                i += 1;
+            }
+        }
+        result.append(']');
+        return close;
+    }
+
+    /** Return C as it must be written inside a regular-expression
+     *  character class to stand for itself. */
+    private static String escape(char c) {
+        return Character.isLetterOrDigit(c) ? String.valueOf(c) : "\\" + c;
+    }
+
+    /** Return the pattern matching any of REGEXES, or null if there are
+     *  none. */
+    private static Pattern join(List<String> regexes) {
+        if (regexes.isEmpty()) {
+            return null;
+        }
+        return Pattern.compile("(?:" + String.join(")|(?:", regexes) + ")");
+    }
+
+    /** Lines that were not valid globs. */
+    private final ArrayList<String> _invalid = new ArrayList<>();
+    /** Size and modification time of the ignore file compiled. */
+    private final String _stamp;
+    /** Names ignored wherever they appear. */
+    private final HashSet<String> _names = new HashSet<>();
+    /** Paths ignored. */
+    private final HashSet<String> _paths = new HashSet<>();
+    /** Directory names ignored wherever they appear. */
+    private final HashSet<String> _dirNames = new HashSet<>();
+    /** Directory paths ignored. */
+    private final HashSet<String> _dirPaths = new HashSet<>();
+    /** Name suffixes, each starting with ".", ignored. */
+    private final HashSet<String> _suffixes = new HashSet<>();
+    /** Other globs on names, or null. */
+    private final Pattern _namePattern;
+    /** Other globs on paths, or null. */
+    private final Pattern _pathPattern;
+    /** Other globs on directory names, or null. */
+    private final Pattern _dirNamePattern;
+    /** Other globs on directory paths, or null. */
+    private final Pattern _dirPathPattern;
+}
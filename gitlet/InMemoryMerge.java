@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A merge computed entirely in the object store.  The outcome of each
+ *  file changed since the base is planned from blob IDs; files changed
+ *  on both sides are merged into new blobs, and the result is our tree
+ *  with the changes applied.  The working directory and staging area
+ *  are never read or written, so the result can be committed to any
+ *  branch.
+ *  @author Ethan Herrera
+ */
+class InMemoryMerge {
+
+    /** A merge of the tree THEIRS into the tree OURS, both derived from
+     *  the tree BASE. */
+    InMemoryMerge(String base, String ours, String theirs) {
+        _ours = ours;
+        _plan = MergePlan.ofTrees(Repo.TREES, ours, theirs, base);
+    }
+
+    /** Perform the merge, returning true iff it is free of conflicts. */
+    boolean run() {
+        Map<String, String> changes =
+            Collections.synchronizedMap(new HashMap<>());
+        Set<String> conflicts = ConcurrentHashMap.newKeySet();
+        _plan.entries().parallelStream().forEach(entry -> {
+            switch (entry.kind()) {
+            case KEEP:
+                break;
+            case TAKE:
+                changes.put(entry.fileName(), entry.other());
+                break;
+            case REMOVE:
+                changes.put(entry.fileName(), null);
+                break;
+            default:
+                changes.put(entry.fileName(), mergeBlob(entry, conflicts));
+                break;
+            }
+        });
+        _result = Repo.TREES.update(_ours, new HashMap<>(changes));
+        _conflicts = new ArrayList<>(conflicts);
+        Collections.sort(_conflicts);
+        return _conflicts.isEmpty();
+    }
+
+    /** Return the sha1 of the merged tree.  Conflicted files hold
+     *  conflict markers. */
+    String result() {
+        return _result;
+    }
+
+    /** Return the names of conflicted files, in order. */
+    List<String> conflicts() {
+        return _conflicts;
+    }
+
+    /** Line-merge the versions in ENTRY into a new blob, recording the
+     *  file name in CONFLICTS if the result has conflicts.  Returns the
+     *  new blob's sha1. */
+    static String mergeBlob(MergePlan.Entry entry,
+                            Set<String> conflicts) {
+        ThreeWayMerge merger = new ThreeWayMerge(Repo.readBlob(entry.split()),
+            Repo.readBlob(entry.head()), Repo.readBlob(entry.other()));
+        MessageDigest digest = Utils.newSha1();
+        try {
+            File temp = Repo.BLOBS.createTemp();
+            try (OutputStream out = new DigestOutputStream(
+                     new BufferedOutputStream(
+                         Files.newOutputStream(temp.toPath())), digest)) {
+                if (merger.write(out)) {
+                    conflicts.add(entry.fileName());
+                }
+            }
+            String hash = Utils.toHex(digest.digest());
+            Repo.BLOBS.install(temp, hash);
+            return hash;
+        } catch (IOException excp) {
+            throw Utils.error("Cannot merge %s.", entry.fileName());
+        }
+    }
+
+    /** Our tree, to which the merged changes are applied. */
+    private final String _ours;
+    /** The per-file outcomes. */
+    private final MergePlan _plan;
+    /** The merged tree, once run. */
+    private String _result;
+    /** The conflicted files, once run. */
+    private List<String> _conflicts;
+}
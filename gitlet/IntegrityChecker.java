@@ -0,0 +1,142 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Verification of the object store.  Every blob and tree is re-hashed,
+ *  streaming blob contents through SHA-1, and every commit is read back
+ *  and checked against its name, all in parallel.  The commit graph and
+ *  its trees are then walked from the roots to find missing and dangling
+ *  objects.
+ *  @author Ethan Herrera
+ */
+class IntegrityChecker {
+
+    /** Size of the buffer used when hashing blobs. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** A checker for the graph reachable from the commits ROOTS and the
+     *  blobs STAGEDBLOBS. */
+    IntegrityChecker(Collection<String> roots,
+                     Collection<String> stagedBlobs) {
+        _marker = new GarbageCollector(roots, stagedBlobs);
+    }
+
+    /** Check the store, re-hashing contents iff HASH, and return the
+     *  problems found, one per line, in order. */
+    List<String> check(boolean hash) {
+        Set<String> problems = ConcurrentHashMap.newKeySet();
+        Set<ObjectId> commits = objectsIn(Repo.COMMITS);
+        Set<ObjectId> trees = objectsIn(Repo.TREES.dir());
+        Set<ObjectId> blobs = objectsIn(Repo.BLOBS.whole());
+        blobs.addAll(objectsIn(Repo.BLOBS.lists()));
+        if (hash) {
+            commits.parallelStream().forEach(id -> {
+                if (!commitIntact(id.toHex())) {
+                    problems.add("corrupt commit " + id.toHex());
+                }
+            });
+            trees.parallelStream().forEach(id -> {
+                String name = id.toHex();
+                if (!name.equals(Utils.sha1(Utils.readContents(
+                        Repo.TREES.dir().file(name))))) {
+                    problems.add("corrupt tree " + name);
+                }
+            });
+            blobs.parallelStream().forEach(id -> {
+                String name = id.toHex();
+                if (!name.equals(hashOf(name))) {
+                    problems.add("corrupt blob " + name);
+                }
+            });
+        }
+        _marker.mark();
+        for (ObjectId id : _marker.liveCommits()) {
+            if (!commits.contains(id)) {
+                problems.add("missing commit " + id.toHex());
+            } else if (_marker.unreadableCommits().contains(id)) {
+                problems.add("corrupt commit " + id.toHex());
+            }
+        }
+        ObjectId empty = ObjectId.fromHex(TreeStore.EMPTY);
+        for (ObjectId id : _marker.liveTrees()) {
+            if (!trees.contains(id) && !id.equals(empty)) {
+                problems.add("missing tree " + id.toHex());
+            } else if (_marker.unreadableTrees().contains(id)) {
+                problems.add("corrupt tree " + id.toHex());
+            }
+        }
+        for (ObjectId id : _marker.liveBlobs()) {
+            if (!blobs.contains(id)) {
+                problems.add("missing blob " + id.toHex());
+            }
+        }
+        for (ObjectId id : commits) {
+            if (!_marker.liveCommits().contains(id)) {
+                problems.add("dangling commit " + id.toHex());
+            }
+        }
+        for (ObjectId id : trees) {
+            if (!_marker.liveTrees().contains(id)) {
+                problems.add("dangling tree " + id.toHex());
+            }
+        }
+        for (ObjectId id : blobs) {
+            if (!_marker.liveBlobs().contains(id)) {
+                problems.add("dangling blob " + id.toHex());
+            }
+        }
+        return new ArrayList<>(new TreeSet<>(problems));
+    }
+
+    /** Return the ids of the objects stored in OBJECTS.  Files not named
+     *  by a sha1 are not objects, and are skipped. */
+    private static Set<ObjectId> objectsIn(ObjectDirectory objects) {
+        HashSet<ObjectId> result = new HashSet<>();
+        objects.forEach(name -> {
+            if (ObjectDirectory.isHash(name)) {
+                result.add(ObjectId.fromHex(name));
+            }
+        });
+        return result;
+    }
+
+    /** Return true iff the commit stored under NAME can be read, records
+     *  NAME as its sha1, and hashes to it. */
+    private static boolean commitIntact(String name) {
+        try {
+            Commit commit = Repo.readCommit(name);
+            return name.equals(commit.getHash()) && commit.isIntact();
+        } catch (IllegalArgumentException excp) {
+            return false;
+        }
+    }
+
+    /** Return the sha1 of the contents of the blob stored under NAME,
+     *  reading it as a stream, or null if it cannot be read. */
+    private static String hashOf(String name) {
+        MessageDigest digest = Utils.newSha1();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = new DigestInputStream(
+                 Repo.BLOBS.open(name), digest)) {
+            while (in.read(buffer) >= 0) {
+                continue;
+            }
+        } catch (IOException | GitletException excp) {
+            return null;
+        }
+        return Utils.toHex(digest.digest());
+    }
+
+    /** Marks what the roots reach. */
+    private final GarbageCollector _marker;
+}
@@ -0,0 +1,130 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+
+/** Common machinery for the anchor-based line matchers used by Diff.
+ *  A matcher repeatedly splits the region being compared around lines it
+ *  trusts to correspond, and hands regions it can't split to the classic
+ *  longest-common-subsequence computation.
+ *  @author Ethan Herrera
+ */
+abstract class LineMatcher {
+
+    /** Regions whose area exceeds this are not given to the quadratic
+     *  fallback; their lines are simply reported as replaced. */
+    static final long FALLBACK_LIMIT = 4_000_000L;
+
+    /** A matcher comparing A against B. */
+    LineMatcher(List<String> a, List<String> b) {
+        _a = a;
+        _b = b;
+        _pairs = new int[16];
+    }
+
+    /** Return the common subsequence of the two sequences in the format
+     *  of Diff.commonSubsequence. */
+    int[] commonSubsequence() {
+        ArrayDeque<int[]> work = new ArrayDeque<>();
+        work.push(new int[] {0, _a.size(), 0, _b.size()});
+        while (!work.isEmpty()) {
+            int[] r = work.pop();
+            int aLo = r[0], aHi = r[1], bLo = r[2], bHi = r[3];
+            while (aLo < aHi && bLo < bHi && _a.get(aLo).equals(_b.get(bLo))) {
+                addPair(aLo, bLo);
+                aLo += 1;
+                bLo += 1;
+            }
+            while (aLo < aHi && bLo < bHi
+                   && _a.get(aHi - 1).equals(_b.get(bHi - 1))) {
+                aHi -= 1;
+                bHi -= 1;
+                addPair(aHi, bHi);
+            }
+            if (aLo == aHi || bLo == bHi) {
+                continue;
+            }
+            int[] anchors = anchors(aLo, aHi, bLo, bHi);
+            if (anchors.length == 0) {
+                fallback(aLo, aHi, bLo, bHi);
+                continue;
+            }
+            int a0 = aLo, b0 = bLo;
+            for (int k = 0; k < anchors.length; k += 3) {
+                work.push(new int[] {a0, anchors[k], b0, anchors[k + 1]});
+                for (int i = 0; i < anchors[k + 2]; i += 1) {
+                    addPair(anchors[k] + i, anchors[k + 1] + i);
+                }
+                a0 = anchors[k] + anchors[k + 2];
+                b0 = anchors[k + 1] + anchors[k + 2];
+            }
+            work.push(new int[] {a0, aHi, b0, bHi});
+        }
+        return coalesce();
+    }
+
+    /** Return a sequence of triples s1, s2, L (as for
+     *  Diff.commonSubsequence, ascending) of runs of lines in A[ALO..AHI)
+     *  and B[BLO..BHI) that are to be taken as matching, or an empty
+     *  array if this matcher finds nothing it trusts. */
+    abstract int[] anchors(int aLo, int aHi, int bLo, int bHi);
+
+    /** Match A[ALO..AHI) against B[BLO..BHI) using the longest common
+     *  subsequence, unless the region is too large for that to be
+     *  reasonable. */
+    private void fallback(int aLo, int aHi, int bLo, int bHi) {
+        if ((long) (aHi - aLo) * (bHi - bLo) > FALLBACK_LIMIT) {
+            return;
+        }
+        Diff lcs = new Diff();
+        lcs.setSequences(_a.subList(aLo, aHi), _b.subList(bLo, bHi));
+        int[] common = lcs.commonSubsequence();
+        for (int k = 0; k < common.length; k += 3) {
+            for (int i = 0; i < common[k + 2]; i += 1) {
+                addPair(aLo + common[k] + i, bLo + common[k + 1] + i);
+            }
+        }
+    }
+
+    /** Record that line I of A matches line J of B. */
+    private void addPair(int i, int j) {
+        if (_npairs == _pairs.length) {
+            _pairs = Arrays.copyOf(_pairs, 2 * _pairs.length);
+        }
+        _pairs[_npairs] = i;
+        _pairs[_npairs + 1] = j;
+        _npairs += 2;
+    }
+
+    /** Return the recorded pairs, sorted and merged into runs. */
+    private int[] coalesce() {
+        long[] keys = new long[_npairs / 2];
+        for (int k = 0; k < _npairs; k += 2) {
+            keys[k / 2] = ((long) _pairs[k] << 32) | _pairs[k + 1];
+        }
+        Arrays.sort(keys);
+        int[] result = new int[3 * keys.length];
+        int n = 0;
+        for (long key : keys) {
+            int i = (int) (key >>> 32), j = (int) key;
+            if (n > 0 && result[n - 3] + result[n - 1] == i
+                && result[n - 2] + result[n - 1] == j) {
+                result[n - 1] += 1;
+            } else {
+                result[n] = i;
+                result[n + 1] = j;
+                result[n + 2] = 1;
+                n += 3;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** The sequences being compared. */
+    protected final List<String> _a, _b;
+    /** Matched line pairs i0, j0, i1, j1, ... in no particular order. */
+    private int[] _pairs;
+    /** Number of valid entries in _pairs. */
+    private int _npairs;
+}
@@ -1,6 +1,9 @@
 package gitlet;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Ethan Herrera
@@ -15,6 +18,7 @@ public class Main {
             System.exit(0);
         }
         String[] ops = Arrays.copyOfRange(args, 1, args.length);
+        RepoLock lock = lock(args[0], ops);
         Repo repo = new Repo();
         switch (args[0]) {
         case "init":
@@ -59,17 +63,322 @@ public class Main {
                 repo.reset(ops[0]);
             }
             break;
+        case "gc":
+            gcHelper(repo, ops);
+            break;
+        case "fsck":
+            if (isInit(repo) && ops.length == 1
+                    && ops[0].equals("--quick")) {
+                repo.fsck(true);
+            } else if (isInit(repo) && numOps(0, ops.length)) {
+                repo.fsck(false);
+            }
+            break;
+        case "migrate-objects":
+            if (isInit(repo) && numOps(0, ops.length)) {
+                repo.migrateObjects();
+            }
+            break;
+        case "commit-graph":
+            if (isInit(repo) && numOpsPl(1, ops.length)
+                    && ops[0].equals("write")) {
+                repo.writeCommitGraph();
+            } else if (isInit(repo)) {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        case "bitmap":
+            if (isInit(repo) && numOpsPl(1, ops.length)
+                    && ops[0].equals("write")) {
+                repo.writeBitmaps();
+            } else if (isInit(repo)) {
+                System.out.println("Incorrect operands.");
+            }
+            break;
+        case "count-objects":
+            countObjectsHelper(repo, ops);
+            break;
+        case "pack-refs":
+            if (isInit(repo) && numOps(0, ops.length)) {
+                repo.packRefs();
+            }
+            break;
+        case "blame":
+            if (isInit(repo) && numOps(1, ops.length)) {
+                repo.blame(ops[0]);
+            }
+            break;
+        case "diff":
+            diffHelper(repo, ops);
+            break;
         case "merge":
+            mergeHelper(repo, ops);
+            break;
+        case "cherry-pick":
+            cherryPickHelper(repo, ops);
+            break;
+        case "add-remote":
+            if (isInit(repo) && numOps(2, ops.length)) {
+                repo.addRemote(ops[0], ops[1]);
+            }
+            break;
+        case "rm-remote":
             if (isInit(repo) && numOps(1, ops.length)) {
-                repo.merge(ops[0]);
+                repo.rmRemote(ops[0]);
+            }
+            break;
+        case "fetch":
+            if (isInit(repo) && numOps(2, ops.length)) {
+                repo.fetch(ops[0], ops[1]);
+            }
+            break;
+        case "push":
+            if (isInit(repo) && numOps(2, ops.length)) {
+                repo.push(ops[0], ops[1]);
+            }
+            break;
+        case "pull":
+            if (isInit(repo) && numOps(2, ops.length)) {
+                repo.pull(ops[0], ops[1]);
+            }
+            break;
+        case "bundle":
+            bundleHelper(repo, ops);
+            break;
+        case "monitor":
+            if (isInit(repo) && numOpsPl(1, ops.length)
+                    && ops[0].equals("--stop")) {
+                repo.stopMonitor();
+            } else if (isInit(repo) && numOps(0, ops.length)) {
+                repo.monitor();
+            }
+            break;
+        case "sparse-checkout":
+            sparseCheckoutHelper(repo, ops);
+            break;
+        case "worktree":
+            worktreeHelper(repo, ops);
+            break;
+        case "durability":
+            if (isInit(repo) && ops.length <= 1) {
+                repo.durability(ops.length == 0 ? null : ops[0]);
+            } else if (isInit(repo)) {
+                System.out.println("Incorrect operands.");
             }
             break;
         default:
             System.out.println("No command with that name exists.");
         }
+        repo.publish();
+        lock.release();
         System.exit(0);
     }
 
+    /**
+     * Takes the locks on the repository the command needs, before any of
+     * its state is read.  Commands that only read hold everything shared;
+     * commands that move the head or touch the stage or working files
+     * hold the head exclusive; commands that update a branch hold its
+     * stripe exclusive.  Checking out a branch holds the stripes of both
+     * the branch left and the branch checked out, since each branch's
+     * head moves with the worktree that has it checked out.
+     * Cherry-picking holds the head exclusive too, since picking onto the
+     * current branch checks it out.  Commands that rewrite the object
+     * store hold the whole repository exclusive.  gc holds it shared,
+     * since the default grace period keeps whatever other commands write
+     * meanwhile, and exclusive if given a shorter one.  Every command
+     * that reads the head or branches first replays any journal record a
+     * command left unfinished, holding the head exclusive while it does.
+     * @param command input command
+     * @param ops input operands
+     * @return the locks held
+     */
+    private static RepoLock lock(String command, String[] ops) {
+        RepoLock lock = new RepoLock(Repo.REPO_DIR);
+        if (!Repo.REPO_DIR.isDirectory()) {
+            return lock;
+        }
+        switch (command) {
+        case "gc":
+            lock.repository(ops.length == 0);
+            recover(lock);
+            break;
+        case "migrate-objects":
+        case "commit-graph":
+        case "bitmap":
+        case "pack-refs":
+            lock.repository(false);
+            recover(lock);
+            break;
+        case "bundle":
+            lock.repository(ops.length == 0 || !ops[0].equals("unbundle"));
+            recover(lock);
+            break;
+        case "fsck":
+            lock.repository(true);
+            recover(lock);
+            break;
+        case "find":
+        case "global-log":
+        case "count-objects":
+        case "add-remote":
+        case "rm-remote":
+        case "durability":
+            lock.repository(true);
+            break;
+        case "log":
+        case "status":
+        case "diff":
+        case "blame":
+        case "push":
+            lock.repository(true);
+            readHead(lock);
+            break;
+        case "branch":
+        case "rm-branch":
+        case "fetch":
+            lock.repository(true);
+            readHead(lock);
+            if (ops.length == 1) {
+                lock.branches(List.of(ops[0]));
+            } else if (ops.length == 2 && command.equals("fetch")) {
+                lock.branches(List.of(ops[0] + "/" + ops[1]));
+            }
+            if (command.equals("rm-branch")) {
+                lock.packedRefs();
+            }
+            break;
+        case "merge":
+            if (ops.length > 0 && ops[0].equals("--no-checkout")) {
+                lock.repository(true);
+                readHead(lock);
+                if (ops.length == 3) {
+                    lock.branches(List.of(ops[2]));
+                }
+                break;
+            }
+            lockHead(lock, true);
+            break;
+        case "cherry-pick":
+            if (ops.length > 1 && ops[0].equals("--onto")) {
+                lockHead(lock, true, ops[1]);
+            } else {
+                lockHead(lock, true);
+            }
+            break;
+        case "commit":
+            lockHead(lock, true);
+            break;
+        case "reset":
+            holdHead(lock);
+            lock.branches(resetBranches(ops));
+            break;
+        case "pull":
+            if (ops.length == 2) {
+                lockHead(lock, true, ops[0] + "/" + ops[1]);
+            } else {
+                lockHead(lock, true);
+            }
+            break;
+        case "checkout":
+            if (ops.length == 1) {
+                lockHead(lock, true, ops[0]);
+            } else {
+                lockHead(lock, false);
+            }
+            break;
+        case "worktree":
+            lock.repository(true);
+            readHead(lock);
+            if (ops.length == 3) {
+                lock.branches(List.of(ops[2]));
+            }
+            break;
+        case "add":
+        case "rm":
+        case "sparse-checkout":
+            lockHead(lock, false);
+            break;
+        default:
+            break;
+        }
+        return lock;
+    }
+
+    /**
+     * Holds the head exclusive, as holdHead does, and then the given
+     * branches.
+     * @param lock input locks
+     * @param current whether the current branch is to be updated too
+     * @param branches input branches to be updated
+     */
+    private static void lockHead(RepoLock lock, boolean current,
+                                 String... branches) {
+        holdHead(lock);
+        ArrayList<String> updated = new ArrayList<>(Arrays.asList(branches));
+        if (current) {
+            updated.add(currentBranch());
+        }
+        lock.branches(updated);
+    }
+
+    /**
+     * Holds the head exclusive, replaying any journal record a command
+     * left unfinished.
+     * @param lock input locks
+     */
+    private static void holdHead(RepoLock lock) {
+        lock.repository(true);
+        lock.head(false);
+        WritePipeline.recover(Repo.REPO_DIR, lock);
+    }
+
+    /**
+     * Holds the head shared, first replaying any journal record a
+     * command left unfinished.  The repository must be held.
+     * @param lock input locks
+     */
+    private static void readHead(RepoLock lock) {
+        recover(lock);
+        lock.head(true);
+    }
+
+    /**
+     * Replays any journal record a command left unfinished, holding the
+     * head exclusive while it does.  The repository must be held, and
+     * the head not.
+     * @param lock input locks
+     */
+    private static void recover(RepoLock lock) {
+        if (WritePipeline.pending(Repo.REPO_DIR)) {
+            lock.head(false);
+            WritePipeline.recover(Repo.REPO_DIR, lock);
+            lock.releaseHead();
+        }
+    }
+
+    /**
+     * Returns the branches reset may update: the current branch, and the
+     * branch the target commit was made on, which reset moves to.  The
+     * head must be locked.
+     * @param ops input operands
+     * @return branch names
+     */
+    private static List<String> resetBranches(String[] ops) {
+        String target = ops.length == 1
+            ? Repo.getBranchFromCommitID(ops[0]) : null;
+        return target == null ? List.of(currentBranch())
+            : List.of(currentBranch(), target);
+    }
+
+    /**
+     * Reads the current branch.  The head must be locked.
+     * @return branch name
+     */
+    private static String currentBranch() {
+        return Utils.readContentsAsString(Repo.HEAD_BRANCH_FILE);
+    }
+
     /**
      * Checks if gitlet repo is initialized.
      * @param repo input repo
@@ -145,7 +454,9 @@ public class Main {
     }
 
     private static void logHelper(Repo repo, String[] ops) {
-        if (isInit(repo) && numOps(0, ops.length)) {
+        if (isInit(repo) && numOpsPl(2, ops.length) && ops[0].equals("--")) {
+            repo.logPath(ops[1]);
+        } else if (isInit(repo) && numOps(0, ops.length)) {
             repo.log();
         }
     }
@@ -162,6 +473,152 @@ public class Main {
         }
     }
 
+    private static void mergeHelper(Repo repo, String[] ops) {
+        if (!isInit(repo)) {
+            return;
+        }
+        if (ops.length > 0 && ops[0].equals("--no-checkout")) {
+            if (numOps(3, ops.length)) {
+                repo.mergeNoCheckout(ops[1], ops[2]);
+            }
+        } else if (numOps(1, ops.length)) {
+            repo.merge(ops[0]);
+        }
+    }
+
+    private static void cherryPickHelper(Repo repo, String[] ops) {
+        if (!isInit(repo)) {
+            return;
+        }
+        String target = repo.getHEADBranch();
+        int first = 0;
+        if (ops.length > 1 && ops[0].equals("--onto")) {
+            target = ops[1];
+            first = 2;
+        }
+        if (ops.length == first) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        repo.cherryPick(target, Arrays.asList(
+                Arrays.copyOfRange(ops, first, ops.length)));
+    }
+
+    private static void bundleHelper(Repo repo, String[] ops) {
+        if (!isInit(repo)) {
+            return;
+        }
+        if (ops.length == 2 && ops[0].equals("unbundle")) {
+            repo.unbundle(new File(ops[1]));
+            return;
+        }
+        ArrayList<String> operands = new ArrayList<>();
+        ArrayList<String> bases = new ArrayList<>();
+        for (int i = 1; i < ops.length; i += 1) {
+            if (ops[i].equals("--base") && i + 1 < ops.length) {
+                i += 1;
+                bases.add(ops[i]);
+            } else {
+                operands.add(ops[i]);
+            }
+        }
+        if (ops.length == 0 || !ops[0].equals("create")
+                || operands.size() < 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        repo.bundleCreate(new File(operands.get(0)),
+                operands.subList(1, operands.size()), bases);
+    }
+
+    private static void sparseCheckoutHelper(Repo repo, String[] ops) {
+        if (!isInit(repo)) {
+            return;
+        }
+        boolean takesPatterns = ops.length > 0
+                && (ops[0].equals("set") || ops[0].equals("add"));
+        if (takesPatterns ? ops.length == 1 : ops.length != 1) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        repo.sparseCheckout(ops[0], Arrays.asList(
+                Arrays.copyOfRange(ops, 1, ops.length)));
+    }
+
+    private static void worktreeHelper(Repo repo, String[] ops) {
+        if (!isInit(repo)) {
+            return;
+        }
+        if (ops.length == 3 && ops[0].equals("add")) {
+            repo.worktreeAdd(new File(ops[1]), ops[2]);
+        } else if (ops.length == 1 && ops[0].equals("list")) {
+            repo.worktreeList();
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+    }
+
+    private static void countObjectsHelper(Repo repo, String[] ops) {
+        if (!isInit(repo)) {
+            return;
+        }
+        ArrayList<String> included = new ArrayList<>();
+        ArrayList<String> excluded = new ArrayList<>();
+        ArrayList<String> target = included;
+        for (String op : ops) {
+            if (op.equals("--not")) {
+                target = excluded;
+            } else {
+                target.add(op);
+            }
+        }
+        repo.countObjects(included, excluded);
+    }
+
+    private static void gcHelper(Repo repo, String[] ops) {
+        if (!isInit(repo)) {
+            return;
+        }
+        long grace = GarbageCollector.DEFAULT_GRACE;
+        if (ops.length == 1 && ops[0].equals("--prune=now")) {
+            grace = 0;
+        } else if (ops.length == 1 && ops[0].matches("--prune=\\d+")) {
+            grace = 1000 * Long.parseLong(ops[0].substring(8));
+        } else if (!numOps(0, ops.length)) {
+            return;
+        }
+        repo.gc(grace);
+    }
+
+    private static void diffHelper(Repo repo, String[] ops) {
+        if (!isInit(repo)) {
+            return;
+        }
+        ArrayList<String> commitIDs = new ArrayList<>();
+        ArrayList<String> paths = new ArrayList<>();
+        Diff.Algorithm algorithm = Diff.Algorithm.HISTOGRAM;
+        boolean inPaths = false;
+        for (String op : ops) {
+            if (inPaths) {
+                paths.add(op);
+            } else if (op.equals("--")) {
+                inPaths = true;
+            } else if (op.equals("--histogram")) {
+                algorithm = Diff.Algorithm.HISTOGRAM;
+            } else if (op.equals("--patience")) {
+                algorithm = Diff.Algorithm.PATIENCE;
+            } else if (op.equals("--minimal")) {
+                algorithm = Diff.Algorithm.LCS;
+            } else if (op.startsWith("--") || commitIDs.size() == 2) {
+                System.out.println("Incorrect operands.");
+                return;
+            } else {
+                commitIDs.add(op);
+            }
+        }
+        repo.diff(commitIDs, paths, algorithm);
+    }
+
     private static void statusHelper(Repo repo, String[] ops) {
         if (isInit(repo) && numOps(0, ops.length)) {
             repo.status();
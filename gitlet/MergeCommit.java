@@ -1,14 +1,13 @@
 package gitlet;
 
-import java.util.HashMap;
-
 public class MergeCommit extends Commit {
+    /** Fixed, as for Commit. */
+    private static final long serialVersionUID = -7672436697187691895L;
     /** The step parent of the commit. */
-    protected String stepParent;
+    protected final String stepParent;
     MergeCommit(String parHash, String stepParHash, String inputMessage,
-                HashMap<String, byte[]> referencedBlobs,
-                String belongingBranch) {
-        super(parHash, inputMessage, referencedBlobs, belongingBranch);
+                String rootTree, String belongingBranch) {
+        super(parHash, stepParHash, inputMessage, rootTree, belongingBranch);
         stepParent = stepParHash;
     }
 
@@ -19,12 +18,4 @@ public class MergeCommit extends Commit {
     public String getStepParent() {
         return stepParent;
     }
-
-    /**
-     *  Sets step parent.
-     * @param inputStepParent the set step parent
-     */
-    public void setStepParent(String inputStepParent) {
-        this.stepParent = inputStepParent;
-    }
 }
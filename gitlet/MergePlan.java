@@ -0,0 +1,191 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** The outcome of merging each file of two commits, decided from blob
+ *  IDs alone.  Planning reads no file contents and changes nothing, so
+ *  the files are evaluated in parallel; carrying out the plan is left to
+ *  the caller.  Planned from trees, only the files changed on one side
+ *  or the other since the split point are considered.
+ *  @author Ethan Herrera
+ */
+class MergePlan {
+
+    /** What becomes of a file in the merge. */
+    enum Kind {
+        /** The head version (possibly absence) stands. */
+        KEEP,
+        /** The given branch's version replaces the head version. */
+        TAKE,
+        /** The given branch removed the file; remove it from the head. */
+        REMOVE,
+        /** Both sides changed the file; its contents must be merged. */
+        MERGE
+    }
+
+    /** The planned outcome for one file. */
+    static final class Entry {
+        /** An entry of kind KIND for FILENAME, whose blob sha1s are SPLIT,
+         *  HEAD and OTHER at the split point, the head and the given
+         *  branch, respectively (null where absent). */
+        Entry(String fileName, Kind kind,
+              String split, String head, String other) {
+            _fileName = fileName;
+            _kind = kind;
+            _split = split;
+            _head = head;
+            _other = other;
+        }
+
+        /** Return the file name. */
+        String fileName() {
+            return _fileName;
+        }
+
+        /** Return what becomes of the file. */
+        Kind kind() {
+            return _kind;
+        }
+
+        /** Return the split point's blob sha1, or null. */
+        String split() {
+            return _split;
+        }
+
+        /** Return the head's blob sha1, or null. */
+        String head() {
+            return _head;
+        }
+
+        /** Return the given branch's blob sha1, or null. */
+        String other() {
+            return _other;
+        }
+
+        /** The file name. */
+        private final String _fileName;
+        /** The outcome. */
+        private final Kind _kind;
+        /** Blob sha1s of the three versions. */
+        private final String _split, _head, _other;
+    }
+
+    /** Files per task below which planning is not split further. */
+    static final int THRESHOLD = 256;
+
+    /** Plan the merge of the files OTHER into HEAD, both descended from
+     *  SPLIT.  Each maps file names to blob sha1s. */
+    MergePlan(HashMap<String, String> head, HashMap<String, String> other,
+              HashMap<String, String> split) {
+        TreeSet<String> names = new TreeSet<>(head.keySet());
+        names.addAll(other.keySet());
+        names.addAll(split.keySet());
+        String[] fileNames = names.toArray(new String[0]);
+        _entries = new Entry[fileNames.length];
+        ForkJoinPool.commonPool().invoke(
+            new PlanTask(fileNames, head, other, split, 0, fileNames.length));
+    }
+
+    /** Return the plan for merging the tree OTHER into the tree HEAD, both
+     *  descended from the tree SPLIT, reading trees from TREES.  Only
+     *  the paths that differ from SPLIT in HEAD or OTHER are planned;
+     *  every other file keeps the head version. */
+    static MergePlan ofTrees(TreeStore trees, String head, String other,
+                             String split) {
+        HashMap<String, String> headBlobs = new HashMap<>(),
+            otherBlobs = new HashMap<>(), splitBlobs = new HashMap<>();
+        TreeMap<String, String[]> ours = trees.diff(split, head),
+            theirs = trees.diff(split, other);
+        TreeSet<String> names = new TreeSet<>(ours.keySet());
+        names.addAll(theirs.keySet());
+        for (String name : names) {
+            String[] change = ours.containsKey(name) ? ours.get(name)
+                : theirs.get(name);
+            String s = change[0];
+            putBlob(splitBlobs, name, s);
+            putBlob(headBlobs, name,
+                    ours.containsKey(name) ? ours.get(name)[1] : s);
+            putBlob(otherBlobs, name,
+                    theirs.containsKey(name) ? theirs.get(name)[1] : s);
+        }
+        return new MergePlan(headBlobs, otherBlobs, splitBlobs);
+    }
+
+    /** Map NAME to BLOB in BLOBS, unless BLOB is null. */
+    private static void putBlob(HashMap<String, String> blobs, String name,
+                                String blob) {
+        if (blob != null) {
+            blobs.put(name, blob);
+        }
+    }
+
+    /** Return the planned outcomes, ordered by file name. */
+    List<Entry> entries() {
+        return Arrays.asList(_entries);
+    }
+
+    /** Return the outcome for a file whose blob sha1s are SPLIT, HEAD and
+     *  OTHER at the split point, head and given branch. */
+    static Kind decide(String split, String head, String other) {
+        if (Objects.equals(head, other) || Objects.equals(split, other)) {
+            return Kind.KEEP;
+        } else if (Objects.equals(split, head)) {
+            return other == null ? Kind.REMOVE : Kind.TAKE;
+        } else {
+            return Kind.MERGE;
+        }
+    }
+
+    /** Plans a range of files, splitting the work among threads. */
+    private class PlanTask extends RecursiveAction {
+        /** Plan FILENAMES[FROM .. TO), looking up blobs in HEAD, OTHER and
+         *  SPLIT. */
+        PlanTask(String[] fileNames, HashMap<String, String> head,
+                 HashMap<String, String> other,
+                 HashMap<String, String> split, int from, int to) {
+            _names = fileNames;
+            _headBlobs = head;
+            _otherBlobs = other;
+            _splitBlobs = split;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= THRESHOLD) {
+                for (int i = _from; i < _to; i += 1) {
+                    String name = _names[i];
+                    String s = _splitBlobs.get(name),
+                        h = _headBlobs.get(name),
+                        o = _otherBlobs.get(name);
+                    _entries[i] = new Entry(name, decide(s, h, o), s, h, o);
+                }
+            } else {
+                int mid = (_from + _to) >>> 1;
+                invokeAll(new PlanTask(_names, _headBlobs, _otherBlobs,
+                                       _splitBlobs, _from, mid),
+                          new PlanTask(_names, _headBlobs, _otherBlobs,
+                                       _splitBlobs, mid, _to));
+            }
+        }
+
+        /** All file names being planned. */
+        private final String[] _names;
+        /** Blob maps of the three commits. */
+        private final HashMap<String, String> _headBlobs, _otherBlobs,
+            _splitBlobs;
+        /** Range of _names planned by this task. */
+        private final int _from, _to;
+    }
+
+    /** The planned outcomes, ordered by file name. */
+    private final Entry[] _entries;
+}
@@ -1,14 +1,31 @@
 package gitlet;
 
-import java.io.Serializable;
-
 public class MyUtils {
     /**
-     * Returns the sha1 of a commit.
-     * @param obj input obj
+     * Returns the sha1 of a commit, taken over a canonical header: its
+     * root tree, its parents in order, its date and branch, then a blank
+     * line and its message.  The header is small and fixed in layout, so
+     * hashing a commit costs the same however many files it tracks and
+     * does not depend on how commits are serialized.
+     * @param tree sha1 of the root tree
+     * @param parents parent sha1s, first parent first
+     * @param date commit date and time
+     * @param branch the branch the commit belongs to
+     * @param message commit message
      * @return commit hash
      */
-    static String commitHash(Serializable obj) {
-        return Utils.sha1(Utils.serialize(obj));
+    static String commitHash(String tree, String[] parents, String date,
+                             String branch, String message) {
+        StringBuilder header = new StringBuilder();
+        header.append("tree ").append(tree).append("\n");
+        for (String parent : parents) {
+            if (parent != null) {
+                header.append("parent ").append(parent).append("\n");
+            }
+        }
+        header.append("date ").append(date).append("\n");
+        header.append("branch ").append(branch).append("\n");
+        header.append("\n").append(message);
+        return Utils.sha1(header.toString());
     }
 }
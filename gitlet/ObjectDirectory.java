@@ -0,0 +1,246 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** A directory of objects named by their sha1s, fanned out into
+ *  subdirectories named by the first two hex digits of the sha1, so that
+ *  no single directory grows too large.  The object with sha1 H is
+ *  stored in DIR/H[0..2)/H.txt.  Listings are streamed one shard at a
+ *  time rather than read and sorted all at once.
+ *  @author Ethan Herrera
+ */
+class ObjectDirectory {
+
+    /** Length of a shard name. */
+    static final int SHARD_LENGTH = 2;
+    /** Suffix of object file names. */
+    static final String SUFFIX = ".txt";
+
+    /** An object directory rooted at DIR. */
+    ObjectDirectory(File dir) {
+        _dir = dir;
+    }
+
+    /** Return the root of this directory. */
+    File dir() {
+        return _dir;
+    }
+
+    /** Return true iff HASH is a possible sha1: 40 lower-case hex
+     *  digits. */
+    static boolean isHash(String hash) {
+        return hash.length() == Utils.UID_LENGTH && isHex(hash);
+    }
+
+    /** Return the file holding the object with sha1 HASH.  The file need
+     *  not exist.  HASH must be a sha1, so that it names a file in this
+     *  directory and nowhere else. */
+    File file(String hash) {
+        if (!isHash(hash)) {
+            throw Utils.error("Bad object id %s.", hash);
+        }
+        return Utils.join(_dir, hash.substring(0, SHARD_LENGTH),
+                          hash + SUFFIX);
+    }
+
+    /** Return the file to write for the object with sha1 HASH, creating
+     *  its shard if need be. */
+    File create(String hash) {
+        File result = file(hash);
+        result.getParentFile().mkdirs();
+        return result;
+    }
+
+    /** Return true iff the object with sha1 HASH is present. */
+    boolean contains(String hash) {
+        return file(hash).isFile();
+    }
+
+    /** Return true iff the object with sha1 HASH is present, setting its
+     *  modification time to now if it is.  A command that uses an object
+     *  already present, rather than writing it, freshens it, so that gc
+     *  gives it the same grace period as one just written. */
+    boolean freshen(String hash) {
+        File file = file(hash);
+        if (!file.isFile()) {
+            return false;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return true;
+    }
+
+    /** Return a new, empty temporary file in this directory, to be
+     *  written and then installed. */
+    File createTemp() {
+        _dir.mkdirs();
+        try {
+            return File.createTempFile("object", ".tmp", _dir);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot create temporary file.");
+        }
+    }
+
+    /** Move the finished temporary file TEMP into place as the object
+     *  with sha1 HASH.  The move is atomic, so readers never see a
+     *  partly written object. */
+    void install(File temp, String hash) {
+        try {
+            Files.move(temp.toPath(), create(hash).toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot store object %s.", hash);
+        }
+    }
+
+    /** Return the shard subdirectories currently present, if any. */
+    List<File> shards() {
+        ArrayList<File> result = new ArrayList<>();
+        if (!_dir.isDirectory()) {
+            return result;
+        }
+        try (DirectoryStream<Path> stream =
+                 Files.newDirectoryStream(_dir.toPath())) {
+            for (Path path : stream) {
+                if (isShardName(path.getFileName().toString())
+                    && Files.isDirectory(path)) {
+                    result.add(path.toFile());
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot list %s.", _dir);
+        }
+        return result;
+    }
+
+    /** Apply ACTION to the sha1 of each object in SHARD, in no particular
+     *  order, reading the shard as a stream. */
+    void forEachIn(File shard, Consumer<String> action) {
+        forEachMatching(shard, "*" + SUFFIX, action);
+    }
+
+    /** Apply ACTION to the sha1 of every object, in no particular order,
+     *  reading one shard at a time. */
+    void forEach(Consumer<String> action) {
+        for (File shard : shards()) {
+            forEachIn(shard, action);
+        }
+    }
+
+    /** Return the sha1 of the object whose sha1 starts with PREFIX, or
+     *  null if there is none or PREFIX is not hex.  Only the shards
+     *  PREFIX could lie in are read.  It is an error for more than one
+     *  object to match. */
+    String findPrefix(String prefix) {
+        if (prefix.isEmpty() || !isHex(prefix)) {
+            return null;
+        }
+        String result = null;
+        for (File shard : shards()) {
+            String name = shard.getName();
+            if (!(prefix.length() >= SHARD_LENGTH
+                  ? prefix.startsWith(name) : name.startsWith(prefix))) {
+                continue;
+            }
+            for (String hash : matching(shard, prefix, 2)) {
+                if (result != null && !result.equals(hash)) {
+                    throw Utils.error("Ambiguous object id %s.", prefix);
+                }
+                result = hash;
+            }
+        }
+        return result;
+    }
+
+    /** Return the files of the objects stored directly in this
+     *  directory, as they were before sharding. */
+    List<File> unsharded() {
+        ArrayList<File> result = new ArrayList<>();
+        for (String fileName : Utils.plainFilenamesIn(_dir)) {
+            if (fileName.endsWith(SUFFIX)) {
+                result.add(Utils.join(_dir, fileName));
+            }
+        }
+        return result;
+    }
+
+    /** Move the unsharded objects into their shards.  Returns the number
+     *  moved. */
+    int migrate() {
+        List<File> files = unsharded();
+        for (File file : files) {
+            String fileName = file.getName();
+            install(file, fileName.substring(0,
+                fileName.length() - SUFFIX.length()));
+        }
+        return files.size();
+    }
+
+    /** Apply ACTION to the sha1 of each object in SHARD whose file name
+     *  matches GLOB. */
+    private void forEachMatching(File shard, String glob,
+                                 Consumer<String> action) {
+        try (DirectoryStream<Path> stream =
+                 Files.newDirectoryStream(shard.toPath(), glob)) {
+            for (Path path : stream) {
+                action.accept(hashOf(path));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot list %s.", shard);
+        }
+    }
+
+    /** Return the sha1s of up to LIMIT objects in SHARD whose sha1s
+     *  start with PREFIX. */
+    private List<String> matching(File shard, String prefix, int limit) {
+        ArrayList<String> result = new ArrayList<>();
+        try (DirectoryStream<Path> stream =
+                 Files.newDirectoryStream(shard.toPath(), "*" + SUFFIX)) {
+            for (Path path : stream) {
+                String hash = hashOf(path);
+                if (hash.startsWith(prefix)) {
+                    result.add(hash);
+                    if (result.size() == limit) {
+                        break;
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot list %s.", shard);
+        }
+        return result;
+    }
+
+    /** Return the sha1 of the object stored at PATH. */
+    private static String hashOf(Path path) {
+        String name = path.getFileName().toString();
+        return name.substring(0, name.length() - SUFFIX.length());
+    }
+
+    /** Return true iff NAME is a possible shard name. */
+    private static boolean isShardName(String name) {
+        return name.length() == SHARD_LENGTH && isHex(name);
+    }
+
+    /** Return true iff TEXT consists of lower-case hex digits. */
+    private static boolean isHex(String text) {
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** The root of this directory. */
+    private final File _dir;
+}
@@ -0,0 +1,189 @@
+package gitlet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The sha1 of an object as a value: its 20 bytes held in three
+ *  primitives, rather than as a 40-character hex String.  An ObjectId
+ *  takes a third of the memory of the String, and compares and hashes
+ *  without touching characters; since sha1s are uniformly distributed,
+ *  the first four bytes serve as the hash code.  Objects are still named
+ *  by hex Strings on disk and in commits; graph walks and indexes that
+ *  hold many ids at once parse them to ObjectIds.
+ *  @author Ethan Herrera
+ */
+final class ObjectId implements Comparable<ObjectId> {
+
+    /** Number of bytes in an id. */
+    static final int LENGTH = Utils.UID_LENGTH / 2;
+
+    /** Canonical ObjectIds, so that ids read many times are held once.
+     *  A pool may be shared between threads. */
+    static final class Pool {
+        /** Return the pooled ObjectId equal to ID, pooling ID if there is
+         *  none. */
+        ObjectId intern(ObjectId id) {
+            ObjectId result = _ids.putIfAbsent(id, id);
+            return result == null ? id : result;
+        }
+
+        /** Return the pooled ObjectId whose hex form is HEX. */
+        ObjectId intern(String hex) {
+            return intern(fromHex(hex));
+        }
+
+        /** Return the number of ids pooled. */
+        int size() {
+            return _ids.size();
+        }
+
+        /** The pooled ids. */
+        private final ConcurrentHashMap<ObjectId, ObjectId> _ids =
+            new ConcurrentHashMap<>();
+    }
+
+    /** The id whose bytes are, big-endian, W0, W1 and W2. */
+    ObjectId(long w0, long w1, int w2) {
+        _w0 = w0;
+        _w1 = w1;
+        _w2 = w2;
+    }
+
+    /** Return the id whose hex form is HEX. */
+    static ObjectId fromHex(String hex) {
+        if (hex.length() != Utils.UID_LENGTH) {
+            throw Utils.error("Bad object id %s.", hex);
+        }
+        return new ObjectId(parse(hex, 0, 16), parse(hex, 16, 16),
+                            (int) parse(hex, 32, 8));
+    }
+
+    /** Return the id whose bytes are BYTES[OFFSET .. OFFSET + LENGTH). */
+    static ObjectId fromBytes(byte[] bytes, int offset) {
+        return new ObjectId(word(bytes, offset, 8), word(bytes, offset + 8, 8),
+                            (int) word(bytes, offset + 16, 4));
+    }
+
+    /** Return the id whose bytes are next in IN. */
+    static ObjectId read(DataInput in) throws IOException {
+        return new ObjectId(in.readLong(), in.readLong(), in.readInt());
+    }
+
+    /** Write my bytes to OUT. */
+    void write(DataOutput out) throws IOException {
+        out.writeLong(_w0);
+        out.writeLong(_w1);
+        out.writeInt(_w2);
+    }
+
+    /** Return my bytes. */
+    byte[] toBytes() {
+        byte[] result = new byte[LENGTH];
+        for (int i = 0; i < 8; i += 1) {
+            result[i] = (byte) (_w0 >>> (56 - 8 * i));
+            result[8 + i] = (byte) (_w1 >>> (56 - 8 * i));
+        }
+        for (int i = 0; i < 4; i += 1) {
+            result[16 + i] = (byte) (_w2 >>> (24 - 8 * i));
+        }
+        return result;
+    }
+
+    /** Return my hex form. */
+    String toHex() {
+        char[] result = new char[Utils.UID_LENGTH];
+        format(_w0, result, 0, 16);
+        format(_w1, result, 16, 16);
+        format(_w2 & 0xffffffffL, result, 32, 8);
+        return new String(result);
+    }
+
+    /** Return my first word. */
+    long w0() {
+        return _w0;
+    }
+
+    /** Return my second word. */
+    long w1() {
+        return _w1;
+    }
+
+    /** Return my last four bytes. */
+    int w2() {
+        return _w2;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ObjectId)) {
+            return false;
+        }
+        ObjectId id = (ObjectId) obj;
+        return _w0 == id._w0 && _w1 == id._w1 && _w2 == id._w2;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (_w0 >>> 32);
+    }
+
+    @Override
+    public int compareTo(ObjectId id) {
+        int c = Long.compareUnsigned(_w0, id._w0);
+        if (c == 0) {
+            c = Long.compareUnsigned(_w1, id._w1);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(_w2, id._w2);
+        }
+        return c;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    /** Return the value of the N hex digits of HEX starting at FROM. */
+    private static long parse(String hex, int from, int n) {
+        long result = 0;
+        for (int i = from; i < from + n; i += 1) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                throw Utils.error("Bad object id %s.", hex);
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    /** Return the big-endian value of the N bytes of BYTES starting at
+     *  FROM. */
+    private static long word(byte[] bytes, int from, int n) {
+        long result = 0;
+        for (int i = from; i < from + n; i += 1) {
+            result = (result << 8) | (bytes[i] & 0xff);
+        }
+        return result;
+    }
+
+    /** Write the N low hex digits of VALUE into RESULT at FROM. */
+    private static void format(long value, char[] result, int from, int n) {
+        for (int i = n - 1; i >= 0; i -= 1) {
+            result[from + i] = HEX_DIGITS[(int) (value >>> (4 * (n - 1 - i)))
+                                          & 0xf];
+        }
+    }
+
+    /** Lower-case hex digits. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** My first eight bytes. */
+    private final long _w0;
+    /** My next eight bytes. */
+    private final long _w1;
+    /** My last four bytes. */
+    private final int _w2;
+}
@@ -0,0 +1,115 @@
+package gitlet;
+
+/** A map from ObjectIds to ints for graph algorithms over many objects.
+ *  Keys are stored as primitives in parallel arrays, with open
+ *  addressing and linear probing, so a slot costs 25 bytes and an entry
+ *  no objects at all: neither keys nor values are boxed.  Entries are
+ *  never removed, except all at once by clear.
+ *  @author Ethan Herrera
+ */
+class ObjectIdIntMap {
+
+    /** Initial number of slots; always a power of two. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** An empty map. */
+    ObjectIdIntMap() {
+        clear();
+    }
+
+    /** Return the number of entries. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff KEY has a value. */
+    boolean containsKey(ObjectId key) {
+        return _used[slot(key)];
+    }
+
+    /** Return the value of KEY, or MISSING if it has none. */
+    int get(ObjectId key, int missing) {
+        int slot = slot(key);
+        return _used[slot] ? _values[slot] : missing;
+    }
+
+    /** Set the value of KEY to VALUE. */
+    void put(ObjectId key, int value) {
+        int slot = slot(key);
+        if (!_used[slot]) {
+            _used[slot] = true;
+            _w0[slot] = key.w0();
+            _w1[slot] = key.w1();
+            _w2[slot] = key.w2();
+            _size += 1;
+        }
+        _values[slot] = value;
+        if (2 * _size > _used.length) {
+            grow();
+        }
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        _w0 = new long[INITIAL_CAPACITY];
+        _w1 = new long[INITIAL_CAPACITY];
+        _w2 = new int[INITIAL_CAPACITY];
+        _values = new int[INITIAL_CAPACITY];
+        _used = new boolean[INITIAL_CAPACITY];
+        _size = 0;
+    }
+
+    /** Return the slot holding KEY, or the empty slot where it would
+     *  go. */
+    private int slot(ObjectId key) {
+        return slot(key.w0(), key.w1(), key.w2());
+    }
+
+    /** Return the slot holding the key whose words are W0, W1 and W2, or
+     *  the empty slot where it would go. */
+    private int slot(long w0, long w1, int w2) {
+        int mask = _used.length - 1;
+        int slot = (int) (w0 >>> 32) & mask;
+        while (_used[slot]
+               && (_w0[slot] != w0 || _w1[slot] != w1 || _w2[slot] != w2)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Double the number of slots, rehashing every entry. */
+    private void grow() {
+        long[] w0 = _w0, w1 = _w1;
+        int[] w2 = _w2, values = _values;
+        boolean[] used = _used;
+        int capacity = 2 * used.length;
+        _w0 = new long[capacity];
+        _w1 = new long[capacity];
+        _w2 = new int[capacity];
+        _values = new int[capacity];
+        _used = new boolean[capacity];
+        for (int i = 0; i < used.length; i += 1) {
+            if (used[i]) {
+                int slot = slot(w0[i], w1[i], w2[i]);
+                _used[slot] = true;
+                _w0[slot] = w0[i];
+                _w1[slot] = w1[i];
+                _w2[slot] = w2[i];
+                _values[slot] = values[i];
+            }
+        }
+    }
+
+    /** First words of the keys, by slot. */
+    private long[] _w0;
+    /** Second words of the keys, by slot. */
+    private long[] _w1;
+    /** Last words of the keys, by slot. */
+    private int[] _w2;
+    /** Values, by slot. */
+    private int[] _values;
+    /** Which slots hold entries. */
+    private boolean[] _used;
+    /** Number of entries. */
+    private int _size;
+}
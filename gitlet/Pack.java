@@ -0,0 +1,236 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** A stream of commits, trees and blobs, sent between repositories in
+ *  one piece.  A pack is the magic number, the object count, then each
+ *  object as a type byte, its 20-byte sha1, its length and its file
+ *  contents, and finally the sha1 of everything before it, including
+ *  any header the pack follows.  Blobs come before the trees that list
+ *  them, trees before the trees and commits that name them, and commits
+ *  before their children, so a receiver that stops part way never holds
+ *  a commit or tree whose history or contents are missing.
+ *  Objects are streamed and never held in memory whole; large
+ *  blobs are read and stored chunk by chunk.
+ *  @author Ethan Herrera
+ */
+class Pack {
+
+    /** Leading magic number. */
+    static final int MAGIC = 0x474c504b;
+    /** Type byte of a blob. */
+    static final int BLOB = 1;
+    /** Type byte of a commit. */
+    static final int COMMIT = 2;
+    /** Type byte of a tree. */
+    static final int TREE = 3;
+    /** Size of the copy buffer. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Write a pack of BLOBS, from BLOBDIR, then TREES, from TREEDIR, then
+     *  COMMITS, from COMMITDIR, to OUT.  TREES must be ordered subtrees
+     *  first and COMMITS parents first.  DIGEST holds any bytes written
+     *  before the pack that the trailer should cover. */
+    static void write(OutputStream out, MessageDigest digest,
+                      List<String> blobs, List<String> trees,
+                      List<String> commits, BlobStore blobDir,
+                      TreeStore treeDir, ObjectDirectory commitDir)
+        throws IOException {
+        DataOutputStream data = new DataOutputStream(new DigestOutputStream(
+            new BufferedOutputStream(out, BUFFER_SIZE), digest));
+        data.writeInt(MAGIC);
+        data.writeInt(blobs.size() + trees.size() + commits.size());
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (String hash : blobs) {
+            data.writeByte(BLOB);
+            data.write(Utils.fromHex(hash));
+            data.writeLong(blobDir.size(hash));
+            try (InputStream in = blobDir.open(hash)) {
+                copy(in, data, buffer);
+            }
+        }
+        for (String hash : trees) {
+            byte[] contents = TreeStore.format(treeDir.read(hash));
+            data.writeByte(TREE);
+            data.write(Utils.fromHex(hash));
+            data.writeLong(contents.length);
+            data.write(contents);
+        }
+        for (String hash : commits) {
+            File file = commitDir.file(hash);
+            data.writeByte(COMMIT);
+            data.write(Utils.fromHex(hash));
+            data.writeLong(file.length());
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                copy(in, data, buffer);
+            }
+        }
+        data.write(digest.digest());
+        data.flush();
+    }
+
+    /** Read a pack from IN, installing its blobs in BLOBDIR, trees in
+     *  TREEDIR and commits in COMMITDIR.  Each object is checked against
+     *  its sha1 before it is installed.  DIGEST holds any bytes read
+     *  before the pack that the trailer covers.  Returns the sha1s of the
+     *  commits received, in the order received. */
+    static List<String> read(InputStream in, MessageDigest digest,
+                             BlobStore blobDir, TreeStore treeDir,
+                             ObjectDirectory commitDir) throws IOException {
+        DataInputStream data = new DataInputStream(
+            new DigestInputStream(in, digest));
+        if (data.readInt() != MAGIC) {
+            throw Utils.error("Not a gitlet pack.");
+        }
+        int count = data.readInt();
+        ArrayList<String> commits = new ArrayList<>();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] hash = new byte[Utils.UID_LENGTH / 2];
+        for (int i = 0; i < count; i += 1) {
+            int type = data.readByte();
+            data.readFully(hash);
+            String id = Utils.toHex(hash);
+            long length = data.readLong();
+            if (type == BLOB) {
+                readBlob(data, id, length, blobDir);
+            } else if (type == TREE) {
+                readTree(data, id, length, treeDir.dir(), buffer);
+            } else if (type == COMMIT) {
+                readCommit(data, id, length, commitDir, buffer);
+                commits.add(id);
+            } else {
+                throw Utils.error("Corrupt pack.");
+            }
+        }
+        byte[] expected = digest.digest();
+        byte[] trailer = new byte[expected.length];
+        data.readFully(trailer);
+        if (!Arrays.equals(expected, trailer)) {
+            throw Utils.error("Corrupt pack.");
+        }
+        return commits;
+    }
+
+    /** Copy IN to OUT through BUFFER. */
+    private static void copy(InputStream in, OutputStream out, byte[] buffer)
+        throws IOException {
+        for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    /** Copy LENGTH bytes from IN to TEMP, using BUFFER, and return
+     *  their sha1. */
+    private static String copy(DataInputStream in, long length, File temp,
+                               byte[] buffer) throws IOException {
+        MessageDigest digest = Utils.newSha1();
+        try (OutputStream out = new DigestOutputStream(
+                 Files.newOutputStream(temp.toPath()), digest)) {
+            while (length > 0) {
+                int n = (int) Math.min(buffer.length, length);
+                in.readFully(buffer, 0, n);
+                out.write(buffer, 0, n);
+                length -= n;
+            }
+        }
+        return Utils.toHex(digest.digest());
+    }
+
+    /** Read the LENGTH-byte blob ID from IN into BLOBDIR. */
+    private static void readBlob(DataInputStream in, String id, long length,
+                                 BlobStore blobDir) throws IOException {
+        InputStream contents = new Limited(in, length);
+        if (!blobDir.store(contents, length).equals(id)) {
+            throw Utils.error("Corrupt blob %s in pack.", id);
+        }
+    }
+
+    /** Read the LENGTH-byte tree ID from IN into TREEDIR, using
+     *  BUFFER, refusing it if an entry's name is not one TreeStore
+     *  allows. */
+    private static void readTree(DataInputStream in, String id, long length,
+                                 ObjectDirectory treeDir, byte[] buffer)
+        throws IOException {
+        File temp = treeDir.createTemp();
+        boolean valid = copy(in, length, temp, buffer).equals(id);
+        try {
+            TreeStore.parse(Utils.readContents(temp));
+        } catch (GitletException excp) {
+            valid = false;
+        }
+        if (!valid) {
+            temp.delete();
+            throw Utils.error("Corrupt tree %s in pack.", id);
+        }
+        treeDir.install(temp, id);
+    }
+
+    /** Read the LENGTH-byte commit ID from IN into COMMITDIR, using
+     *  BUFFER. */
+    private static void readCommit(DataInputStream in, String id,
+                                   long length, ObjectDirectory commitDir,
+                                   byte[] buffer) throws IOException {
+        File temp = commitDir.createTemp();
+        copy(in, length, temp, buffer);
+        boolean valid;
+        try {
+            Commit commit = Utils.readObject(temp, Commit.class);
+            valid = commit.getHash().equals(id) && commit.isIntact();
+        } catch (IllegalArgumentException excp) {
+            valid = false;
+        }
+        if (!valid) {
+            temp.delete();
+            throw Utils.error("Corrupt commit %s in pack.", id);
+        }
+        commitDir.install(temp, id);
+    }
+
+    /** The first bytes of a stream, ending where an object in a pack
+     *  ends. */
+    private static class Limited extends FilterInputStream {
+
+        /** The next LENGTH bytes of IN. */
+        Limited(InputStream in, long length) {
+            super(in);
+            _left = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (_left == 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, _left));
+            if (n < 0) {
+                throw new EOFException();
+            }
+            _left -= n;
+            return n;
+        }
+
+        /** Bytes not yet read. */
+        private long _left;
+    }
+}
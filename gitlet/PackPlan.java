@@ -0,0 +1,196 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+/** The objects a receiver lacks for a set of wanted commits.  History is
+ *  walked back from the wants until it reaches commits the receiver
+ *  has; the trees and blobs of those boundary commits are taken to be
+ *  present too.  The trees of the missing commits are then walked,
+ *  skipping any subtree present, so only the trees and blobs changed
+ *  since the boundary need be asked about.  With reachability bitmaps,
+ *  the objects to send are instead those the wants reach and the
+ *  receiver's heads do not, found by a bitmap difference.
+ *  @author Ethan Herrera
+ */
+class PackPlan {
+
+    /** The objects, read from COMMITDIR and TREEDIR, needed by a receiver
+     *  for which HASCOMMIT, HASTREE and HASBLOB tell which commits, trees
+     *  and blobs it holds, to hold the commits WANTS and their history.
+     *  A receiver holding a tree holds everything beneath it. */
+    PackPlan(ObjectDirectory commitDir, TreeStore treeDir,
+             Collection<String> wants, Predicate<String> hasCommit,
+             Predicate<String> hasTree, Predicate<String> hasBlob) {
+        _commitDir = commitDir;
+        _treeDir = treeDir;
+        HashMap<ObjectId, Commit> missing = new HashMap<>();
+        HashSet<ObjectId> boundary = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>(wants);
+        while (!queue.isEmpty()) {
+            String hash = queue.remove();
+            ObjectId id = ObjectId.fromHex(hash);
+            if (missing.containsKey(id) || boundary.contains(id)) {
+                continue;
+            }
+            if (hasCommit.test(hash)) {
+                boundary.add(id);
+                continue;
+            }
+            Commit commit = readCommit(hash);
+            missing.put(id, commit);
+            queue.addAll(parentsOf(commit));
+        }
+        HashSet<ObjectId> presentTrees = new HashSet<>();
+        HashSet<ObjectId> presentBlobs = new HashSet<>();
+        presentTrees.add(ObjectId.fromHex(TreeStore.EMPTY));
+        for (ObjectId id : boundary) {
+            treeDir.walk(readCommit(id.toHex()).getTree(), presentTrees,
+                         presentBlobs);
+        }
+        _commits = new ArrayList<>();
+        _trees = new ArrayList<>();
+        _blobs = new ArrayList<>();
+        for (ObjectId id : parentsFirst(wants, missing)) {
+            _commits.add(id.toHex());
+            addTree(missing.get(id).getTree(), presentTrees, presentBlobs,
+                    hasTree, hasBlob);
+        }
+    }
+
+    /** The objects, numbered by BITMAPS, needed by a receiver whose
+     *  branch heads include HAVES, all of which are present here, and
+     *  for which HASCOMMIT, HASTREE and HASBLOB tell which commits, trees
+     *  and blobs it holds, to hold the commits WANTS and their
+     *  history. */
+    PackPlan(ReachabilityBitmaps bitmaps, Collection<String> wants,
+             Collection<String> haves, Predicate<String> hasCommit,
+             Predicate<String> hasTree, Predicate<String> hasBlob) {
+        _commitDir = null;
+        _treeDir = null;
+        BitSet objects = bitmaps.reachable(wants);
+        objects.andNot(bitmaps.reachable(haves));
+        _commits = missing(bitmaps.objects(objects, Pack.COMMIT), hasCommit);
+        _trees = missing(bitmaps.objects(objects, Pack.TREE), hasTree);
+        _blobs = missing(bitmaps.objects(objects, Pack.BLOB), hasBlob);
+    }
+
+    /** Return the commits to send, each after its parents. */
+    List<String> commits() {
+        return _commits;
+    }
+
+    /** Return the trees to send, each after its subtrees. */
+    List<String> trees() {
+        return _trees;
+    }
+
+    /** Return the blobs to send. */
+    List<String> blobs() {
+        return _blobs;
+    }
+
+    /** Return the parents of COMMIT. */
+    static List<String> parentsOf(Commit commit) {
+        ArrayList<String> result = new ArrayList<>();
+        if (commit.getParentHash() != null) {
+            result.add(commit.getParentHash());
+        }
+        if (commit instanceof MergeCommit) {
+            result.add(((MergeCommit) commit).getStepParent());
+        }
+        return result;
+    }
+
+    /** Return the keys of COMMITS, which are among WANTS and their
+     *  ancestors, ordered so that each comes after its parents. */
+    static List<ObjectId> parentsFirst(Collection<String> wants,
+                                       HashMap<ObjectId, Commit> commits) {
+        ArrayList<ObjectId> result = new ArrayList<>();
+        HashSet<ObjectId> visited = new HashSet<>();
+        HashSet<ObjectId> done = new HashSet<>();
+        ArrayDeque<ObjectId> stack = new ArrayDeque<>();
+        for (String want : wants) {
+            ObjectId id = ObjectId.fromHex(want);
+            if (commits.containsKey(id)) {
+                stack.push(id);
+            }
+        }
+        while (!stack.isEmpty()) {
+            ObjectId id = stack.peek();
+            if (visited.add(id)) {
+                for (String hash : parentsOf(commits.get(id))) {
+                    ObjectId parent = ObjectId.fromHex(hash);
+                    if (commits.containsKey(parent)
+                        && !visited.contains(parent)) {
+                        stack.push(parent);
+                    }
+                }
+            } else {
+                stack.pop();
+                if (done.add(id)) {
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Add TREE, and the subtrees and blobs beneath it, to those to send,
+     *  unless they are in PRESENTTREES and PRESENTBLOBS, to which they are
+     *  added, or HASTREE or HASBLOB says the receiver holds them. */
+    private void addTree(String tree, HashSet<ObjectId> presentTrees,
+                         HashSet<ObjectId> presentBlobs,
+                         Predicate<String> hasTree,
+                         Predicate<String> hasBlob) {
+        if (!presentTrees.add(ObjectId.fromHex(tree))
+            || hasTree.test(tree)) {
+            return;
+        }
+        for (TreeStore.Entry entry : _treeDir.read(tree).values()) {
+            if (entry.isTree()) {
+                addTree(entry.id(), presentTrees, presentBlobs, hasTree,
+                        hasBlob);
+            } else if (presentBlobs.add(ObjectId.fromHex(entry.id()))
+                       && !hasBlob.test(entry.id())) {
+                _blobs.add(entry.id());
+            }
+        }
+        _trees.add(tree);
+    }
+
+    /** Return the members of OBJECTS for which HAS is false, in
+     *  order. */
+    private static List<String> missing(List<String> objects,
+                                        Predicate<String> has) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String hash : objects) {
+            if (!has.test(hash)) {
+                result.add(hash);
+            }
+        }
+        return result;
+    }
+
+    /** Return the commit with sha1 HASH. */
+    private Commit readCommit(String hash) {
+        return Utils.readObject(_commitDir.file(hash), Commit.class);
+    }
+
+    /** Where commits are read from, when walking. */
+    private final ObjectDirectory _commitDir;
+    /** Where trees are read from, when walking. */
+    private final TreeStore _treeDir;
+    /** Commits to send, parents first. */
+    private final List<String> _commits;
+    /** Trees to send, subtrees first. */
+    private final List<String> _trees;
+    /** Blobs to send. */
+    private final List<String> _blobs;
+}
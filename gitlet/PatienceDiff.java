@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/** Patience diff: anchors each region on the lines that occur exactly once
+ *  in both sequences, keeping the longest run of such lines that appear in
+ *  the same order in each.
+ *  @author Ethan Herrera
+ */
+class PatienceDiff extends LineMatcher {
+
+    /** A patience matcher comparing A against B. */
+    PatienceDiff(List<String> a, List<String> b) {
+        super(a, b);
+    }
+
+    @Override
+    int[] anchors(int aLo, int aHi, int bLo, int bHi) {
+        HashMap<String, int[]> seen = new HashMap<>();
+        for (int i = aLo; i < aHi; i += 1) {
+            int[] e = seen.computeIfAbsent(_a.get(i),
+                k -> new int[] {0, -1, 0, -1});
+            e[0] += 1;
+            e[1] = i;
+        }
+        for (int j = bLo; j < bHi; j += 1) {
+            int[] e = seen.get(_b.get(j));
+            if (e != null) {
+                e[2] += 1;
+                e[3] = j;
+            }
+        }
+        int n = 0;
+        int[] uniqA = new int[aHi - aLo], uniqB = new int[aHi - aLo];
+        for (int i = aLo; i < aHi; i += 1) {
+            int[] e = seen.get(_a.get(i));
+            if (e[0] == 1 && e[2] == 1) {
+                uniqA[n] = i;
+                uniqB[n] = e[3];
+                n += 1;
+            }
+        }
+        if (n == 0) {
+            return new int[0];
+        }
+        int[] lis = longestIncreasing(uniqB, n);
+        int[] result = new int[3 * lis.length];
+        for (int k = 0; k < lis.length; k += 1) {
+            result[3 * k] = uniqA[lis[k]];
+            result[3 * k + 1] = uniqB[lis[k]];
+            result[3 * k + 2] = 1;
+        }
+        return result;
+    }
+
+    /** Return the indices of a longest strictly increasing subsequence of
+     *  the first N values of VALS, found by patience sorting. */
+    static int[] longestIncreasing(int[] vals, int n) {
+        int[] tops = new int[n];
+        int[] back = new int[n];
+        int piles = 0;
+        for (int k = 0; k < n; k += 1) {
+            int lo = 0, hi = piles;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (vals[tops[mid]] < vals[k]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            back[k] = lo > 0 ? tops[lo - 1] : -1;
+            tops[lo] = k;
+            if (lo == piles) {
+                piles += 1;
+            }
+        }
+        int[] result = new int[piles];
+        for (int k = tops[piles - 1], p = piles - 1; k >= 0;
+             k = back[k], p -= 1) {
+            result[p] = k;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,285 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeMap;
+
+/** The objects reachable from commits, as bitmaps.  Every object reached
+ *  is given a position in an index, in the order a pack would carry it:
+ *  each commit after its parents, and after its tree, and each tree
+ *  after the subtrees and blobs beneath it.  A set of objects is then a
+ *  bitmap over positions, and asking which objects one set of commits
+ *  reaches and another does not is a union and a difference of bitmaps.
+ *  Reading a bitmap's set positions in order yields objects in an order
+ *  a pack can send.
+ *
+ *  The bitmaps of selected commits are stored, compressed by Ewah, in
+ *  the file "bitmaps" of the .gitlet directory with the index.  The
+ *  objects a commit reaches are its stored bitmap, if any; otherwise
+ *  history is walked back until it reaches commits with stored bitmaps,
+ *  which are joined in, and only the commits and trees passed on the way
+ *  are read.  The commits selected are the branch heads and every
+ *  commit whose first-parent height (its distance from a root commit
+ *  along first parents) is a multiple of SPACING, so no walk goes far
+ *  along a first-parent chain before meeting a stored bitmap, and the
+ *  commits selected do not change as history grows.  Positions are
+ *  never reused, so an update appends the objects new since the last
+ *  one, computes bitmaps only for commits newly selected, and keeps the
+ *  rest.  Objects are never changed once written, so a stored bitmap
+ *  stays right for as long as its commit's objects exist; gc, which
+ *  deletes objects, rebuilds the file afterwards.
+ *  @author Ethan Herrera
+ */
+class ReachabilityBitmaps {
+
+    /** Commits whose first-parent height is a multiple of this are
+     *  given bitmaps. */
+    static final int SPACING = 64;
+    /** Leading magic number of the file. */
+    static final int MAGIC = 0x474c424d;
+
+    /** The bitmaps of the repository stored in DIR, whose commits are
+     *  in COMMITS and trees in TREES. */
+    ReachabilityBitmaps(File dir, ObjectDirectory commits, TreeStore trees) {
+        _file = Utils.join(dir, "bitmaps");
+        _commits = commits;
+        _trees = trees;
+    }
+
+    /** Return true iff bitmaps have been written. */
+    boolean exists() {
+        return _file.isFile();
+    }
+
+    /** Return the objects reachable from the commits COMMITS, as a bitmap
+     *  over positions.  Objects not yet in the index are added to it,
+     *  in memory only. */
+    BitSet reachable(Collection<String> commits) {
+        load();
+        BitSet result = new BitSet();
+        HashMap<ObjectId, Commit> walked = new HashMap<>();
+        ArrayDeque<String> queue = new ArrayDeque<>(commits);
+        while (!queue.isEmpty()) {
+            String hash = queue.remove();
+            ObjectId id = ObjectId.fromHex(hash);
+            int position = _positions[Pack.COMMIT].get(id, -1);
+            if (walked.containsKey(id)
+                || position >= 0 && result.get(position)) {
+                continue;
+            }
+            BitSet bitmap = _bitmaps.get(id);
+            if (bitmap != null) {
+                result.or(bitmap);
+                continue;
+            }
+            Commit commit = Utils.readObject(_commits.file(hash),
+                                             Commit.class);
+            walked.put(id, commit);
+            queue.addAll(PackPlan.parentsOf(commit));
+        }
+        for (ObjectId id : PackPlan.parentsFirst(commits, walked)) {
+            Commit commit = walked.get(id);
+            addTree(commit.getTree(), result);
+            String parent = commit.getParentHash();
+            int height = parent == null ? 0
+                : _heights.get(ObjectId.fromHex(parent), -1) + 1;
+            result.set(position(Pack.COMMIT, id, height));
+        }
+        return result;
+    }
+
+    /** Return the sha1s of the objects of type TYPE, a Pack type byte,
+     *  whose positions are set in BITS, in position order. */
+    List<String> objects(BitSet bits, int type) {
+        ArrayList<String> result = new ArrayList<>();
+        for (ObjectId id : ids(bits, type)) {
+            result.add(id.toHex());
+        }
+        return result;
+    }
+
+    /** Return the objects of type TYPE, a Pack type byte, whose
+     *  positions are set in BITS, in position order. */
+    List<ObjectId> ids(BitSet bits, int type) {
+        ArrayList<ObjectId> result = new ArrayList<>();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            if (_types.get(i) == type) {
+                result.add(_ids.get(i));
+            }
+        }
+        return result;
+    }
+
+    /** Bring the stored bitmaps up to date for the commits ROOTS, the
+     *  branch heads and worktree heads: index the objects they reach,
+     *  compute bitmaps for the commits newly selected, drop those no
+     *  longer selected, and write the file.  Returns the number of
+     *  bitmaps stored. */
+    int update(Collection<String> roots) {
+        BitSet all = reachable(roots);
+        HashSet<ObjectId> rootIds = new HashSet<>();
+        for (String root : roots) {
+            rootIds.add(ObjectId.fromHex(root));
+        }
+        TreeMap<Integer, ObjectId> selected = new TreeMap<>();
+        for (ObjectId id : ids(all, Pack.COMMIT)) {
+            if (_heights.get(id, -1) % SPACING == 0
+                || rootIds.contains(id)) {
+                selected.put(_positions[Pack.COMMIT].get(id, -1), id);
+            }
+        }
+        _bitmaps.keySet().retainAll(selected.values());
+        for (ObjectId id : selected.values()) {
+            if (!_bitmaps.containsKey(id)) {
+                _bitmaps.put(id, reachable(List.of(id.toHex())));
+            }
+        }
+        write();
+        return _bitmaps.size();
+    }
+
+    /** Discard the index and bitmaps and build them afresh for the
+     *  commits ROOTS, numbering only the objects they reach.  Returns
+     *  the number of bitmaps stored. */
+    int rebuild(Collection<String> roots) {
+        _loaded = true;
+        _ids.clear();
+        _types.clear();
+        for (int type = Pack.BLOB; type <= Pack.TREE; type += 1) {
+            _positions[type].clear();
+        }
+        _heights.clear();
+        _bitmaps.clear();
+        return update(roots);
+    }
+
+    /** Add TREE and the objects beneath it to BITS, numbering those not
+     *  yet in the index.  Subtrees already in BITS are not entered. */
+    private void addTree(String tree, BitSet bits) {
+        if (tree.equals(TreeStore.EMPTY)) {
+            return;
+        }
+        ObjectId id = ObjectId.fromHex(tree);
+        int position = _positions[Pack.TREE].get(id, -1);
+        if (position >= 0 && bits.get(position)) {
+            return;
+        }
+        for (TreeStore.Entry entry : _trees.read(tree).values()) {
+            if (entry.isTree()) {
+                addTree(entry.id(), bits);
+            } else {
+                bits.set(position(Pack.BLOB, ObjectId.fromHex(entry.id()),
+                                  -1));
+            }
+        }
+        bits.set(position < 0 ? position(Pack.TREE, id, -1) : position);
+    }
+
+    /** Return the position of the object of type TYPE with sha1 ID,
+     *  appending it to the index if need be; a commit's first-parent
+     *  height is HEIGHT. */
+    private int position(int type, ObjectId id, int height) {
+        int position = _positions[type].get(id, -1);
+        if (position >= 0) {
+            return position;
+        }
+        _ids.add(id);
+        _types.add(type);
+        _positions[type].put(id, _ids.size() - 1);
+        if (type == Pack.COMMIT) {
+            _heights.put(id, height);
+        }
+        return _ids.size() - 1;
+    }
+
+    /** Read the file, once, if it exists. */
+    private void load() {
+        if (_loaded) {
+            return;
+        }
+        _loaded = true;
+        if (!_file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Files.newInputStream(
+                     _file.toPath())))) {
+            if (in.readInt() != MAGIC) {
+                throw Utils.error("Corrupt bitmaps.");
+            }
+            int objects = in.readInt();
+            for (int i = 0; i < objects; i += 1) {
+                int type = in.readByte();
+                if (type < Pack.BLOB || type > Pack.TREE) {
+                    throw Utils.error("Corrupt bitmaps.");
+                }
+                position(type, ObjectId.read(in),
+                         type == Pack.COMMIT ? in.readInt() : -1);
+            }
+            int bitmaps = in.readInt();
+            for (int i = 0; i < bitmaps; i += 1) {
+                _bitmaps.put(ObjectId.read(in), Ewah.read(in));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", _file);
+        }
+    }
+
+    /** Write the index and bitmaps to the file, replacing it whole. */
+    private void write() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(_ids.size());
+            for (int i = 0; i < _ids.size(); i += 1) {
+                out.writeByte(_types.get(i));
+                _ids.get(i).write(out);
+                if (_types.get(i) == Pack.COMMIT) {
+                    out.writeInt(_heights.get(_ids.get(i), -1));
+                }
+            }
+            out.writeInt(_bitmaps.size());
+            for (ObjectId id : _bitmaps.keySet()) {
+                id.write(out);
+                Ewah.write(out, _bitmaps.get(id));
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Internal error writing bitmaps.");
+        }
+        Utils.replaceContents(_file, bytes.toByteArray());
+    }
+
+    /** Where the index and bitmaps are kept. */
+    private final File _file;
+    /** Commit objects. */
+    private final ObjectDirectory _commits;
+    /** Directory trees. */
+    private final TreeStore _trees;
+    /** True once the file has been read. */
+    private boolean _loaded;
+    /** The sha1 of the object at each position. */
+    private final ArrayList<ObjectId> _ids = new ArrayList<>();
+    /** The Pack type byte of the object at each position. */
+    private final ArrayList<Integer> _types = new ArrayList<>();
+    /** The position of each object, indexed by Pack type byte, since a
+     *  blob and a tree may have the same sha1. */
+    private final ObjectIdIntMap[] _positions = {
+        null, new ObjectIdIntMap(), new ObjectIdIntMap(), new ObjectIdIntMap()
+    };
+    /** The first-parent height of each indexed commit. */
+    private final ObjectIdIntMap _heights = new ObjectIdIntMap();
+    /** The stored bitmaps, by commit sha1. */
+    private final HashMap<ObjectId, BitSet> _bitmaps = new HashMap<>();
+}
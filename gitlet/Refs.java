@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/** The branches of a repository.  A branch is either loose, the file
+ *  branches/NAME.txt holding its head, or packed, a line "SHA1 NAME" of
+ *  the file packed-refs, whose lines are sorted by name.  A loose branch
+ *  overrides a packed one of the same name, so updating a branch writes
+ *  only its loose file.  "pack-refs" moves every loose branch into
+ *  packed-refs, after which listing the branches reads one file rather
+ *  than a directory of thousands, and looking one up is a binary search
+ *  of that file's bytes that parses only the lines it lands on.  The
+ *  packed file is only ever replaced whole, by renaming a new file over
+ *  it, so it is read again only when its identity, modification time or
+ *  length change, and a Refs may be shared by threads.  Branch names
+ *  are ordered by their UTF-8 bytes, and must be valid as isValid says
+ *  to be stored; a name that is not valid names no branch.
+ *  @author Ethan Herrera
+ */
+class Refs {
+
+    /** Name of the packed branches file. */
+    static final String PACKED = "packed-refs";
+
+    /** The packed branches file as last read. */
+    private static final class Snapshot {
+        /** The contents DATA of a file with attributes ATTRS. */
+        Snapshot(byte[] data, BasicFileAttributes attrs) {
+            _data = data;
+            _attrs = attrs;
+        }
+
+        /** Return true iff ATTRS are those of the file read. */
+        boolean current(BasicFileAttributes attrs) {
+            return Objects.equals(attrs.fileKey(), _attrs.fileKey())
+                && attrs.lastModifiedTime().equals(_attrs.lastModifiedTime())
+                && attrs.size() == _attrs.size();
+        }
+
+        /** The file's contents. */
+        private final byte[] _data;
+        /** The file's attributes when read. */
+        private final BasicFileAttributes _attrs;
+    }
+
+    /** The branches of the repository whose main .gitlet directory is
+     *  DIR. */
+    Refs(File dir) {
+        _loose = Utils.join(dir, "branches");
+        _packedFile = Utils.join(dir, PACKED);
+    }
+
+    /** Return the sha1 at the head of BRANCH, or null if there is no such
+     *  branch. */
+    String get(String branch) {
+        if (!isValid(branch)) {
+            return null;
+        }
+        File loose = looseFile(branch);
+        if (loose.isFile()) {
+            return Utils.readContentsAsString(loose);
+        }
+        return findPacked(packed(), branch);
+    }
+
+    /** Return true iff BRANCH exists. */
+    boolean contains(String branch) {
+        return get(branch) != null;
+    }
+
+    /** Point BRANCH at COMMIT, creating it if need be.  It is an error
+     *  for BRANCH not to be valid. */
+    void set(String branch, String commit) {
+        File file = looseFile(branch);
+        file.getParentFile().mkdirs();
+        Utils.replaceContents(file, commit);
+    }
+
+    /** Delete BRANCH, returning true iff it existed.  A packed branch is
+     *  removed by rewriting packed-refs, so the caller must hold
+     *  RepoLock.packedRefs(). */
+    boolean delete(String branch) {
+        if (!isValid(branch)) {
+            return false;
+        }
+        byte[] data = packed();
+        boolean existed = false;
+        if (findPacked(data, branch) != null) {
+            TreeMap<String, String> packed = new TreeMap<>(ORDER);
+            parse(data, packed);
+            packed.remove(branch);
+            writePacked(packed);
+            existed = true;
+        }
+        return looseFile(branch).delete() || existed;
+    }
+
+    /** Return the names of all branches, in order, including the
+     *  remote-tracking branches, named REMOTE/BRANCH. */
+    List<String> names() {
+        TreeMap<String, String> result = new TreeMap<>(ORDER);
+        parse(packed(), result);
+        addLoose(_loose, "", result, false);
+        return new ArrayList<>(result.keySet());
+    }
+
+    /** Return the head of every branch, by name, in order. */
+    TreeMap<String, String> all() {
+        TreeMap<String, String> result = new TreeMap<>(ORDER);
+        parse(packed(), result);
+        addLoose(_loose, "", result, true);
+        return result;
+    }
+
+    /** Move every loose branch into packed-refs, returning the number of
+     *  branches packed.  The caller must hold the repository
+     *  exclusive. */
+    int pack() {
+        TreeMap<String, String> all = all();
+        writePacked(all);
+        for (String branch : all.keySet()) {
+            looseFile(branch).delete();
+        }
+        File[] dirs = _loose.listFiles(File::isDirectory);
+        if (dirs != null) {
+            for (File dir : dirs) {
+                dir.delete();
+            }
+        }
+        return all.size();
+    }
+
+    /** Return the loose file of BRANCH, which set writes and which may
+     *  also be replaced directly.  It is an error for BRANCH not to be
+     *  valid. */
+    File looseFile(String branch) {
+        if (!isValid(branch)) {
+            throw Utils.error("Invalid branch name %s.", branch);
+        }
+        return Utils.join(_loose, branch + ".txt");
+    }
+
+    /** Return true iff BRANCH is a valid branch name, much as git's
+     *  check-ref-format has it: one or more components separated by "/",
+     *  none of them empty, starting with "." or ending with ".lock"; no
+     *  "..", "@{", control characters, spaces, or any of ~^:?*[\; and
+     *  not "@" or ending with ".".  So every branch names a file beneath
+     *  the branches directory and fits on one line of packed-refs. */
+    static boolean isValid(String branch) {
+        if (branch.isEmpty() || branch.equals("@") || branch.endsWith(".")
+            || branch.contains("..") || branch.contains("@{")) {
+            return false;
+        }
+        for (int i = 0; i < branch.length(); i += 1) {
+            char c = branch.charAt(i);
+            if (c <= ' ' || c == 0x7f || "~^:?*[\\".indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        for (String name : branch.split("/", -1)) {
+            if (name.isEmpty() || name.startsWith(".")
+                || name.endsWith(".lock")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the contents of packed-refs, empty if there is none,
+     *  reading it only if it has changed since it was last read. */
+    private byte[] packed() {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(
+                _packedFile.toPath(), BasicFileAttributes.class);
+            Snapshot snapshot = _snapshot;
+            if (snapshot != null && snapshot.current(attrs)) {
+                return snapshot._data;
+            }
+            byte[] data = Files.readAllBytes(_packedFile.toPath());
+            _snapshot = new Snapshot(data, attrs);
+            return data;
+        } catch (NoSuchFileException excp) {
+            return new byte[0];
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read %s.", PACKED);
+        }
+    }
+
+    /** Replace packed-refs with the branches BRANCHES, atomically. */
+    private void writePacked(Map<String, String> branches) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            text.append(branch.getValue()).append(' ')
+                .append(branch.getKey()).append('\n');
+        }
+        Utils.replaceContents(_packedFile, text.toString());
+        _snapshot = null;
+    }
+
+    /** Return the sha1 of BRANCH in the packed-refs contents DATA, or
+     *  null if it is not there, by binary search. */
+    private static String findPacked(byte[] data, String branch) {
+        byte[] name = branch.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = data.length;
+        while (lo < hi) {
+            int start = (lo + hi) / 2;
+            while (start > lo && data[start - 1] != '\n') {
+                start -= 1;
+            }
+            int end = start;
+            while (end < hi && data[end] != '\n') {
+                end += 1;
+            }
+            int nameStart = start + Utils.UID_LENGTH + 1;
+            if (nameStart > end) {
+                throw Utils.error("Corrupt %s.", PACKED);
+            }
+            int c = Arrays.compareUnsigned(data, nameStart, end,
+                                           name, 0, name.length);
+            if (c == 0) {
+                return new String(data, start, Utils.UID_LENGTH,
+                                  StandardCharsets.UTF_8);
+            } else if (c < 0) {
+                lo = end + 1;
+            } else {
+                hi = start;
+            }
+        }
+        return null;
+    }
+
+    /** Add the branches in the packed-refs contents DATA to RESULT. */
+    private static void parse(byte[] data, Map<String, String> result) {
+        String text = new String(data, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            } else if (line.length() <= Utils.UID_LENGTH + 1
+                       || line.charAt(Utils.UID_LENGTH) != ' ') {
+                throw Utils.error("Corrupt %s.", PACKED);
+            }
+            result.put(line.substring(Utils.UID_LENGTH + 1),
+                       line.substring(0, Utils.UID_LENGTH));
+        }
+    }
+
+    /** Add to RESULT the loose branches in DIR, their names preceded by
+     *  PREFIX, with their heads if READ and null otherwise. */
+    private static void addLoose(File dir, String prefix,
+                                 Map<String, String> result, boolean read) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                addLoose(file, prefix + name + "/", result, read);
+            } else if (name.endsWith(".txt")) {
+                result.put(prefix + name.substring(0, name.length() - 4),
+                           read ? Utils.readContentsAsString(file) : null);
+            }
+        }
+    }
+
+    /** Order of branch names: by their UTF-8 bytes, as in packed-refs. */
+    private static final Comparator<String> ORDER = (a, b) ->
+        Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8),
+                               b.getBytes(StandardCharsets.UTF_8));
+
+    /** Directory of loose branches. */
+    private final File _loose;
+    /** The packed branches file. */
+    private final File _packedFile;
+    /** The packed branches file as last read, or null. */
+    private volatile Snapshot _snapshot;
+}
@@ -0,0 +1,176 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/** A gitlet repository reached through the file system, named by its
+ *  .gitlet directory.  Objects move between two repositories as a pack:
+ *  the receiver's branch heads are the commits it has, the sender's
+ *  branch head is the commit it wants, and only the commits between
+ *  them, with the trees and blobs the receiver lacks, are streamed
+ *  across.  A sender with reachability bitmaps finds them by a bitmap
+ *  difference rather than by walking history.
+ *  @author Ethan Herrera
+ */
+class Remote {
+
+    /** The repository stored in DIR. */
+    Remote(File dir) {
+        _dir = dir;
+        _refs = new Refs(dir);
+        _commits = new ObjectDirectory(Utils.join(dir, "commits"));
+        _blobs = new BlobStore(dir);
+        _trees = new TreeStore(dir);
+        _bitmaps = new ReachabilityBitmaps(dir, _commits, _trees);
+        _changedPaths = new ChangedPathIndex(
+            Utils.join(dir, "commit-graph", "changed-paths"));
+    }
+
+    /** Return true iff the repository exists. */
+    boolean exists() {
+        return _dir.isDirectory();
+    }
+
+    /** Return true iff the commit with sha1 HASH is present. */
+    boolean contains(String hash) {
+        return _commits.contains(hash);
+    }
+
+    /** Return the sha1 at the head of BRANCH, or null if there is no such
+     *  branch. */
+    String branch(String branch) {
+        return _refs.get(branch);
+    }
+
+    /** Point BRANCH at COMMIT, creating it if need be, and move the head
+     *  too of the worktree that has BRANCH checked out. */
+    void setBranch(String branch, String commit) {
+        new Worktrees(_dir).setBranch(branch, commit);
+    }
+
+    /** Take the locks on this repository needed to update BRANCH,
+     *  returning them for release. */
+    RepoLock lockBranch(String branch) {
+        RepoLock lock = new RepoLock(_dir);
+        lock.repository(true);
+        lock.head(true);
+        lock.branches(List.of(branch));
+        return lock;
+    }
+
+    /** Return the heads of all branches. */
+    List<String> haves() {
+        return new ArrayList<>(_refs.all().values());
+    }
+
+    /** Return true iff ANCESTOR is COMMIT or one of its ancestors. */
+    boolean isAncestor(String ancestor, String commit) {
+        if (!_commits.contains(ancestor)) {
+            return false;
+        }
+        HashSet<ObjectId> seen = new HashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        queue.add(commit);
+        while (!queue.isEmpty()) {
+            String hash = queue.remove();
+            if (hash.equals(ancestor)) {
+                return true;
+            }
+            if (seen.add(ObjectId.fromHex(hash))) {
+                queue.addAll(PackPlan.parentsOf(readCommit(hash)));
+            }
+        }
+        return false;
+    }
+
+    /** Send TO the commit WANT and everything it depends on that TO
+     *  lacks.  Returns the number of commits sent. */
+    int sendTo(Remote to, String want) {
+        HashSet<String> haves = new HashSet<>(to.haves());
+        PackPlan plan;
+        if (_bitmaps.exists()) {
+            haves.removeIf(hash -> !_commits.contains(hash));
+            plan = new PackPlan(_bitmaps, List.of(want), haves,
+                                to._commits::contains, to._trees::contains,
+                                to._blobs::contains);
+        } else {
+            plan = new PackPlan(_commits, _trees, List.of(want),
+                hash -> haves.contains(hash) || to._commits.contains(hash),
+                to._trees::contains, to._blobs::contains);
+        }
+        transfer(to, plan);
+        return plan.commits().size();
+    }
+
+    /** Stream the objects PLAN lists to TO as one pack. */
+    private void transfer(Remote to, PackPlan plan) {
+        IOException[] failure = new IOException[1];
+        try (PipedInputStream in = new PipedInputStream(Pack.BUFFER_SIZE)) {
+            PipedOutputStream out = new PipedOutputStream(in);
+            Thread sender = new Thread(() -> {
+                try (out) {
+                    Pack.write(out, Utils.newSha1(), plan.blobs(),
+                               plan.trees(), plan.commits(), _blobs, _trees,
+                               _commits);
+                } catch (IOException excp) {
+                    failure[0] = excp;
+                }
+            });
+            sender.start();
+            to.receive(in, Utils.newSha1());
+            sender.join();
+        } catch (IOException | InterruptedException excp) {
+            throw Utils.error("Cannot transfer objects.");
+        }
+        if (failure[0] != null) {
+            throw Utils.error("Cannot transfer objects.");
+        }
+    }
+
+    /** Install the objects in the pack read from IN, whose preceding
+     *  bytes DIGEST has already taken in, and record the commits received
+     *  in the commit graph.  Returns the sha1s of those commits. */
+    List<String> receive(InputStream in, MessageDigest digest)
+        throws IOException {
+        List<String> received = Pack.read(in, digest, _blobs, _trees,
+                                          _commits);
+        for (String hash : received) {
+            Commit commit = readCommit(hash);
+            String parentTree = TreeStore.EMPTY;
+            if (commit.getParentHash() != null) {
+                parentTree = readCommit(commit.getParentHash()).getTree();
+            }
+            _changedPaths.add(commit, _trees.diff(parentTree,
+                                                  commit.getTree()).keySet());
+        }
+        return received;
+    }
+
+    /** Return the commit with sha1 HASH. */
+    private Commit readCommit(String hash) {
+        return Utils.readObject(_commits.file(hash), Commit.class);
+    }
+
+    /** The .gitlet directory. */
+    private final File _dir;
+    /** Branches. */
+    private final Refs _refs;
+    /** Commit objects. */
+    private final ObjectDirectory _commits;
+    /** File contents. */
+    private final BlobStore _blobs;
+    /** Directory trees. */
+    private final TreeStore _trees;
+    /** Reachability bitmaps, if written. */
+    private final ReachabilityBitmaps _bitmaps;
+    /** Commit graph with changed-path filters. */
+    private final ChangedPathIndex _changedPaths;
+}
@@ -1,11 +1,25 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 public class Repo {
@@ -14,12 +28,12 @@ public class Repo {
     /** REPO_DIR. */
     static final File REPO_DIR = Utils.join
             (CWD, ".gitlet/");
-    /** BRANCHES_DIR. */
-    static final File BRANCHES_DIR = Utils.join
-            (CWD, ".gitlet/branches/");
+    /** COMMON_DIR: the .gitlet directory holding what all worktrees
+     *  share, which is REPO_DIR except in a linked worktree. */
+    static final File COMMON_DIR = Worktrees.commonDir(REPO_DIR);
     /** COMMITS_DIR. */
     static final File COMMITS_DIR = Utils.join
-            (CWD, ".gitlet/commits/");
+            (COMMON_DIR, "commits/");
     /** STAGE_FILE. */
     static final File STAGING_AREA_FILE = Utils.join
             (CWD, ".gitlet/staging-area/stage.txt");
@@ -29,35 +43,56 @@ public class Repo {
     /** HEAD_COMMIT_FILE. */
     static final File HEAD_COMMIT_FILE = Utils.join
             (CWD, ".gitlet/pointers/HEAD-commit.txt");
+    /** REMOTES_DIR. */
+    static final File REMOTES_DIR = Utils.join
+            (COMMON_DIR, "remotes/");
     /** BLOBS_DIR. */
     static final File BLOBS_DIR = Utils.join
-            (CWD, ".gitlet/blobs/");
+            (COMMON_DIR, "blobs/");
 
-    /** Repository stage. */
+    /** Commit objects, by sha1. */
+    static final ObjectDirectory COMMITS = new ObjectDirectory(COMMITS_DIR);
+    /** File contents, by sha1, with large files chunked. */
+    static final BlobStore BLOBS = new BlobStore(COMMON_DIR);
+    /** Directory trees, by sha1. */
+    static final TreeStore TREES = new TreeStore(COMMON_DIR);
+    /** Reachability bitmaps of selected commits. */
+    static final ReachabilityBitmaps BITMAPS =
+            new ReachabilityBitmaps(COMMON_DIR, COMMITS, TREES);
+
+    /** Commit graph with changed-path filters. */
+    static final ChangedPathIndex CHANGED_PATHS = new ChangedPathIndex(
+            Utils.join(COMMON_DIR, "commit-graph/changed-paths"));
+
+    /** Files in the working directory, as a monitor reports them. */
+    static final WorkingFiles WORKING_FILES = new WorkingFiles(CWD,
+            Utils.join(CWD, ".gitlet/monitor"));
+
+    /** Branches, loose and packed. */
+    static final Refs REFS = new Refs(COMMON_DIR);
+
+    /** Worktrees sharing this repository's objects and branches. */
+    static final Worktrees WORKTREES = new Worktrees(COMMON_DIR);
+
+    /** Sparse-checkout patterns. */
+    static final SparseCheckout SPARSE = new SparseCheckout(
+            Utils.join(CWD, ".gitlet/sparse-checkout"));
+
+    /** Repository stage, or null until it is first needed. */
     private StagingArea stage;
-    /** Head branch pointer. */
+    /** Head branch pointer, or null until it is first needed. */
     private String headBranch;
-    /** Head commit pointer. */
+    /** Head commit pointer, or null until it is first needed. */
     private String headCommit;
+    /** Writes not yet published, or null if there are none. */
+    private WritePipeline writes;
 
-    /** Constructor for the Repo class. */
+    /** Constructor for the Repo class.  Nothing is read here: the head
+     *  pointers and the stage are each read the first time a command
+     *  asks for them, so commands that need neither, and commands that
+     *  fail their checks early, do not pay to read and deserialize them.
+     */
     public Repo() {
-        if (HEAD_BRANCH_FILE.exists()) {
-            headBranch = Utils.readContentsAsString
-                    (HEAD_BRANCH_FILE);
-        } else {
-            headBranch = "master";
-        }
-
-        if (HEAD_COMMIT_FILE.exists()) {
-            headCommit = Utils.readContentsAsString
-                    (HEAD_COMMIT_FILE);
-        }
-
-        if (STAGING_AREA_FILE.exists()) {
-            stage = Utils.readObject
-                    (STAGING_AREA_FILE, StagingArea.class);
-        }
     }
 
     /**
@@ -83,19 +118,11 @@ public class Repo {
             newFile.mkdirs();
         }
         Commit initialCommit = new Commit(null,
-                "initial commit", new HashMap<>(), getHEADBranch());
-        File initialCommitFile = Utils.join
-                (COMMITS_DIR, initialCommit.getHash() + ".txt");
-        Utils.writeObject(initialCommitFile, initialCommit);
-
-        File masterFile = Utils.join(BRANCHES_DIR, "master.txt");
-        Utils.writeContents(masterFile, "master");
-
-        updateHEAD("master", initialCommit.getHash());
-
+                "initial commit", TreeStore.EMPTY, getHEADBranch());
+        storeCommit(initialCommit, TreeStore.EMPTY);
         stage = new StagingArea();
-        File stageFile = Utils.join(STAGING_AREA_FILE);
-        Utils.writeObject(stageFile, stage);
+        queueStage();
+        updateHEAD("master", initialCommit.getHash());
     }
 
     /**
@@ -103,20 +130,18 @@ public class Repo {
      * @param fileName input fileName
      */
     public void add(String fileName) {
+        fileName = workingPath(fileName);
+        if (fileName == null) {
+            return;
+        }
         File addedFile = Utils.join(CWD, fileName);
         if (addedFile.exists()) {
-            byte[] fileContents = Utils.readContents(addedFile);
-            String fileHash = Utils.sha1(fileContents);
-            if (stage.getRemoved().contains(fileName)) {
-                stage.getRemoved().remove(fileName);
-            }
-            if (getHEADCommit().getBlobs().get(fileName) == null
-                    || !Utils.sha1(getHEADCommit().getBlobs().get(fileName))
-                    .equals(fileHash)) {
-                File blobFile = Utils.join
-                        (BLOBS_DIR, fileHash + ".txt");
-                Utils.writeContents(blobFile, fileContents);
-                stage.getAdded().put(fileName, fileContents);
+            String fileHash = BLOBS.store(addedFile);
+            if (stage().getRemoved().contains(fileName)) {
+                stage().getRemoved().remove(fileName);
+            }
+            if (!fileHash.equals(blobOf(getHEADCommit(), fileName))) {
+                stage().getAdded().put(fileName, fileHash);
             }
             updateStage();
         } else {
@@ -131,7 +156,7 @@ public class Repo {
      * @param message input message
      */
     public void commit(String message) {
-        if (stage.getAdded().isEmpty() && stage.getRemoved().isEmpty()) {
+        if (stage().getAdded().isEmpty() && stage().getRemoved().isEmpty()) {
             System.out.println("No changes added to the commit.");
             return;
         }
@@ -140,24 +165,17 @@ public class Repo {
             return;
         }
         Commit currentCommit = getHEADCommit();
-        HashMap<String, byte[]> currentBlobs =
-                Utils.cloneBlobHashmap(currentCommit.getBlobs());
-        ArrayList<String> filesToAdd =
-                new ArrayList<>(stage.getAdded().keySet());
-        for (String fileName : filesToAdd) {
-            currentBlobs.put(fileName, stage.getAdded().get(fileName));
-        }
-        for (String fileName : stage.getRemoved()) {
-            currentBlobs.remove(fileName);
-        }
-        Commit newCommit = new Commit(currentCommit.getHash(),
-                message, currentBlobs, getHEADBranch());
-        Utils.writeObject(Utils.join
-                (COMMITS_DIR, newCommit.getHash() + ".txt"), newCommit);
+        HashMap<String, String> changes = new HashMap<>(stage().getAdded());
+        for (String fileName : stage().getRemoved()) {
+            changes.put(fileName, null);
+        }
+        Commit newCommit = new Commit(currentCommit.getHash(), message,
+                TREES.update(currentCommit.getTree(), changes, writes()),
+                getHEADBranch());
+        storeCommit(newCommit, currentCommit.getTree());
+        stage().clearAll();
+        queueStage();
         updateHEAD(getHEADBranch(), newCommit.getHash());
-        stage.clearAll();
-        updateStage();
-
     }
 
     /**
@@ -165,19 +183,23 @@ public class Repo {
      * @param fileName input fileName
      */
     public void rm(String fileName) {
+        fileName = workingPath(fileName);
+        if (fileName == null) {
+            return;
+        }
         Commit currentCommit = getHEADCommit();
-        boolean isStaged = stage.getAdded().containsKey(fileName);
-        boolean isTracked = currentCommit.getBlobs().containsKey(fileName);
+        boolean isStaged = stage().getAdded().containsKey(fileName);
+        boolean isTracked = blobOf(currentCommit, fileName) != null;
         if (!isStaged && !isTracked) {
             System.out.println("No reason to remove the file.");
             return;
         }
         if (isStaged) {
-            stage.getAdded().remove(fileName);
+            stage().getAdded().remove(fileName);
         }
         if (isTracked) {
-            Utils.restrictedDelete(fileName);
-            stage.getRemoved().add(fileName);
+            deleteWorkingFile(fileName);
+            stage().getRemoved().add(fileName);
         }
         updateStage();
 
@@ -188,56 +210,133 @@ public class Repo {
     public void log() {
         Commit currentCommit = getHEADCommit();
         while (currentCommit != null) {
-            System.out.println("===");
-            System.out.println("commit " + currentCommit.getHash());
-            System.out.println("Date: " + currentCommit.getDateAndTime());
-            System.out.println(currentCommit.getMessage());
-            System.out.println();
+            printCommit(currentCommit);
             if (currentCommit.getParentHash() == null) {
                 break;
             }
-            currentCommit = Utils.readObject(Utils.join(COMMITS_DIR,
-                    currentCommit.getParentHash() + ".txt"),
-                    Commit.class);
+            currentCommit = readCommit(currentCommit.getParentHash());
 
         }
     }
 
     /** Like log, except displays information about all commits ever made. */
     public void globalLog() {
-        ArrayList<String> filesInCommitDir =
-                new ArrayList<>(Utils.plainFilenamesIn(COMMITS_DIR));
-        for (String fileName : filesInCommitDir) {
-            Commit currentCommit = Utils.readObject(Utils.join
-                    (COMMITS_DIR, fileName),
-                    Commit.class);
-            System.out.println("===");
-            System.out.println("commit " + currentCommit.getHash());
-            System.out.println("Date: " + currentCommit.getDateAndTime());
-            System.out.println(currentCommit.getMessage());
-            System.out.println();
+        COMMITS.forEach(commitHash -> printCommit(readCommit(commitHash)));
+    }
+
+    /**
+     * Like log, but displays only the commits that changed the given
+     * file relative to their parent.  The changed-path filters rule out
+     * most commits without reading them; the rest are confirmed by
+     * comparing blob IDs.
+     * @param fileName input fileName
+     */
+    public void logPath(String fileName) {
+        HashMap<String, ChangedPathIndex.Entry> index = CHANGED_PATHS.load();
+        String commitHash = headCommit();
+        Commit commit = null;
+        while (commitHash != null) {
+            ChangedPathIndex.Entry entry = index.get(commitHash);
+            String parentHash;
+            if (entry != null && !entry.mightHaveChanged(fileName)) {
+                parentHash = entry.parent();
+                commit = null;
+            } else {
+                if (commit == null) {
+                    commit = readCommit(commitHash);
+                }
+                parentHash = commit.getParentHash();
+                Commit parent = null;
+                String parentBlob = null;
+                if (parentHash != null) {
+                    parent = readCommit(parentHash);
+                    parentBlob = blobOf(parent, fileName);
+                }
+                if (!Objects.equals(blobOf(commit, fileName),
+                        parentBlob)) {
+                    printCommit(commit);
+                }
+                commit = parent;
+            }
+            commitHash = parentHash;
         }
     }
 
+    /**
+     * Prints each line of the head version of a file, preceded by the
+     * abbreviated ID and date of the commit that last changed it.
+     * @param fileName input fileName
+     */
+    public void blame(String fileName) {
+        String headBlob = blobOf(getHEADCommit(), fileName);
+        if (headBlob == null) {
+            System.out.println("File does not exist in that commit.");
+            return;
+        }
+        Blame blame = new Blame(fileName, headCommit(), headBlob);
+        String[] commitHashes = blame.run();
+        List<String> lines = blame.lines();
+        String lineFormat = "%" + Integer.toString(lines.size()).length()
+                + "d";
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (int i = 0; i < lines.size(); i += 1) {
+            Commit commit = commits.computeIfAbsent(commitHashes[i],
+                    Repo::readCommit);
+            String line = lines.get(i);
+            System.out.print(commit.getHash().substring(0, 8) + " ("
+                    + commit.getDateAndTime() + " "
+                    + String.format(lineFormat, i + 1) + ") " + line);
+            if (!line.endsWith("\n")) {
+                System.out.println();
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the commit graph with changed-path filters from every
+     * stored commit, for repositories with commits made before it was
+     * kept.
+     */
+    public void writeCommitGraph() {
+        CHANGED_PATHS.clear();
+        COMMITS.forEach(commitHash -> {
+            Commit commit = readCommit(commitHash);
+            String parentTree = TreeStore.EMPTY;
+            if (commit.getParentHash() != null) {
+                parentTree = readCommit(commit.getParentHash()).getTree();
+            }
+            CHANGED_PATHS.add(commit, TREES.diff(parentTree,
+                    commit.getTree()).keySet());
+        });
+    }
+
+    /**
+     * Prints a commit as log entries are printed.
+     * @param commit input commit
+     */
+    private void printCommit(Commit commit) {
+        System.out.println("===");
+        System.out.println("commit " + commit.getHash());
+        System.out.println("Date: " + commit.getDateAndTime());
+        System.out.println(commit.getMessage());
+        System.out.println();
+    }
+
     /**
      * Prints out the ids of all commits
      * that have the given commit message, one per line.
      * @param commitMessage input commitMessage
      */
     public void find(String commitMessage) {
-        ArrayList<String> filesInCommitDir =
-                new ArrayList<>(Utils.plainFilenamesIn(COMMITS_DIR));
-        boolean matchingMessage = false;
-        for (String fileName : filesInCommitDir) {
-            Commit commitPointer = Utils.readObject
-                    (Utils.join(COMMITS_DIR, fileName),
-                            Commit.class);
+        boolean[] matchingMessage = new boolean[1];
+        COMMITS.forEach(commitHash -> {
+            Commit commitPointer = readCommit(commitHash);
             if (commitPointer.getMessage().equals(commitMessage)) {
                 System.out.println(commitPointer.getHash());
-                matchingMessage = true;
+                matchingMessage[0] = true;
             }
-        }
-        if (!matchingMessage) {
+        });
+        if (!matchingMessage[0]) {
             System.out.println("Found no commit with that message.");
         }
     }
@@ -246,13 +345,9 @@ public class Repo {
      * and what files have been staged for
      * addition or removal. */
     public void status() {
-        ArrayList<String> filesInBranchDir =
-                new ArrayList<>(Utils.plainFilenamesIn(BRANCHES_DIR));
-
         System.out.println("=== Branches ===");
-        for (String branchName : filesInBranchDir) {
-            branchName = branchName.substring(0, branchName.length() - 4);
-            if (branchName.equals(headBranch)) {
+        for (String branchName : branchNames()) {
+            if (branchName.equals(getHEADBranch())) {
                 System.out.println("*" + branchName);
             } else {
                 System.out.println(branchName);
@@ -262,7 +357,7 @@ public class Repo {
 
         System.out.println("=== Staged Files ===");
         ArrayList<String> stagedFiles =
-                new ArrayList<>(stage.getAdded().keySet());
+                new ArrayList<>(stage().getAdded().keySet());
         Collections.sort(stagedFiles);
         for (String fileName : stagedFiles) {
             System.out.println(fileName);
@@ -270,8 +365,8 @@ public class Repo {
         System.out.println();
 
         System.out.println("=== Removed Files ===");
-        Collections.sort(stage.getRemoved());
-        for (String fileName : stage.getRemoved()) {
+        Collections.sort(stage().getRemoved());
+        for (String fileName : stage().getRemoved()) {
             System.out.println(fileName);
         }
         System.out.println();
@@ -282,23 +377,116 @@ public class Repo {
         System.out.println();
     }
 
+    /**
+     * Prints the differences between two snapshots in unified format.
+     * With no commit IDs, compares the staged snapshot with the working
+     * directory; with one, compares that commit with the working
+     * directory; with two, compares the first commit with the second.
+     * Files outside the sparse-checkout patterns are taken to be as
+     * staged.
+     * Paths whose blob IDs agree are skipped before any content is read,
+     * and two commits are compared tree by tree, skipping the subtrees
+     * they share.
+     * Each path names a file or a directory under which every file is
+     * compared.
+     * @param commitIDs zero, one or two commit IDs
+     * @param paths the paths to compare, or empty for all of them
+     * @param algorithm input line-matching algorithm
+     */
+    public void diff(List<String> commitIDs, List<String> paths,
+                     Diff.Algorithm algorithm) {
+        ArrayList<String> prefixes = new ArrayList<>();
+        for (String path : paths) {
+            path = workingPath(path);
+            if (path == null) {
+                return;
+            }
+            prefixes.add(path);
+        }
+        UnifiedDiff printer = new UnifiedDiff(System.out, algorithm);
+        if (commitIDs.size() == 2) {
+            TreeMap<String, String[]> changes = TREES.diff(
+                    getCommitWithID(commitIDs.get(0)).getTree(),
+                    getCommitWithID(commitIDs.get(1)).getTree());
+            for (String fileName : changes.keySet()) {
+                if (underAny(fileName, prefixes)) {
+                    String[] blobs = changes.get(fileName);
+                    printer.print(fileName, readBlob(blobs[0]),
+                            readBlob(blobs[1]));
+                }
+            }
+            return;
+        }
+        HashMap<String, String> staged = getStagedBlobs();
+        HashMap<String, String> before;
+        if (commitIDs.isEmpty()) {
+            before = staged;
+        } else {
+            before = filesOf(getCommitWithID(commitIDs.get(0)));
+        }
+        TreeSet<String> fileNames = new TreeSet<>(before.keySet());
+        fileNames.addAll(staged.keySet());
+        fileNames.removeIf(fileName -> !underAny(fileName, prefixes));
+        for (String fileName : fileNames) {
+            String beforeHash = before.get(fileName);
+            String afterHash;
+            byte[] working = null;
+            if (!SPARSE.includes(fileName)) {
+                afterHash = staged.get(fileName);
+            } else {
+                File file = Utils.join(CWD, fileName);
+                if (file.isFile()) {
+                    working = Utils.readContents(file);
+                }
+                afterHash = working == null ? null : Utils.sha1(working);
+            }
+            if (Objects.equals(beforeHash, afterHash)) {
+                continue;
+            }
+            byte[] beforeContents = beforeHash == null ? null
+                    : BLOBS.read(beforeHash);
+            byte[] afterContents = working;
+            if (afterContents == null && afterHash != null) {
+                afterContents = BLOBS.read(afterHash);
+            }
+            printer.print(fileName, beforeContents, afterContents);
+        }
+    }
+
+    /**
+     * Return whether FILENAME is one of PATHS or lies in a directory
+     * among them. An empty PATHS matches every file.
+     * @param fileName input file name
+     * @param paths input normalized paths
+     * @return whether fileName is selected
+     */
+    private static boolean underAny(String fileName, List<String> paths) {
+        if (paths.isEmpty()) {
+            return true;
+        }
+        for (String path : paths) {
+            if (fileName.equals(path) || fileName.startsWith(path + "/")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Takes the file from the front of the current branch,
      * and puts it in the working directory.
      * @param fileName input fileName
      */
     public void checkoutFileName(String fileName) {
-        Commit currCommit = getHEADCommit();
-        HashMap<String, byte[]> headBlobs = currCommit.getBlobs();
-
-        if (!headBlobs.containsKey(fileName)) {
+        fileName = workingPath(fileName);
+        if (fileName == null) {
+            return;
+        }
+        String blobHash = blobOf(getHEADCommit(), fileName);
+        if (blobHash == null) {
             System.out.println("File does not exist in that commit.");
         } else {
-            File fileBlob = Utils.join(BLOBS_DIR,
-                    Utils.sha1(currCommit.getBlobs().get(fileName))
-                            + ".txt");
-            byte[] contents = Utils.readContents(fileBlob);
-            Utils.writeContents(Utils.join(CWD, fileName), contents);
+            writeWorkingFile(fileName, blobHash);
         }
     }
 
@@ -309,45 +497,21 @@ public class Repo {
      * @param fileName input fileName
      */
     public void checkoutCommitID(String commitID, String fileName) {
-        Commit fetchedCommit = getCommitWithID(commitID);
-        if (!fetchedCommit.getBlobs().containsKey(fileName)) {
-            System.out.println("File does not exist in that commit.");
+        fileName = workingPath(fileName);
+        if (fileName == null) {
             return;
         }
-        if (getCommitWithID(commitID).getBlobs().containsKey(fileName)
-                && !getHEADCommit().getBlobs().containsKey(fileName)) {
-            System.out.println("There is an untracked file in the way; "
-                    + "delete it, or add and commit it first.");
+        String blobHash = blobOf(getCommitWithID(commitID), fileName);
+        if (blobHash == null) {
+            System.out.println("File does not exist in that commit.");
             return;
         }
-        File fileBlob = Utils.join(BLOBS_DIR,
-                Utils.sha1(fetchedCommit.getBlobs().get(fileName))
-                        + ".txt");
-        byte[] contents = Utils.readContents(fileBlob);
-        Utils.writeContents(Utils.join(CWD, fileName), contents);
-    }
-
-    /**
-     * Checkout helper function for reset.
-     * @param commit input commit
-     * @param fileName input fileName
-     */
-    public void checkoutCommitReset(Commit commit, String fileName) {
-        if (commit.getBlobs().containsKey(fileName)
-                && !getHEADCommit().getBlobs().containsKey(fileName)) {
+        if (blobOf(getHEADCommit(), fileName) == null) {
             System.out.println("There is an untracked file in the way; "
                     + "delete it, or add and commit it first.");
             return;
         }
-        if (commit.getBlobs().get(fileName) != null) {
-            File fileBlob = Utils.join(BLOBS_DIR,
-                    Utils.sha1(commit.getBlobs().get(fileName))
-                            + ".txt");
-            if (fileBlob.exists()) {
-                byte[] contents = Utils.readContents(fileBlob);
-                Utils.writeContents(Utils.join(CWD, fileName), contents);
-            }
-        }
+        writeWorkingFile(fileName, blobHash);
     }
 
     /**
@@ -361,46 +525,114 @@ public class Repo {
             System.out.println("No need to checkout the current branch");
             return;
         }
-        ArrayList<String> filesInCWD =
-                new ArrayList<>(Utils.plainFilenamesIn(CWD));
-        ArrayList<String> filesInBranches =
-                new ArrayList<>(Utils.plainFilenamesIn(BRANCHES_DIR));
-        if (!filesInBranches.contains(branchName + ".txt")) {
+        if (!REFS.contains(branchName)) {
             System.out.println("No such branch exists.");
             return;
         }
-        Commit checkoutCommit = getCommitWithID(Utils.readContentsAsString
-                (Utils.join(BRANCHES_DIR, branchName
-                        + ".txt")));
-        for (String fileName : Utils.plainFilenamesIn(CWD)) {
-            if (checkoutCommit.getBlobs().containsKey(fileName)
-                    && !getHEADCommit().getBlobs().containsKey(fileName)) {
+        if (WORKTREES.checkedOut(branchName, REPO_DIR) != null) {
+            System.out.println("That branch is checked out "
+                    + "in another worktree.");
+            return;
+        }
+        Commit checkoutCommit = getCommitWithID(REFS.get(branchName));
+        if (checkoutFiles(checkoutCommit)) {
+            updateHEAD(branchName, checkoutCommit.getHash());
+        }
+    }
+
+    /**
+     * Replaces the files of the head commit in the working directory
+     * with those of the given commit.  Only the files whose blobs differ
+     * between the two commits' trees are touched, and subtrees the
+     * commits share are skipped unread.
+     * @param checkoutCommit input commit
+     * @return false if an untracked file is in the way
+     */
+    private boolean checkoutFiles(Commit checkoutCommit) {
+        TreeMap<String, String[]> changes = TREES.diff(
+                getHEADCommit().getTree(), checkoutCommit.getTree());
+        for (String fileName : changes.keySet()) {
+            if (changes.get(fileName)[0] == null
+                    && SPARSE.includes(fileName)
+                    && Utils.join(CWD, fileName).exists()) {
                 System.out.println("There is an untracked file in the way; "
                         + "delete it, or add and commit it first.");
-                return;
+                return false;
             }
         }
-        for (String fileName : filesInCWD) {
-            File file = Utils.join(CWD, fileName);
-            if (checkoutCommit.getBlobs().containsKey(fileName)) {
-                Utils.writeContents(file,
-                        checkoutCommit.getBlobs().get(fileName));
-            } else {
-                Utils.restrictedDelete(file);
+        for (String fileName : changes.keySet()) {
+            String blobHash = changes.get(fileName)[1];
+            if (!SPARSE.includes(fileName)) {
+                continue;
+            } else if (blobHash == null) {
+                deleteWorkingFile(fileName);
+            } else if (BLOBS.contains(blobHash)) {
+                writeWorkingFile(fileName, blobHash);
             }
         }
-        for (String fileName : checkoutCommit.getBlobs().keySet()) {
-            if (!filesInCWD.contains(fileName)) {
-                File fileBlob = Utils.join(BLOBS_DIR,
-                        Utils.sha1(checkoutCommit.getBlobs().get(fileName))
-                                + ".txt");
-                if (fileBlob.exists()) {
-                    byte[] contents = Utils.readContents(fileBlob);
-                    Utils.writeContents(Utils.join(CWD, fileName), contents);
-                }
+        return true;
+    }
+
+    /**
+     * Returns a path as it is tracked: relative to the working directory,
+     * with empty and "." components dropped.  Prints a message and
+     * returns null if the path is absolute, has a ".." component,
+     * names the working directory itself, or has a control character,
+     * which no tree may hold.
+     * @param fileName input path
+     * @return tracked path, or null
+     */
+    static String workingPath(String fileName) {
+        String path = fileName.replace(File.separatorChar, '/');
+        StringBuilder result = new StringBuilder();
+        for (String name : path.split("/")) {
+            if (name.equals("..")) {
+                result.setLength(0);
+                break;
+            } else if (!name.isEmpty() && !name.equals(".")) {
+                result.append(result.length() == 0 ? "" : "/").append(name);
             }
         }
-        updateHEAD(branchName, checkoutCommit.getHash());
+        if (path.startsWith("/") || new File(fileName).isAbsolute()
+                || result.length() == 0) {
+            System.out.println("Not a path in the working directory.");
+            return null;
+        }
+        for (String name : result.toString().split("/")) {
+            if (!TreeStore.isName(name)) {
+                System.out.println("Invalid file name.");
+                return null;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Writes a blob to the working directory, making the directories
+     * above it if need be.
+     * @param fileName input path
+     * @param blobHash input blob sha1
+     */
+    private void writeWorkingFile(String fileName, String blobHash) {
+        File file = Utils.join(CWD, fileName);
+        file.getParentFile().mkdirs();
+        BLOBS.copyTo(blobHash, file);
+    }
+
+    /**
+     * Deletes a file from the working directory, along with the
+     * directories above it that it leaves empty.
+     * @param fileName input path
+     */
+    private void deleteWorkingFile(String fileName) {
+        File file = Utils.join(CWD, fileName);
+        if (file.isDirectory() || !file.delete()) {
+            return;
+        }
+        for (File dir = file.getParentFile(); !dir.equals(CWD)
+                && dir.delete(); dir = dir.getParentFile()) {
+            continue;
+        }
     }
 
     /**
@@ -409,11 +641,12 @@ public class Repo {
      * @param branchName input branchName
      */
     public void branch(String branchName) {
-        File newBranch = Utils.join(BRANCHES_DIR, branchName + ".txt");
-        if (newBranch.exists()) {
+        if (!Refs.isValid(branchName)) {
+            System.out.println("Invalid branch name.");
+        } else if (REFS.contains(branchName)) {
             System.out.println("A branch with that name already exists.");
         } else {
-            Utils.writeContents(newBranch, getHEADCommit().getHash());
+            REFS.set(branchName, getHEADCommit().getHash());
         }
     }
 
@@ -424,27 +657,38 @@ public class Repo {
     public void rmBranch(String branchName) {
         if (branchName.equals(getHEADBranch())) {
             System.out.println("Cannot remove the current branch.");
-        }
-        File branchFile = Utils.join(BRANCHES_DIR, branchName + ".txt");
-        if (!branchFile.delete()) {
+        } else if (WORKTREES.checkedOut(branchName, REPO_DIR) != null) {
+            System.out.println("That branch is checked out "
+                    + "in another worktree.");
+        } else if (!REFS.delete(branchName)) {
             System.out.println("A branch with that name does not exist.");
         }
     }
 
     /**
-     * Checks out all the files tracked by the given commit.
+     * Checks out all the files tracked by the given commit, moving to
+     * the branch it was made on unless that branch is gone, when the
+     * current branch is kept.  Refuses if that branch is checked out in
+     * another worktree.
      * @param commitID input commitID
      */
     public void reset(String commitID) {
         Commit targetCommit = getCommitWithID(commitID);
-        ArrayList<String> filesInCWD =
-                new ArrayList<>(Utils.plainFilenamesIn(CWD));
-        for (String fileName : filesInCWD) {
-            checkoutCommitReset(targetCommit, fileName);
+        String branch = getBranchFromCommitID(commitID);
+        if (branch == null) {
+            branch = getHEADBranch();
+        }
+        if (WORKTREES.checkedOut(branch, REPO_DIR) != null) {
+            System.out.println("That branch is checked out "
+                    + "in another worktree.");
+            return;
         }
-        stage.clearAll();
+        if (!checkoutFiles(targetCommit)) {
+            return;
+        }
+        stage().clearAll();
         updateStage();
-        updateHEAD(getBranchFromCommitID(commitID), targetCommit.getHash());
+        updateHEAD(branch, targetCommit.getHash());
     }
 
     /**
@@ -454,27 +698,25 @@ public class Repo {
      * @return splitPoint commit
      */
     private Commit getSplitPoint(Commit headPointer, Commit mergeCommit) {
-        ArrayList<String> currentBranchCommits = new ArrayList<>();
+        HashSet<ObjectId> currentBranchCommits = new HashSet<>();
         Commit headBranchPointer = headPointer;
         while (true) {
-            currentBranchCommits.add(headBranchPointer.getHash());
+            currentBranchCommits.add(
+                    ObjectId.fromHex(headBranchPointer.getHash()));
             if (headBranchPointer.getParentHash() == null) {
                 break;
             }
             headBranchPointer =
-                    Utils.readObject(Utils.join(COMMITS_DIR,
-                            headBranchPointer.getParentHash()
-                                    + ".txt"), Commit.class);
+                    readCommit(headBranchPointer.getParentHash());
         }
         Commit mergeBranchPointer = mergeCommit;
-        while (!currentBranchCommits.contains(mergeBranchPointer.getHash())) {
+        while (!currentBranchCommits.contains(
+                ObjectId.fromHex(mergeBranchPointer.getHash()))) {
             if (mergeBranchPointer.getParentHash() == null) {
                 break;
             }
             mergeBranchPointer =
-                    Utils.readObject(Utils.join(COMMITS_DIR,
-                            mergeBranchPointer.getParentHash()
-                                    + ".txt"), Commit.class);
+                    readCommit(mergeBranchPointer.getParentHash());
         }
         return mergeBranchPointer;
     }
@@ -485,18 +727,24 @@ public class Repo {
      * @return a boolean determining if the merge will fail
      */
     private boolean mergeFailureCases(String branchName) {
-        if (stage.getAdded().size() > 0 || stage.getRemoved().size() > 0) {
+        if (stage().getAdded().size() > 0 || stage().getRemoved().size() > 0) {
             System.out.println("You have uncommitted changes.");
             return false;
-        } else if (!Utils.join(BRANCHES_DIR, branchName + ".txt").exists()) {
+        } else if (!REFS.contains(branchName)) {
             System.out.println("A branch with that name does not exist.");
             return false;
         } else if (branchName.equals(getHEADBranch())) {
             System.out.println("Cannot merge a branch with itself.");
             return false;
         }
-        for (String fileName : Utils.plainFilenamesIn(CWD)) {
-            if (!getHEADCommit().getBlobs().containsKey(fileName)) {
+        Commit current = getHEADCommit();
+        for (String line : WORKING_FILES.rules().invalid()) {
+            System.out.println("Skipping bad pattern in "
+                    + IgnoreRules.FILE_NAME + ": " + line);
+        }
+        for (String fileName : WORKING_FILES.list()) {
+            if (SPARSE.includes(fileName)
+                    && blobOf(current, fileName) == null) {
                 System.out.println("There is an untracked file in the way; "
                         + "delete it, or add and commit it first.");
                 return false;
@@ -514,9 +762,7 @@ public class Repo {
             return;
         }
         Commit currentCommit = getHEADCommit();
-        Commit mergeCommit = getCommitWithID(Utils.readContentsAsString(
-                Utils.join(BRANCHES_DIR, branchName
-                        + ".txt")));
+        Commit mergeCommit = getCommitWithID(REFS.get(branchName));
         Commit splitPoint = getSplitPoint(currentCommit, mergeCommit);
         if (splitPoint.getHash().equals(mergeCommit.getHash())) {
             System.out.println("Given branch is an "
@@ -524,141 +770,900 @@ public class Repo {
             return;
         }
         if (splitPoint.getHash().equals((currentCommit.getHash()))) {
-            checkoutBranchName(branchName);
+            if (checkoutFiles(mergeCommit)) {
+                updateHEAD(getHEADBranch(), mergeCommit.getHash());
+                System.out.println("Current branch fast-forwarded.");
+            }
+            return;
+        }
+        MergePlan plan = MergePlan.ofTrees(TREES, currentCommit.getTree(),
+                mergeCommit.getTree(), splitPoint.getTree());
+        Set<String> conflicts = ConcurrentHashMap.newKeySet();
+        String newTree = TREES.update(currentCommit.getTree(),
+                applyMergePlan(plan, conflicts), writes());
+        if (!conflicts.isEmpty()) {
+            System.out.println("Encountered a merge conflict.");
+        }
+        commitMergeCommit(currentCommit, mergeCommit, branchName, newTree);
+    }
+
+    /**
+     * Merges the given branch into the target branch in the object store
+     * alone, leaving the working directory and staging area untouched.
+     * A conflict-free result is committed directly to the target branch;
+     * otherwise the conflicted files are listed and nothing changes.  The
+     * target may not be checked out in any worktree, this one included,
+     * since its working files would no longer match it.
+     * @param branchName given branchName
+     * @param targetBranch branch receiving the merge commit
+     */
+    public void mergeNoCheckout(String branchName, String targetBranch) {
+        String given = REFS.get(branchName);
+        String target = REFS.get(targetBranch);
+        if (given == null || target == null) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        } else if (branchName.equals(targetBranch)) {
+            System.out.println("Cannot merge a branch with itself.");
+            return;
+        } else if (targetBranch.equals(getHEADBranch())
+                || WORKTREES.checkedOut(targetBranch, REPO_DIR) != null) {
+            System.out.println("That branch is checked out.");
+            return;
+        }
+        Commit targetCommit = readCommit(target);
+        Commit mergeCommit = readCommit(given);
+        Commit splitPoint = getSplitPoint(targetCommit, mergeCommit);
+        if (splitPoint.getHash().equals(mergeCommit.getHash())) {
+            System.out.println("Given branch is an "
+                    + "ancestor of the current branch.");
+            return;
+        }
+        if (splitPoint.getHash().equals(targetCommit.getHash())) {
+            updateBranch(targetBranch, mergeCommit.getHash());
             System.out.println("Current branch fast-forwarded.");
             return;
         }
-        HashMap<String, byte[]> headBlobs = currentCommit.getBlobs();
-        HashMap<String, byte[]> mergeBlobs = mergeCommit.getBlobs();
-        HashMap<String, byte[]> splitBlobs = splitPoint.getBlobs();
-        HashSet<String> allBlobs = blobCombiner3
-                (headBlobs, mergeBlobs, splitBlobs);
-        HashMap<String, byte[]> newBlobs = new HashMap<>();
-        for (String fileName : allBlobs) {
-            byte[] headVersion = headBlobs.get(fileName);
-            byte[] mergeVersion = mergeBlobs.get(fileName);
-            byte[] splitVersion = splitBlobs.get(fileName);
-            File headFile = new File("");
-            if (headVersion != null) {
-                headFile = Utils.join(BLOBS_DIR,
-                        Utils.sha1(headVersion) + ".txt");
-            }
-            File mergeFile = new File("");
-            if (mergeVersion != null) {
-                mergeFile = Utils.join(BLOBS_DIR,
-                        Utils.sha1(mergeVersion) + ".txt");
+        InMemoryMerge merger = new InMemoryMerge(splitPoint.getTree(),
+                targetCommit.getTree(), mergeCommit.getTree());
+        if (!merger.run()) {
+            for (String fileName : merger.conflicts()) {
+                System.out.println("Conflict in " + fileName);
             }
-            File currentFile = Utils.join(CWD, fileName);
-            if ((Arrays.equals(mergeVersion, splitVersion)
-                    && Arrays.equals(headVersion, mergeVersion))
-                    || (Arrays.equals(mergeVersion, headVersion)
-                    && !Arrays.equals(mergeVersion, splitVersion))) {
-                newBlobs.put(fileName, headVersion);
-            } else if (!Arrays.equals(mergeVersion, splitVersion)
-                    && Arrays.equals(splitVersion, headVersion)) {
-                newBlobs.put(fileName, mergeVersion);
-                overwriteOrRemove(fileName, mergeFile,
-                        currentFile, mergeVersion);
-            } else if (!Arrays.equals(mergeVersion, headVersion)
-                    && !Arrays.equals(mergeVersion, splitVersion)
-                    && !Arrays.equals(headVersion, splitVersion)) {
-                resolveConflict(fileName, currentFile, headFile,
-                        mergeFile, headVersion, mergeVersion);
+            System.out.println("Encountered a merge conflict.");
+            return;
+        }
+        MergeCommit mergedCommit = new MergeCommit(targetCommit.getHash(),
+                mergeCommit.getHash(), "Merged " + branchName + " into "
+                + targetBranch + ".", merger.result(), targetBranch);
+        storeCommit(mergedCommit, targetCommit.getTree());
+        updateBranch(targetBranch, mergedCommit.getHash());
+    }
+
+    /**
+     * Replays the changes made by each of the given commits, in order, on
+     * top of the target branch, in the object store alone.  Each commit
+     * is merged against its parent; picking stops at the first conflict,
+     * leaving the branch at the last commit picked cleanly.  Commits
+     * whose changes are already present are skipped.  Picking onto the
+     * current branch checks the result out, as reset does; a branch
+     * checked out in another worktree may not be the target.
+     * @param targetBranch branch receiving the new commits
+     * @param commitIDs commits to pick
+     */
+    public void cherryPick(String targetBranch, List<String> commitIDs) {
+        String target = REFS.get(targetBranch);
+        if (target == null) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        } else if (WORKTREES.checkedOut(targetBranch, REPO_DIR) != null) {
+            System.out.println("That branch is checked out "
+                    + "in another worktree.");
+            return;
+        } else if (targetBranch.equals(getHEADBranch())
+                && (!stage().getAdded().isEmpty()
+                || !stage().getRemoved().isEmpty())) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        ArrayList<Commit> picks = new ArrayList<>();
+        for (String commitID : commitIDs) {
+            picks.add(getCommitWithID(commitID));
+        }
+        Commit tip = readCommit(target);
+        for (Commit pick : picks) {
+            String base = TreeStore.EMPTY;
+            if (pick.getParentHash() != null) {
+                base = readCommit(pick.getParentHash()).getTree();
             }
+            InMemoryMerge merger = new InMemoryMerge(base, tip.getTree(),
+                    pick.getTree());
+            if (!merger.run()) {
+                for (String fileName : merger.conflicts()) {
+                    System.out.println("Conflict in " + fileName);
+                }
+                System.out.println("Encountered a merge conflict.");
+                break;
+            }
+            if (merger.result().equals(tip.getTree())) {
+                continue;
+            }
+            Commit picked = new Commit(tip.getHash(), pick.getMessage(),
+                    merger.result(), targetBranch);
+            storeCommit(picked, tip.getTree());
+            tip = picked;
+        }
+        if (!targetBranch.equals(getHEADBranch())) {
+            updateBranch(targetBranch, tip.getHash());
+        } else if (checkoutFiles(tip)) {
+            updateHEAD(targetBranch, tip.getHash());
         }
-        commitMergeCommit(currentCommit, mergeCommit, branchName, newBlobs);
     }
 
     /**
-     * Merge helper function to overwrite or remove.
-     * @param fileName input file name
-     * @param mergeFile input merge file
-     * @param currentFile input current file
-     * @param blob input blob
-     */
-    private void overwriteOrRemove(String fileName, File mergeFile,
-                                   File currentFile, byte[] blob) {
-        if (mergeFile.exists() && blob != null) {
-            byte[] contents = Utils.readContents(mergeFile);
-            Utils.writeContents(currentFile, contents);
-            stage.getAdded().put(fileName, contents);
+     * Deletes commits, trees and blobs that cannot be reached from any
+     * branch, or from the head or staging area of any worktree, once
+     * they are older than the grace period.
+     * @param grace grace period in milliseconds
+     */
+    public void gc(long grace) {
+        GarbageCollector collector = new GarbageCollector(getRoots(),
+                stagedBlobs());
+        if (BITMAPS.exists()) {
+            collector.mark(BITMAPS);
         } else {
-            Utils.restrictedDelete(currentFile);
-            stage.getRemoved().add(fileName);
+            collector.mark();
+        }
+        if (!collector.unreadableCommits().isEmpty()) {
+            System.out.println("Cannot read commit "
+                    + collector.unreadableCommits().iterator().next().toHex()
+                    + "; run fsck.");
+            return;
+        } else if (!collector.unreadableTrees().isEmpty()) {
+            System.out.println("Cannot read tree "
+                    + collector.unreadableTrees().iterator().next().toHex()
+                    + "; run fsck.");
+            return;
+        }
+        int[] removed = collector.sweep(grace);
+        if (BITMAPS.exists()) {
+            BITMAPS.rebuild(getRoots());
+        }
+        System.out.println("Removed " + removed[0] + " commits, "
+                + removed[2] + " trees and " + removed[1] + " blobs.");
+    }
+
+    /**
+     * Brings the reachability bitmaps up to date with the branches and
+     * worktree heads, writing them if there are none yet.
+     */
+    public void writeBitmaps() {
+        int bitmaps = BITMAPS.update(getRoots());
+        System.out.println("Wrote " + bitmaps + " bitmaps.");
+    }
+
+    /**
+     * Moves every branch into the packed-refs file, so that listing the
+     * branches reads one file.
+     */
+    public void packRefs() {
+        int packed = REFS.pack();
+        System.out.println("Packed " + packed + " branches.");
+    }
+
+    /**
+     * Prints how much of what commands write is forced to disk, or sets
+     * it: "none", "batched" or "always".
+     * @param mode input durability, or null to print it
+     */
+    public void durability(String mode) {
+        if (mode == null) {
+            System.out.println(WritePipeline.Durability.of(COMMON_DIR)
+                    .name().toLowerCase());
+            return;
         }
+        WritePipeline.Durability durability =
+                WritePipeline.Durability.parse(mode);
+        if (durability == null) {
+            System.out.println("Durability must be none, batched or always.");
+            return;
+        }
+        durability.set(COMMON_DIR);
     }
 
-    private void resolveConflict(String fileName, File currentFile,
-                                 File headFile, File mergeFile,
-                                 byte[] headBlob, byte[] mergeBlob) {
-        String mergeContent = "";
-        String headContent = "";
-        if (mergeFile.exists() && mergeBlob != null) {
-            mergeContent = new String(Utils.readContents(mergeFile));
+    /**
+     * Prints the numbers of commits, trees and blobs reachable from the
+     * given branches and not from the excluded ones.  With no branches
+     * given, counts what the branches and worktree heads reach.
+     * @param branchNames input branches, or empty for all
+     * @param excluded input branches whose objects are not counted
+     */
+    public void countObjects(List<String> branchNames,
+                             List<String> excluded) {
+        ArrayList<String> included = branchHeads(branchNames);
+        ArrayList<String> others = branchHeads(excluded);
+        if (included == null || others == null) {
+            System.out.println("A branch with that name does not exist.");
+            return;
         }
-        if (headFile.exists() && headBlob != null) {
-            headContent = new String(Utils.readContents(headFile));
+        BitSet objects = BITMAPS.reachable(branchNames.isEmpty()
+                ? getRoots() : included);
+        objects.andNot(BITMAPS.reachable(others));
+        System.out.println(BITMAPS.objects(objects, Pack.COMMIT).size()
+                + " commits, " + BITMAPS.objects(objects, Pack.TREE).size()
+                + " trees, " + BITMAPS.objects(objects, Pack.BLOB).size()
+                + " blobs");
+    }
+
+    /**
+     * Returns the commits at the heads of the given branches.
+     * @param branchNames input branches
+     * @return commit sha1s, or null if a branch does not exist
+     */
+    private ArrayList<String> branchHeads(List<String> branchNames) {
+        ArrayList<String> heads = new ArrayList<>();
+        for (String branchName : branchNames) {
+            String head = REFS.get(branchName);
+            if (head == null) {
+                return null;
+            }
+            heads.add(head);
+        }
+        return heads;
+    }
+
+    /**
+     * Verifies the object store: that every object's contents match its
+     * name, and that everything reachable from the branches, the head
+     * and the staging area is present.  Reports missing, corrupt and
+     * dangling objects.
+     * @param quick whether to skip re-hashing object contents
+     */
+    public void fsck(boolean quick) {
+        IntegrityChecker checker = new IntegrityChecker(getRoots(),
+                stagedBlobs());
+        for (String problem : checker.check(!quick)) {
+            System.out.println(problem);
+        }
+    }
+
+    /**
+     * Returns the commits every branch and the head of every worktree
+     * point to.
+     * @return commit sha1s
+     */
+    private ArrayList<String> getRoots() {
+        ArrayList<String> roots = new ArrayList<>();
+        for (File worktree : WORKTREES.all()) {
+            roots.add(Worktrees.headCommit(worktree));
+        }
+        roots.addAll(REFS.all().values());
+        return roots;
+    }
+
+    /**
+     * Returns the blobs staged for addition in every worktree.
+     * @return blob sha1s
+     */
+    private ArrayList<String> stagedBlobs() {
+        ArrayList<String> blobs = new ArrayList<>();
+        for (File worktree : WORKTREES.all()) {
+            blobs.addAll(Worktrees.stage(worktree).getAdded().values());
+        }
+        return blobs;
+    }
+
+    /**
+     * Changes the sparse-checkout patterns and updates the working
+     * directory to match: tracked files newly included are written, and
+     * unmodified tracked files newly excluded are removed.  Modified
+     * files are left in place.
+     * @param mode one of set, add, list or disable
+     * @param patterns input patterns, for set and add
+     */
+    public void sparseCheckout(String mode, List<String> patterns) {
+        switch (mode) {
+        case "list":
+            for (String pattern : SPARSE.patterns()) {
+                System.out.println(pattern);
+            }
+            return;
+        case "set":
+        case "add":
+            try {
+                if (mode.equals("set")) {
+                    SPARSE.set(patterns);
+                } else {
+                    SPARSE.add(patterns);
+                }
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+                return;
+            }
+            break;
+        case "disable":
+            SPARSE.disable();
+            break;
+        default:
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        HashMap<String, String> staged = getStagedBlobs();
+        for (String fileName : staged.keySet()) {
+            File file = Utils.join(CWD, fileName);
+            if (SPARSE.includes(fileName)) {
+                if (!file.exists()) {
+                    writeWorkingFile(fileName, staged.get(fileName));
+                }
+            } else if (file.isFile() && Utils.sha1(Utils.readContents(file))
+                    .equals(staged.get(fileName))) {
+                deleteWorkingFile(fileName);
+            }
+        }
+    }
+
+    /**
+     * Saves the location of another repository's .gitlet directory
+     * under the given remote name.
+     * @param remoteName input remote name
+     * @param path input path, with / separating directories
+     */
+    public void addRemote(String remoteName, String path) {
+        if (!Refs.isValid(remoteName) || remoteName.contains("/")) {
+            System.out.println("Invalid remote name.");
+            return;
+        }
+        File remoteFile = Utils.join(REMOTES_DIR, remoteName + ".txt");
+        if (remoteFile.exists()) {
+            System.out.println("A remote with that name already exists.");
+            return;
+        }
+        REMOTES_DIR.mkdirs();
+        Utils.writeContents(remoteFile,
+                path.replace("/", File.separator));
+    }
+
+    /**
+     * Removes the remote with the given name.
+     * @param remoteName input remote name
+     */
+    public void rmRemote(String remoteName) {
+        File remoteFile = Utils.join(REMOTES_DIR, remoteName + ".txt");
+        if (!remoteFile.exists()) {
+            System.out.println("A remote with that name does not exist.");
+            return;
+        }
+        remoteFile.delete();
+    }
+
+    /**
+     * Copies the commits and blobs of the given remote branch that this
+     * repository lacks, and points the branch remoteName/branchName at
+     * its head.
+     * @param remoteName input remote name
+     * @param branchName input branch on the remote
+     * @return true iff the branch was fetched
+     */
+    public boolean fetch(String remoteName, String branchName) {
+        Remote remote = getRemote(remoteName);
+        if (remote == null) {
+            return false;
+        }
+        String remoteHead = remote.branch(branchName);
+        if (remoteHead == null) {
+            System.out.println("That remote does not have that branch.");
+            return false;
+        }
+        Remote local = new Remote(COMMON_DIR);
+        remote.sendTo(local, remoteHead);
+        local.setBranch(remoteName + "/" + branchName, remoteHead);
+        return true;
+    }
+
+    /**
+     * Copies the commits and blobs of the current branch that the remote
+     * lacks, and fast-forwards the remote branch to the head commit.
+     * The remote branch is created if need be.
+     * @param remoteName input remote name
+     * @param branchName input branch on the remote
+     */
+    public void push(String remoteName, String branchName) {
+        Remote remote = getRemote(remoteName);
+        if (remote == null) {
+            return;
+        }
+        Remote local = new Remote(COMMON_DIR);
+        RepoLock lock = remote.lockBranch(branchName);
+        try {
+            String remoteHead = remote.branch(branchName);
+            if (remoteHead != null
+                    && !local.isAncestor(remoteHead, headCommit())) {
+                System.out.println("Please pull down remote changes "
+                        + "before pushing.");
+                return;
+            }
+            local.sendTo(remote, headCommit());
+            remote.setBranch(branchName, headCommit());
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Fetches the given remote branch and merges it into the current
+     * branch.
+     * @param remoteName input remote name
+     * @param branchName input branch on the remote
+     */
+    public void pull(String remoteName, String branchName) {
+        if (fetch(remoteName, branchName)) {
+            merge(remoteName + "/" + branchName);
+        }
+    }
+
+    /**
+     * Writes the given branches, with every commit and blob they need,
+     * to a single bundle file.  With base commits, only what is not
+     * reachable from them is bundled.
+     * @param file input bundle file
+     * @param branchNames input branches to bundle
+     * @param baseIDs commits the receiver is known to have
+     */
+    public void bundleCreate(File file, List<String> branchNames,
+                             List<String> baseIDs) {
+        TreeMap<String, String> refs = new TreeMap<>();
+        for (String branchName : branchNames) {
+            String head = REFS.get(branchName);
+            if (head == null) {
+                System.out.println("A branch with that name does not exist.");
+                return;
+            }
+            refs.put(branchName, head);
+        }
+        ArrayList<String> bases = new ArrayList<>();
+        for (String baseID : baseIDs) {
+            bases.add(getCommitWithID(baseID).getHash());
+        }
+        int commits = Bundle.create(file, refs, bases, COMMITS, TREES,
+                BLOBS);
+        System.out.println("Bundled " + commits + " commits.");
+    }
+
+    /**
+     * Copies the commits and blobs in a bundle file into this repository
+     * and updates its branches to the bundled ones where that is a fast
+     * forward.  The current branch is only moved if nothing is staged,
+     * and the working directory moves with it.
+     * @param file input bundle file
+     */
+    public void unbundle(File file) {
+        if (!file.isFile()) {
+            System.out.println("File does not exist.");
+            return;
+        }
+        Remote local = new Remote(COMMON_DIR);
+        TreeMap<String, String> refs;
+        try (Bundle bundle = new Bundle(file)) {
+            for (String base : bundle.bases()) {
+                if (!local.contains(base)) {
+                    System.out.println("Bundle requires commit " + base
+                            + ".");
+                    return;
+                }
+            }
+            bundle.unpack(local);
+            refs = bundle.refs();
+        } catch (IOException excp) {
+            System.out.println("Cannot read " + file.getName() + ".");
+            return;
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return;
+        }
+        for (String branchName : refs.keySet()) {
+            String commit = refs.get(branchName);
+            String current = local.branch(branchName);
+            if (commit.equals(current)) {
+                continue;
+            } else if (current != null
+                    && !local.isAncestor(current, commit)) {
+                System.out.println("Not updating " + branchName
+                        + ": not a fast-forward.");
+            } else if (!branchName.equals(getHEADBranch())) {
+                local.setBranch(branchName, commit);
+            } else if (!stage().getAdded().isEmpty()
+                    || !stage().getRemoved().isEmpty()) {
+                System.out.println("Not updating " + branchName
+                        + ": you have uncommitted changes.");
+            } else if (checkoutFiles(readCommit(commit))) {
+                updateHEAD(branchName, commit);
+            }
+        }
+    }
+
+    /**
+     * Returns the repository saved under the given remote name, or
+     * prints a message and returns null if it cannot be found.
+     * @param remoteName input remote name
+     * @return remote repository
+     */
+    private Remote getRemote(String remoteName) {
+        File remoteFile = Utils.join(REMOTES_DIR, remoteName + ".txt");
+        if (remoteFile.exists()) {
+            Remote remote = new Remote(new File(
+                    Utils.readContentsAsString(remoteFile)));
+            if (remote.exists()) {
+                return remote;
+            }
+        }
+        System.out.println("Remote directory not found.");
+        return null;
+    }
+
+    /**
+     * Makes a new worktree in the given directory with the given branch
+     * checked out.  It has a head and staging area of its own, and
+     * shares commits, blobs and branches with this repository.
+     * @param path input directory, which must be empty or absent
+     * @param branchName input branch to check out
+     */
+    public void worktreeAdd(File path, String branchName) {
+        String head = REFS.get(branchName);
+        File gitletDir = Utils.join(path, ".gitlet");
+        String[] existing = path.list();
+        if (head == null) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        } else if (path.exists() && (existing == null
+                || existing.length > 0)) {
+            System.out.println("That directory is not empty.");
+            return;
+        } else if (WORKTREES.checkedOut(branchName, gitletDir) != null) {
+            System.out.println("That branch is checked out "
+                    + "in another worktree.");
+            return;
+        }
+        Commit commit = readCommit(head);
+        WORKTREES.add(gitletDir, branchName, commit.getHash());
+        HashMap<String, String> files = filesOf(commit);
+        for (String fileName : files.keySet()) {
+            File file = Utils.join(path, fileName);
+            file.getParentFile().mkdirs();
+            BLOBS.copyTo(files.get(fileName), file);
+        }
+    }
+
+    /** Prints each worktree's directory and current branch. */
+    public void worktreeList() {
+        for (File worktree : WORKTREES.all()) {
+            System.out.println(worktree.getAbsoluteFile().getParent()
+                    + " [" + Worktrees.headBranch(worktree) + "]");
+        }
+    }
+
+    /**
+     * Runs a monitor of the working directory until it is stopped, so
+     * that other commands need only look at the files changed since
+     * they last ran.
+     */
+    public void monitor() {
+        try {
+            new FileMonitor(CWD, Utils.join(REPO_DIR, "monitor")).run();
+        } catch (IOException excp) {
+            System.out.println("Cannot monitor the working directory.");
+        }
+    }
+
+    /**
+     * Stops the running monitor of the working directory, if any.
+     */
+    public void stopMonitor() {
+        if (!FileMonitor.stop(Utils.join(REPO_DIR, "monitor"))) {
+            System.out.println("No monitor is running.");
+        }
+    }
+
+    /**
+     * Moves commits and blobs stored in the flat layout used before
+     * objects were sharded into their shard directories.  Commits from
+     * before trees, which held their files' contents, cannot be read by
+     * this version and would need new sha1s, so if any remain nothing
+     * is moved.
+     */
+    public void migrateObjects() {
+        for (File file : COMMITS.unsharded()) {
+            try {
+                Utils.readObject(file, Commit.class);
+            } catch (IllegalArgumentException excp) {
+                String name = file.getName();
+                System.out.println("Commit " + name.substring(0,
+                        name.length() - ObjectDirectory.SUFFIX.length())
+                        + " is in a format this version cannot read;"
+                        + " nothing migrated.");
+                return;
+            }
+        }
+        int commits = COMMITS.migrate();
+        int blobs = BLOBS.whole().migrate();
+        System.out.println("Migrated " + commits + " commits and "
+                + blobs + " blobs.");
+    }
+
+    /**
+     * Carries out a merge plan in the working directory.  Files are
+     * written, removed and merged in parallel, since each plan entry
+     * touches a different file.  Files outside the sparse-checkout
+     * patterns are merged in the object store alone, unless they
+     * conflict and so need resolving by hand.
+     * @param plan input plan
+     * @param conflicts set receiving the names of conflicted files
+     * @return changes to the head's files, mapping each changed path to
+     *         its new blob sha1, or to null if it is removed
+     */
+    private HashMap<String, String> applyMergePlan(MergePlan plan,
+                                                   Set<String> conflicts) {
+        Map<String, String> changes =
+                Collections.synchronizedMap(new HashMap<>());
+        plan.entries().parallelStream().forEach(entry -> {
+            String fileName = entry.fileName();
+            File currentFile = Utils.join(CWD, fileName);
+            switch (entry.kind()) {
+            case KEEP:
+                break;
+            case TAKE:
+                if (SPARSE.includes(fileName)) {
+                    writeWorkingFile(fileName, entry.other());
+                }
+                changes.put(fileName, entry.other());
+                break;
+            case REMOVE:
+                if (SPARSE.includes(fileName)) {
+                    deleteWorkingFile(fileName);
+                }
+                changes.put(fileName, null);
+                break;
+            default:
+                if (SPARSE.includes(fileName)) {
+                    currentFile.getParentFile().mkdirs();
+                    changes.put(fileName,
+                            resolveConflict(entry, currentFile, conflicts));
+                    break;
+                }
+                String merged = InMemoryMerge.mergeBlob(entry, conflicts);
+                if (conflicts.contains(fileName)) {
+                    writeWorkingFile(fileName, merged);
+                }
+                changes.put(fileName, merged);
+                break;
+            }
+        });
+        return new HashMap<>(changes);
+    }
+
+    /**
+     * Merges the head and given versions of a file line by line against
+     * the split point version, streaming the result to the working file
+     * and storing it as a blob.  Only lines both sides changed
+     * differently are left in conflict.
+     * @param entry input plan entry
+     * @param currentFile input working file
+     * @param conflicts set receiving the file name if it conflicts
+     * @return blob sha1 of the merged file
+     */
+    private String resolveConflict(MergePlan.Entry entry, File currentFile,
+                                   Set<String> conflicts) {
+        ThreeWayMerge merger = new ThreeWayMerge(readBlob(entry.split()),
+                readBlob(entry.head()), readBlob(entry.other()));
+        MessageDigest digest = Utils.newSha1();
+        try (OutputStream out = new DigestOutputStream(
+                new BufferedOutputStream(
+                        Files.newOutputStream(currentFile.toPath())),
+                digest)) {
+            if (merger.write(out)) {
+                conflicts.add(entry.fileName());
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write %s.", entry.fileName());
+        }
+        String mergedHash = Utils.toHex(digest.digest());
+        File temp = BLOBS.createTemp();
+        copyFile(currentFile, temp);
+        BLOBS.install(temp, mergedHash);
+        return mergedHash;
+    }
+
+    /**
+     * Copies a file, replacing any existing target.
+     * @param source input source file
+     * @param target input target file
+     */
+    private void copyFile(File source, File target) {
+        try {
+            Files.copy(source.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot copy to %s.", target.getName());
         }
-        String contentToWrite = "<<<<<<< HEAD\n" + headContent
-                + "=======\n" + mergeContent + ">>>>>>>\n";
-        Utils.writeContents(currentFile, contentToWrite);
-        stage.getAdded().put(fileName, contentToWrite.getBytes());
-        System.out.println("Encountered merge conflict.");
     }
 
     private void commitMergeCommit(Commit currentCommit, Commit mergeCommit,
-                                   String branchName, HashMap<String,
-                                    byte[]> newBlobs) {
+                                   String branchName, String newTree) {
         MergeCommit mergedCommit =
                 new MergeCommit(currentCommit.getHash(),
                 mergeCommit.getHash(),
                 "Merged " + branchName + " into "
-                        + getHEADBranch() + ".", newBlobs,
+                        + getHEADBranch() + ".", newTree,
                         getHEADBranch());
-        Utils.writeObject(Utils.join
-                (COMMITS_DIR, mergedCommit.getHash()
-                        + ".txt"), mergedCommit);
+        storeCommit(mergedCommit, currentCommit.getTree());
+        stage().clearAll();
+        queueStage();
         updateHEAD(getHEADBranch(), mergedCommit.getHash());
-        stage.clearAll();
-        updateStage();
     }
 
     /**
-     * Updates Head.
+     * Updates Head, publishing it, the branch and any other writes
+     * queued together.
      * @param branch input branch
      * @param commit input commit
      */
     private void updateHEAD(String branch, String commit) {
         headCommit = commit;
         headBranch = branch;
-        Utils.writeContents(Utils.join
-                (CWD, ".gitlet/pointers/HEAD-branch.txt"), headBranch);
-        Utils.writeContents(Utils.join
-                (CWD, ".gitlet/pointers/HEAD-commit.txt"), headCommit);
-        Utils.writeContents(Utils.join
-                (BRANCHES_DIR, headBranch + ".txt"), headCommit);
+        writes().replace(HEAD_BRANCH_FILE, headBranch);
+        writes().replace(HEAD_COMMIT_FILE, headCommit);
+        writes().replaceBranch(headBranch, REFS.looseFile(headBranch),
+                headCommit);
+        publish();
+    }
+
+    /**
+     * Points a branch that no worktree has checked out at a commit.
+     * @param branch input branch
+     * @param commit input commit
+     */
+    private void updateBranch(String branch, String commit) {
+        publish();
+        REFS.set(branch, commit);
     }
 
     /** Updates Stage field. */
     private void updateStage() {
-        Utils.writeObject(STAGING_AREA_FILE, stage);
+        queueStage();
+        publish();
+    }
+
+    /** Queues writing the stage, to be published with what follows. */
+    private void queueStage() {
+        writes().replace(STAGING_AREA_FILE, Utils.serialize(stage()));
+    }
+
+    /**
+     * Returns the writes of this command, creating them on first use.
+     * @return writes not yet published
+     */
+    private WritePipeline writes() {
+        if (writes == null) {
+            writes = new WritePipeline(REPO_DIR,
+                    WritePipeline.Durability.of(COMMON_DIR));
+        }
+        return writes;
+    }
+
+    /** Waits for the objects written and publishes the queued updates
+     *  through one journal record.  Main calls this once more as each
+     *  command ends, so no write is left behind. */
+    void publish() {
+        if (writes != null) {
+            writes.publish();
+        }
     }
 
     /**
      * Updates head branch.
      * @return string branch
      */
-    private String getHEADBranch() {
+    String getHEADBranch() {
+        if (headBranch == null) {
+            headBranch = HEAD_BRANCH_FILE.exists()
+                    ? Utils.readContentsAsString(HEAD_BRANCH_FILE) : "master";
+        }
         return headBranch;
     }
 
+    /**
+     * Returns the head commit pointer, reading it on first use.
+     * @return head commit sha1, or null before init
+     */
+    private String headCommit() {
+        if (headCommit == null && HEAD_COMMIT_FILE.exists()) {
+            headCommit = Utils.readContentsAsString(HEAD_COMMIT_FILE);
+        }
+        return headCommit;
+    }
+
+    /**
+     * Returns the stage, reading it on first use.
+     * @return stage
+     */
+    private StagingArea stage() {
+        if (stage == null && STAGING_AREA_FILE.exists()) {
+            stage = Utils.readObject(STAGING_AREA_FILE, StagingArea.class);
+        }
+        return stage;
+    }
+
     /**
      * Updates head commit.
      * @return head commit
      */
     private Commit getHEADCommit() {
-        return Utils.readObject(Utils.join
-                (COMMITS_DIR, headCommit + ".txt"), Commit.class);
+        return readCommit(headCommit());
+    }
+
+    /**
+     * Writes a new commit to the object store, in the background until
+     * the writes are next published, and records the files it changed
+     * in the commit graph.
+     * @param commit input commit
+     * @param parentTree root tree of its first parent, the empty tree if
+     *        it has none
+     */
+    private void storeCommit(Commit commit, String parentTree) {
+        writes().write(COMMITS, commit.getHash(), Utils.serialize(commit));
+        CHANGED_PATHS.add(commit,
+                TREES.diff(parentTree, commit.getTree()).keySet());
+    }
+
+    /**
+     * Reads the commit with the given full sha1.
+     * @param commitHash input commit sha1
+     * @return commit
+     */
+    static Commit readCommit(String commitHash) {
+        return Utils.readObject(COMMITS.file(commitHash), Commit.class);
+    }
+
+    /**
+     * Returns the blob a commit tracks at the given path, reading only
+     * the trees on that path.
+     * @param commit input commit
+     * @param fileName input path
+     * @return blob sha1, or null if the commit does not track the path
+     */
+    static String blobOf(Commit commit, String fileName) {
+        return TREES.lookup(commit.getTree(), fileName);
+    }
+
+    /**
+     * Returns every file a commit tracks.
+     * @param commit input commit
+     * @return map from path to blob sha1
+     */
+    static HashMap<String, String> filesOf(Commit commit) {
+        return TREES.files(commit.getTree());
+    }
+
+    /**
+     * Returns the files the next commit would track: the head commit's
+     * blobs with the staged additions and removals applied.
+     * @return map from file name to blob sha1
+     */
+    private HashMap<String, String> getStagedBlobs() {
+        HashMap<String, String> blobs = filesOf(getHEADCommit());
+        blobs.putAll(stage().getAdded());
+        for (String fileName : stage().getRemoved()) {
+            blobs.remove(fileName);
+        }
+        return blobs;
+    }
+
+    /**
+     * Returns the contents of the blob with the given sha1.
+     * @param blobHash input blob sha1, or null
+     * @return contents, or null if blobHash is null
+     */
+    static byte[] readBlob(String blobHash) {
+        return BLOBS.read(blobHash);
     }
 
     /**
@@ -667,59 +1672,49 @@ public class Repo {
      * @return commit
      */
     private Commit getCommitWithID(String commitID) {
-        String fetchedCommitID = "";
-        ArrayList<String> filesInCommitDir =
-                new ArrayList<>(Utils.plainFilenamesIn(COMMITS_DIR));
-        for (String targetFileName : filesInCommitDir) {
-            if (targetFileName.startsWith(commitID)) {
-                fetchedCommitID = targetFileName.substring
-                        (0, targetFileName.length() - 4);
-                break;
-            }
+        String fetchedCommitID;
+        try {
+            fetchedCommitID = COMMITS.findPrefix(commitID);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            System.exit(0);
+            return null;
         }
-        if (fetchedCommitID.equals("")) {
+        if (fetchedCommitID == null) {
             System.out.println("No commit with that id exists.");
             System.exit(0);
             return null;
         }
-        return Utils.readObject(Utils.join
-                (COMMITS_DIR, fetchedCommitID + ".txt"),
-                Commit.class);
+        return readCommit(fetchedCommitID);
     }
 
     /**
-     * Fetches branch from corresponding commmitID.
-     * @param commitID input commitID
-     * @return string branch
+     * Returns the names of all branches in order, including the
+     * remote-tracking branches fetch creates, named remote/branch.
+     * @return branch names
      */
-    private String getBranchFromCommitID(String commitID) {
-        ArrayList<String> filesInBranchesDir =
-                new ArrayList<>(Utils.plainFilenamesIn(BRANCHES_DIR));
-        Commit commit = getCommitWithID(commitID);
-        for (String fileName : filesInBranchesDir) {
-            String substring = fileName.substring
-                    (0, fileName.length() - 4);
-            if (substring.equals(commit.getBranch())) {
-                return substring;
-            }
-        }
-        return null;
+    private List<String> branchNames() {
+        return REFS.names();
     }
 
     /**
-     * Blob combiner to set.
-     * @param blob1 input 1
-     * @param blob2 input 2
-     * @param blob3 input 3
-     * @return set of blobs
+     * Fetches branch from corresponding commmitID.  Main calls this,
+     * holding the head, to lock the branch reset will move.
+     * @param commitID input commitID
+     * @return string branch, or null if it is gone or there is no such
+     *         commit
      */
-    private HashSet<String> blobCombiner3(HashMap<String, byte[]> blob1,
-                                          HashMap<String, byte[]> blob2,
-                                          HashMap<String, byte[]> blob3) {
-        HashSet<String> set = new HashSet<>();
-        set.addAll(blob1.keySet());
-        set.addAll(blob2.keySet());
-        set.addAll(blob3.keySet());
-        return set;
+    static String getBranchFromCommitID(String commitID) {
+        String fetchedCommitID;
+        try {
+            fetchedCommitID = COMMITS.findPrefix(commitID);
+        } catch (GitletException excp) {
+            return null;
+        }
+        if (fetchedCommitID == null) {
+            return null;
+        }
+        String branch = readCommit(fetchedCommitID).getBranch();
+        return branch != null && REFS.contains(branch) ? branch : null;
     }
 }
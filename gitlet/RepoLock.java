@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/** The locks a command holds on a repository, so that commands may run
+ *  at once in separate processes.  They are byte-range FileLocks on the
+ *  lock file in the main .gitlet directory.  Byte 0 guards the
+ *  repository as a whole: every command holds it shared, and commands
+ *  that rewrite objects (migrate-objects, for instance) hold it
+ *  exclusive.  Byte 1 of the lock file in a worktree's own .gitlet
+ *  directory guards that worktree's head, stage and working directory:
+ *  readers of the head hold it shared, so it does not move under them,
+ *  and commands that move it or touch the stage or working files hold it
+ *  exclusive.
+ *  The STRIPES bytes after those two in the main lock file each guard
+ *  the branches whose names hash to them, and are held exclusive by
+ *  commands that update those branches; commands updating different
+ *  branches rarely contend.  A command that updates the current branch
+ *  without moving the head holds the head shared and the branch's stripe
+ *  exclusive.  The byte after the stripes guards packed-refs, and is
+ *  held exclusive by commands that may rewrite it to delete a branch.
+ *  Locks are always taken in that order, so two commands cannot
+ *  deadlock, and are held until the command exits, except that the head
+ *  and stripes may be let go early, to be taken again, as a command
+ *  does that must first replay a journal record.  Readers of branches
+ *  and objects need no stripe: those files are written whole and
+ *  renamed into place.
+ *  @author Ethan Herrera
+ */
+class RepoLock {
+
+    /** Number of branch stripes. */
+    static final int STRIPES = 64;
+    /** Offset of the repository-wide lock. */
+    private static final long REPOSITORY = 0;
+    /** Offset of the head lock. */
+    private static final long HEAD = 1;
+    /** Offset of the first branch stripe. */
+    private static final long FIRST_STRIPE = 2;
+
+    /** The locks of the worktree whose .gitlet directory is DIR. */
+    RepoLock(File dir) {
+        _file = Utils.join(Worktrees.commonDir(dir), "lock");
+        _headFile = Utils.join(dir, "lock");
+    }
+
+    /** Hold the whole repository, shared if SHARED. */
+    void repository(boolean shared) {
+        _channel = open(_channel, _file);
+        lock(_channel, _file, REPOSITORY, shared);
+    }
+
+    /** Hold the head, shared if SHARED.  Must follow repository() and
+     *  precede branches(). */
+    void head(boolean shared) {
+        if (_headFile.getAbsoluteFile().equals(_file.getAbsoluteFile())) {
+            _channel = open(_channel, _file);
+            _head = lock(_channel, _file, HEAD, shared);
+        } else {
+            _headChannel = open(_headChannel, _headFile);
+            _head = lock(_headChannel, _headFile, HEAD, shared);
+        }
+    }
+
+    /** Let go of the head, holding no stripes, so that it may be held
+     *  again. */
+    void releaseHead() {
+        unlock(_head);
+        _head = null;
+    }
+
+    /** Hold the stripes of the branches named BRANCHES exclusive.  Must
+     *  follow repository() and head(), and may be called again only
+     *  after releaseBranches(). */
+    void branches(Collection<String> branches) {
+        TreeSet<Long> stripes = new TreeSet<>();
+        for (String branch : branches) {
+            stripes.add(FIRST_STRIPE + stripe(branch));
+        }
+        _channel = open(_channel, _file);
+        for (long stripe : stripes) {
+            _stripes.add(lock(_channel, _file, stripe, false));
+        }
+    }
+
+    /** Let go of the stripes held. */
+    void releaseBranches() {
+        for (FileLock stripe : _stripes) {
+            unlock(stripe);
+        }
+        _stripes.clear();
+    }
+
+    /** Hold packed-refs exclusive.  Must follow branches(), if it is
+     *  called. */
+    void packedRefs() {
+        _channel = open(_channel, _file);
+        lock(_channel, _file, FIRST_STRIPE + STRIPES, false);
+    }
+
+    /** Release every lock held. */
+    void release() {
+        try {
+            if (_headChannel != null) {
+                _headChannel.close();
+            }
+            if (_channel != null) {
+                _channel.close();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot release %s.", _file);
+        } finally {
+            _channel = _headChannel = null;
+            _head = null;
+            _stripes.clear();
+        }
+    }
+
+    /** Return the stripe guarding BRANCH. */
+    static int stripe(String branch) {
+        return Math.floorMod(branch.hashCode(), STRIPES);
+    }
+
+    /** Return FILE, open.  CHANNEL is FILE, if it is open already. */
+    private FileChannel open(FileChannel channel, File file) {
+        try {
+            if (channel == null) {
+                channel = FileChannel.open(file.toPath(),
+                                           StandardOpenOption.CREATE,
+                                           StandardOpenOption.READ,
+                                           StandardOpenOption.WRITE);
+            }
+            return channel;
+        } catch (IOException excp) {
+            release();
+            throw Utils.error("Cannot lock %s.", file);
+        }
+    }
+
+    /** Lock the byte at POSITION of FILE, open as CHANNEL, shared if
+     *  SHARED, waiting as long as need be, and return the lock. */
+    private FileLock lock(FileChannel channel, File file, long position,
+                          boolean shared) {
+        try {
+            return channel.lock(position, 1, shared);
+        } catch (IOException excp) {
+            release();
+            throw Utils.error("Cannot lock %s.", file);
+        }
+    }
+
+    /** Let go of LOCK, if it is held. */
+    private void unlock(FileLock lock) {
+        try {
+            if (lock != null && lock.isValid()) {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot release %s.", _file);
+        }
+    }
+
+    /** The main lock file. */
+    private final File _file;
+    /** The worktree's own lock file, which may be _file. */
+    private final File _headFile;
+    /** The main lock file, open while locks are held. */
+    private FileChannel _channel;
+    /** The worktree's own lock file, open while its head is held. */
+    private FileChannel _headChannel;
+    /** The lock on the head, if held. */
+    private FileLock _head;
+    /** The locks on the stripes held. */
+    private final List<FileLock> _stripes = new ArrayList<>();
+}
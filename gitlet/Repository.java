@@ -0,0 +1,277 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Read access to a Gitlet repository for programs that embed Gitlet,
+ *  rather than run it as a command.  A Repository is opened on any
+ *  directory, holds no static state, prints nothing and never exits:
+ *  problems are reported as GitletExceptions, and ids passed in are
+ *  checked to be sha1s before any file is named after them.  Many
+ *  threads may share one Repository.  Its only mutable state is the
+ *  caches of commits and trees, which are concurrent maps; since commits
+ *  and trees never change once written, cached entries never go stale.
+ *  No locks are
+ *  taken, since objects and branch files are written whole and renamed
+ *  into place, so a command running meanwhile in another process is
+ *  seen either before or after each update.  The head and branches
+ *  are read through the worktree's journal, so updates a command
+ *  published before dying are seen even before they are replayed.
+ *  Commits are returned as the immutable Commit objects the command line
+ *  uses, trees as Tree views, and blobs as streams.
+ *  @author Ethan Herrera
+ */
+public final class Repository {
+
+    /** An immutable view of one tree: the entries of one directory. */
+    public static final class Tree {
+        /** The tree with sha1 ID, whose entries are ENTRIES, in TREES. */
+        private Tree(String id, TreeMap<String, TreeStore.Entry> entries,
+                     TreeStore trees) {
+            _id = id;
+            _entries = entries;
+            _trees = trees;
+        }
+
+        /** Return the sha1 of this tree. */
+        public String id() {
+            return _id;
+        }
+
+        /** Return the names of the entries, in order. */
+        public SortedSet<String> names() {
+            return Collections.unmodifiableSortedSet(
+                _entries.navigableKeySet());
+        }
+
+        /** Return true iff NAME is a subdirectory. */
+        public boolean isTree(String name) {
+            TreeStore.Entry entry = _entries.get(name);
+            return entry != null && entry.isTree();
+        }
+
+        /** Return the sha1 of the blob or subtree NAME, or null if there
+         *  is no such entry. */
+        public String entry(String name) {
+            TreeStore.Entry entry = _entries.get(name);
+            return entry == null ? null : entry.id();
+        }
+
+        /** Return the subdirectory NAME, or null if NAME is not one. */
+        public Tree subtree(String name) {
+            if (!isTree(name)) {
+                return null;
+            }
+            String id = _entries.get(name).id();
+            return new Tree(id, _trees.read(id), _trees);
+        }
+
+        /** Sha1 of the tree. */
+        private final String _id;
+        /** Entries by name, shared with the tree cache and never
+         *  changed. */
+        private final TreeMap<String, TreeStore.Entry> _entries;
+        /** Where subtrees are read from. */
+        private final TreeStore _trees;
+    }
+
+    /** The repository whose working directory, or .gitlet directory, is
+     *  DIR. */
+    private Repository(File dir) {
+        _dir = dir;
+        _common = Worktrees.commonDir(dir);
+        _commits = new ObjectDirectory(Utils.join(_common, "commits"));
+        _trees = new TreeStore(_common);
+        _blobs = new BlobStore(_common);
+        _refs = new Refs(_common);
+    }
+
+    /** Return the repository whose working directory is DIR, or whose
+     *  .gitlet directory is DIR. */
+    public static Repository open(File dir) {
+        File gitlet = dir.getName().equals(".gitlet") ? dir
+            : Utils.join(dir, ".gitlet");
+        if (!Utils.join(gitlet, "pointers", "HEAD-commit.txt").isFile()) {
+            throw Utils.error("Not a Gitlet repository: %s.", dir);
+        }
+        return new Repository(gitlet.getAbsoluteFile());
+    }
+
+    /** Return the sha1 of the head commit of this worktree. */
+    public String head() {
+        return Worktrees.headCommit(_dir);
+    }
+
+    /** Return the current branch of this worktree. */
+    public String headBranch() {
+        return Worktrees.headBranch(_dir);
+    }
+
+    /** Return the names of all branches, in order, including the
+     *  remote-tracking branches, named REMOTE/BRANCH. */
+    public List<String> branches() {
+        return _refs.names();
+    }
+
+    /** Return the sha1 of the commit at the head of BRANCH, or null if
+     *  there is no such branch. */
+    public String branch(String branch) {
+        if (!Refs.isValid(branch)) {
+            return null;
+        }
+        String published = WritePipeline.published(_dir,
+                                                    _refs.looseFile(branch));
+        return published != null ? published : _refs.get(branch);
+    }
+
+    /** Return the sha1 of the commit REV names: a branch, or a commit
+     *  sha1 or unique-enough prefix of one. */
+    public String resolve(String rev) {
+        String result = branch(rev);
+        if (result == null && rev.matches("[0-9a-f]+")) {
+            result = _commits.findPrefix(rev);
+        }
+        if (result == null) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        return result;
+    }
+
+    /** Return the commit REV names, as for resolve. */
+    public Commit commit(String rev) {
+        return read(resolve(rev));
+    }
+
+    /** Return the commit with sha1 HASH. */
+    private Commit read(String hash) {
+        Commit result = _commitCache.get(hash);
+        if (result == null) {
+            try {
+                result = Utils.readObject(_commits.file(hash), Commit.class);
+            } catch (IllegalArgumentException excp) {
+                throw Utils.error("Cannot read commit %s.", hash);
+            }
+            _commitCache.putIfAbsent(hash, result);
+        }
+        return result;
+    }
+
+    /** Return the commits reachable from the commit REV names, REV's
+     *  first, each once.  Commits are read as the iteration reaches
+     *  them, so stopping early reads no further. */
+    public Iterable<Commit> history(String rev) {
+        String start = resolve(rev);
+        return () -> new Iterator<Commit>() {
+            @Override
+            public boolean hasNext() {
+                return !_queue.isEmpty();
+            }
+
+            @Override
+            public Commit next() {
+                if (_queue.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Commit commit = read(_queue.remove());
+                for (String parent : PackPlan.parentsOf(commit)) {
+                    if (_seen.add(ObjectId.fromHex(parent))) {
+                        _queue.add(parent);
+                    }
+                }
+                return commit;
+            }
+
+            /** Commits found but not yet returned, oldest found first. */
+            private final ArrayDeque<String> _queue =
+                new ArrayDeque<>(List.of(start));
+            /** Commits found. */
+            private final HashSet<ObjectId> _seen = new HashSet<>(
+                List.of(ObjectId.fromHex(start)));
+        };
+    }
+
+    /** Return the root tree of COMMIT. */
+    public Tree tree(Commit commit) {
+        return tree(commit.getTree());
+    }
+
+    /** Return the tree with sha1 ID. */
+    public Tree tree(String id) {
+        if (!ObjectDirectory.isHash(id) || !_trees.contains(id)) {
+            throw Utils.error("No tree %s.", id);
+        }
+        return new Tree(id, _trees.read(id), _trees);
+    }
+
+    /** Return the sha1 of the blob COMMIT has at PATH, components
+     *  separated by "/", or null if it has none. */
+    public String blob(Commit commit, String path) {
+        return _trees.lookup(commit.getTree(), path);
+    }
+
+    /** Return every file in COMMIT, mapping paths to blob sha1s. */
+    public TreeMap<String, String> files(Commit commit) {
+        return new TreeMap<>(_trees.files(commit.getTree()));
+    }
+
+    /** Return the size of the blob with sha1 BLOB. */
+    public long size(String blob) {
+        checkBlob(blob);
+        try {
+            return _blobs.size(blob);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read blob %s.", blob);
+        }
+    }
+
+    /** Return a stream of the contents of the blob with sha1 BLOB, which
+     *  the caller must close.  Large blobs are read chunk by chunk. */
+    public InputStream open(String blob) {
+        checkBlob(blob);
+        try {
+            return _blobs.open(blob);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot read blob %s.", blob);
+        }
+    }
+
+    /** Return the contents of the blob with sha1 BLOB. */
+    public byte[] contents(String blob) {
+        checkBlob(blob);
+        return _blobs.read(blob);
+    }
+
+    /** Check that BLOB is the sha1 of a blob present, before any file is
+     *  named after it. */
+    private void checkBlob(String blob) {
+        if (!ObjectDirectory.isHash(blob) || !_blobs.contains(blob)) {
+            throw Utils.error("No blob %s.", blob);
+        }
+    }
+
+    /** This worktree's .gitlet directory. */
+    private final File _dir;
+    /** The main .gitlet directory. */
+    private final File _common;
+    /** Commit objects. */
+    private final ObjectDirectory _commits;
+    /** Directory trees. */
+    private final TreeStore _trees;
+    /** File contents. */
+    private final BlobStore _blobs;
+    /** Branches. */
+    private final Refs _refs;
+    /** Commits read, by sha1. */
+    private final ConcurrentHashMap<String, Commit> _commitCache =
+        new ConcurrentHashMap<>();
+}
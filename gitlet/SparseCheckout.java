@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.regex.PatternSyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/** The sparse-checkout patterns of a repository.  Each line of the
+ *  patterns file is a glob over paths relative to the repository root;
+ *  a pattern naming a directory also covers everything beneath it.
+ *  Only tracked paths matching some pattern are materialized in the
+ *  working directory; the rest are taken to be present and unchanged.
+ *  With no patterns file, every path is included.  Patterns that are
+ *  not valid globs are refused when given, and skipped if found in the
+ *  file.
+ *  @author Ethan Herrera
+ */
+class SparseCheckout {
+
+    /** The patterns stored in FILE, if it exists.  The file is read
+     *  the first time the patterns are needed. */
+    SparseCheckout(File file) {
+        _file = file;
+        _patterns = new ArrayList<>();
+        _matchers = new ArrayList<>();
+    }
+
+    /** Return true iff sparse checkout is in effect. */
+    boolean enabled() {
+        return _file.isFile();
+    }
+
+    /** Return the patterns, in the order they were given. */
+    List<String> patterns() {
+        load();
+        return _patterns;
+    }
+
+    /** Return true iff PATH is to be materialized in the working
+     *  directory. */
+    boolean includes(String path) {
+        if (!enabled()) {
+            return true;
+        }
+        load();
+        for (PathMatcher matcher : _matchers) {
+            if (matcher.matches(Paths.get(path))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Replace the patterns with PATTERNS and save them.  It is an error
+     *  for any of PATTERNS not to be a valid glob, in which case nothing
+     *  changes. */
+    void set(Collection<String> patterns) {
+        check(patterns);
+        _loaded = true;
+        _patterns.clear();
+        _matchers.clear();
+        add(patterns);
+    }
+
+    /** Add PATTERNS to the existing ones and save them, as for set. */
+    void add(Collection<String> patterns) {
+        check(patterns);
+        load();
+        for (String pattern : new LinkedHashSet<>(patterns)) {
+            if (!_patterns.contains(pattern)) {
+                addPattern(pattern);
+            }
+        }
+        Utils.writeContents(_file, String.join("\n", _patterns) + "\n");
+    }
+
+    /** Remove the patterns file, including every path again. */
+    void disable() {
+        _loaded = true;
+        _patterns.clear();
+        _matchers.clear();
+        _file.delete();
+    }
+
+    /** Read the patterns file, once, if it exists. */
+    private void load() {
+        if (_loaded) {
+            return;
+        }
+        _loaded = true;
+        if (_file.isFile()) {
+            for (String line
+                     : Utils.readContentsAsString(_file).split("\n")) {
+                line = line.trim();
+                if (!line.isEmpty() && matchers(line) != null) {
+                    addPattern(line);
+                }
+            }
+        }
+    }
+
+    /** Check that each of PATTERNS is a valid glob. */
+    private static void check(Collection<String> patterns) {
+        for (String pattern : patterns) {
+            if (matchers(pattern) == null) {
+                throw Utils.error("Invalid pattern %s.", pattern);
+            }
+        }
+    }
+
+    /** Add PATTERN, which must be valid. */
+    private void addPattern(String pattern) {
+        _patterns.add(pattern);
+        _matchers.addAll(matchers(pattern));
+    }
+
+    /** Return the matchers for PATTERN, matching both the paths it names
+     *  and anything beneath them, or null if it is not a valid glob. */
+    private static List<PathMatcher> matchers(String pattern) {
+        String glob = pattern;
+        while (glob.endsWith("/")) {
+            glob = glob.substring(0, glob.length() - 1);
+        }
+        try {
+            return List.of(
+                FileSystems.getDefault().getPathMatcher("glob:" + glob),
+                FileSystems.getDefault().getPathMatcher("glob:" + glob
+                                                        + "/**"));
+        } catch (PatternSyntaxException excp) {
+            return null;
+        }
+    }
+
+    /** The patterns file. */
+    private final File _file;
+    /** The patterns, as given. */
+    private final List<String> _patterns;
+    /** Matchers compiled from _patterns. */
+    private final List<PathMatcher> _matchers;
+    /** True once the patterns file has been read. */
+    private boolean _loaded;
+}
@@ -5,8 +5,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 
 public class StagingArea implements Serializable {
-    /** HashMap of added files. */
-    private final HashMap<String, byte[]> added;
+    /** HashMap of added files to their blob sha1s. */
+    private final HashMap<String, String> added;
     /** ArrayList<> of removed files. */
     private final ArrayList<String> removed;
 
@@ -19,7 +19,7 @@ public class StagingArea implements Serializable {
      * gets added.
      * @return added
      */
-    public HashMap<String, byte[]> getAdded() {
+    public HashMap<String, String> getAdded() {
         return added;
     }
 
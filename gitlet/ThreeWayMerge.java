@@ -0,0 +1,139 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/** A diff3-style merge of two versions of a file against the version
+ *  they were both derived from.  Changes that touch different lines of
+ *  the base are combined; only regions both sides changed differently
+ *  become conflicts, each bracketed by the usual markers.
+ *  @author Ethan Herrera
+ */
+class ThreeWayMerge {
+
+    /** Marker opening a conflict region. */
+    static final String OURS_MARKER = "<<<<<<< HEAD\n";
+    /** Marker separating the two sides of a conflict region. */
+    static final String SEPARATOR = "=======\n";
+    /** Marker closing a conflict region. */
+    static final String THEIRS_MARKER = ">>>>>>>\n";
+
+    /** A merge of OURS and THEIRS, both derived from BASE.  A null
+     *  version stands for an absent file. */
+    ThreeWayMerge(byte[] base, byte[] ours, byte[] theirs) {
+        _base = base == null ? new byte[0] : base;
+        _ours = ours;
+        _theirs = theirs;
+    }
+
+    /** Return true iff any version is binary, in which case no line
+     *  merge is attempted. */
+    boolean isBinary() {
+        return Diff.isBinary(_base)
+            || (_ours != null && Diff.isBinary(_ours))
+            || (_theirs != null && Diff.isBinary(_theirs));
+    }
+
+    /** Write the merged file to OUT, returning true iff it contains
+     *  conflicts.  Binary content is never line-merged: our version (or
+     *  theirs, if ours is absent) is written unchanged and reported as a
+     *  conflict. */
+    boolean write(OutputStream out) throws IOException {
+        if (isBinary()) {
+            out.write(_ours != null ? _ours : _theirs);
+            return true;
+        }
+        List<String> base = Diff.splitLines(_base);
+        List<String> ours = Diff.splitLines(orEmpty(_ours));
+        List<String> theirs = Diff.splitLines(orEmpty(_theirs));
+        int[] inOurs = matches(base, ours);
+        int[] inTheirs = matches(base, theirs);
+        boolean conflict = false;
+        int b = 0, o = 0, t = 0;
+        while (b < base.size() || o < ours.size() || t < theirs.size()) {
+            if (b < base.size() && inOurs[b] == o && inTheirs[b] == t) {
+                writeLines(out, base, b, b + 1);
+                b += 1;
+                o += 1;
+                t += 1;
+                continue;
+            }
+            int b1 = b;
+            while (b1 < base.size()
+                   && (inOurs[b1] < 0 || inTheirs[b1] < 0)) {
+                b1 += 1;
+            }
+            int o1 = b1 < base.size() ? inOurs[b1] : ours.size();
+            int t1 = b1 < base.size() ? inTheirs[b1] : theirs.size();
+            List<String> baseChunk = base.subList(b, b1);
+            List<String> ourChunk = ours.subList(o, o1);
+            List<String> theirChunk = theirs.subList(t, t1);
+            if (ourChunk.equals(baseChunk) || ourChunk.equals(theirChunk)) {
+                writeLines(out, theirs, t, t1);
+            } else if (theirChunk.equals(baseChunk)) {
+                writeLines(out, ours, o, o1);
+            } else {
+                conflict = true;
+                out.write(OURS_MARKER.getBytes(StandardCharsets.UTF_8));
+                writeTerminated(out, ours, o, o1);
+                out.write(SEPARATOR.getBytes(StandardCharsets.UTF_8));
+                writeTerminated(out, theirs, t, t1);
+                out.write(THEIRS_MARKER.getBytes(StandardCharsets.UTF_8));
+            }
+            b = b1;
+            o = o1;
+            t = t1;
+        }
+        return conflict;
+    }
+
+    /** Return an array giving, for each line of BASE, the index of the
+     *  line of OTHER it is matched with, or -1 if it has none. */
+    private static int[] matches(List<String> base, List<String> other) {
+        Diff diff = new Diff();
+        diff.setAlgorithm(Diff.Algorithm.HISTOGRAM);
+        diff.setSequences(base, other);
+        int[] result = new int[base.size()];
+        Arrays.fill(result, -1);
+        int[] common = diff.commonSubsequence();
+        for (int k = 0; k < common.length; k += 3) {
+            for (int i = 0; i < common[k + 2]; i += 1) {
+                result[common[k] + i] = common[k + 1] + i;
+            }
+        }
+        return result;
+    }
+
+    /** Write lines [FROM .. TO) of LINES to OUT. */
+    private static void writeLines(OutputStream out, List<String> lines,
+                                   int from, int to) throws IOException {
+        for (int i = from; i < to; i += 1) {
+            out.write(lines.get(i).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Write lines [FROM .. TO) of LINES to OUT, ending with a newline
+     *  even if the last of them lacks one. */
+    private static void writeTerminated(OutputStream out, List<String> lines,
+                                        int from, int to) throws IOException {
+        writeLines(out, lines, from, to);
+        if (to > from && !lines.get(to - 1).endsWith("\n")) {
+            out.write('\n');
+        }
+    }
+
+    /** Return CONTENTS, or an empty array if it is null. */
+    private static byte[] orEmpty(byte[] contents) {
+        return contents == null ? new byte[0] : contents;
+    }
+
+    /** The common ancestor version. */
+    private final byte[] _base;
+    /** Our version, or null if absent. */
+    private final byte[] _ours;
+    /** Their version, or null if absent. */
+    private final byte[] _theirs;
+}
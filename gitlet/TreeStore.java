@@ -0,0 +1,317 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The directory trees of a repository.  A tree lists the entries of one
+ *  directory, each a blob or a subtree, as lines "blob SHA1 NAME" or
+ *  "tree SHA1 NAME" in name order, and is named by the sha1 of that
+ *  text.  A commit names its root tree, so a tree's name stands for
+ *  everything beneath it: commits share every subtree they did not
+ *  change, and two trees with the same name need not be looked into.
+ *  Comparisons, updates and transfers descend only where names differ,
+ *  so they cost in proportion to what changed.  Paths are relative to
+ *  the root, with components separated by "/".
+ *  @author Ethan Herrera
+ */
+class TreeStore {
+
+    /** Name of the empty tree. */
+    static final String EMPTY = Utils.sha1("");
+
+    /** One entry of a tree. */
+    static final class Entry {
+        /** An entry for the object with sha1 ID, a tree iff TREE. */
+        Entry(boolean tree, String id) {
+            _tree = tree;
+            _id = id;
+        }
+
+        /** Return true iff this entry is a subtree. */
+        boolean isTree() {
+            return _tree;
+        }
+
+        /** Return the sha1 of the blob or subtree. */
+        String id() {
+            return _id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry && ((Entry) obj)._tree == _tree
+                && ((Entry) obj)._id.equals(_id);
+        }
+
+        @Override
+        public int hashCode() {
+            return _id.hashCode();
+        }
+
+        /** True iff a subtree. */
+        private final boolean _tree;
+        /** Sha1 of the blob or subtree. */
+        private final String _id;
+    }
+
+    /** The trees of the repository whose .gitlet directory is DIR. */
+    TreeStore(File dir) {
+        _trees = new ObjectDirectory(Utils.join(dir, "trees"));
+    }
+
+    /** Return the directory of trees. */
+    ObjectDirectory dir() {
+        return _trees;
+    }
+
+    /** Return true iff the tree with sha1 ID is present. */
+    boolean contains(String id) {
+        return id.equals(EMPTY) || _trees.contains(id);
+    }
+
+    /** Return the entries of the tree ID, by name. */
+    TreeMap<String, Entry> read(String id) {
+        TreeMap<String, Entry> result = _cache.get(id);
+        if (result != null) {
+            return result;
+        }
+        result = id.equals(EMPTY) ? new TreeMap<>()
+            : parse(Utils.readContents(_trees.file(id)));
+        _cache.put(id, result);
+        return result;
+    }
+
+    /** Return the sha1 of the tree holding the files FILES, mapping paths
+     *  to blob sha1s, storing it and any of its subtrees not already
+     *  present. */
+    String write(Map<String, String> files) {
+        return update(EMPTY, files);
+    }
+
+    /** Return the sha1 of the tree that is TREE with the changes CHANGES
+     *  made, storing the new trees.  CHANGES maps paths to their new blob
+     *  sha1s, or to null for paths to be removed.  Only the directories
+     *  on changed paths are rewritten; directories left empty are
+     *  dropped.  Every component of a path must satisfy isName. */
+    String update(String tree, Map<String, String> changes) {
+        return update(tree, changes, null);
+    }
+
+    /** As for update(TREE, CHANGES), but with the new trees written by
+     *  WRITES, in the background, or at once if WRITES is null.  They are
+     *  cached here, so they may be read before WRITES is published. */
+    String update(String tree, Map<String, String> changes,
+                  WritePipeline writes) {
+        HashMap<String, HashMap<String, String>> byDir = new HashMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            String name = slash < 0 ? path : path.substring(0, slash);
+            String rest = slash < 0 ? null : path.substring(slash + 1);
+            if (!isName(name)) {
+                throw Utils.error("Invalid file name.");
+            }
+            byDir.computeIfAbsent(name, k -> new HashMap<>())
+                .put(rest, change.getValue());
+        }
+        TreeMap<String, Entry> entries = new TreeMap<>(read(tree));
+        for (Map.Entry<String, HashMap<String, String>> dir
+                 : byDir.entrySet()) {
+            String name = dir.getKey();
+            HashMap<String, String> below = dir.getValue();
+            if (below.containsKey(null)) {
+                String blob = below.remove(null);
+                if (blob == null) {
+                    entries.remove(name);
+                } else {
+                    entries.put(name, new Entry(false, blob));
+                }
+            }
+            if (below.isEmpty()) {
+                continue;
+            }
+            Entry old = entries.get(name);
+            String subtree = update(old != null && old.isTree() ? old.id()
+                                    : EMPTY, below, writes);
+            if (subtree.equals(EMPTY)) {
+                entries.remove(name);
+            } else {
+                entries.put(name, new Entry(true, subtree));
+            }
+        }
+        return store(entries, writes);
+    }
+
+    /** Return the sha1 of the blob at PATH in TREE, or null if there is
+     *  none.  Only the directories on PATH are read. */
+    String lookup(String tree, String path) {
+        String[] names = path.split("/");
+        String id = tree;
+        for (int i = 0; i < names.length; i += 1) {
+            Entry entry = read(id).get(names[i]);
+            if (entry == null || entry.isTree() != (i < names.length - 1)) {
+                return null;
+            }
+            id = entry.id();
+        }
+        return id;
+    }
+
+    /** Return every file in TREE, mapping paths to blob sha1s. */
+    HashMap<String, String> files(String tree) {
+        HashMap<String, String> result = new HashMap<>();
+        addFiles(tree, "", result);
+        return result;
+    }
+
+    /** Return the paths whose blobs differ between trees BEFORE and AFTER,
+     *  each mapped to its blob sha1s in BEFORE and AFTER, null where
+     *  absent.  Subtrees with the same sha1 are skipped unread. */
+    TreeMap<String, String[]> diff(String before, String after) {
+        TreeMap<String, String[]> result = new TreeMap<>();
+        diff(before, after, "", result);
+        return result;
+    }
+
+    /** Add to TREES the ids of TREE and its subtrees, and to BLOBS those
+     *  of the blobs beneath them.  Trees already in TREES are not entered
+     *  again, so walking the trees of many commits reads each distinct
+     *  tree once. */
+    void walk(String tree, Set<ObjectId> trees,
+              Collection<ObjectId> blobs) {
+        if (!trees.add(ObjectId.fromHex(tree))) {
+            return;
+        }
+        for (Entry entry : read(tree).values()) {
+            if (entry.isTree()) {
+                walk(entry.id(), trees, blobs);
+            } else {
+                blobs.add(ObjectId.fromHex(entry.id()));
+            }
+        }
+    }
+
+    /** Return the text of a tree with ENTRIES. */
+    static byte[] format(Map<String, Entry> entries) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            text.append(entry.getValue().isTree() ? "tree " : "blob ")
+                .append(entry.getValue().id()).append(" ")
+                .append(entry.getKey()).append("\n");
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Return true iff NAME may name an entry of a tree: it is not empty,
+     *  "." or "..", and has no "/", so that every path a tree holds stays
+     *  inside the working directory, and no control character, so that
+     *  it cannot break the line that lists it. */
+    static boolean isName(String name) {
+        if (name.isEmpty() || name.equals(".") || name.equals("..")
+            || name.indexOf('/') >= 0) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i += 1) {
+            if (name.charAt(i) < ' ' || name.charAt(i) == 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the entries of the tree whose text is CONTENTS, which must
+     *  name them as isName requires. */
+    static TreeMap<String, Entry> parse(byte[] contents) {
+        TreeMap<String, Entry> result = new TreeMap<>();
+        String text = new String(contents, StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int space = line.indexOf(' ', 5);
+            if (space != 5 + Utils.UID_LENGTH
+                || !(line.startsWith("tree ") || line.startsWith("blob "))
+                || !isName(line.substring(space + 1))) {
+                throw Utils.error("Corrupt tree.");
+            }
+            result.put(line.substring(space + 1),
+                       new Entry(line.startsWith("tree "),
+                                 line.substring(5, space)));
+        }
+        return result;
+    }
+
+    /** Store the tree with ENTRIES if it is not present, by WRITES
+     *  unless it is null, returning its sha1. */
+    private String store(TreeMap<String, Entry> entries,
+                         WritePipeline writes) {
+        byte[] text = format(entries);
+        String id = Utils.sha1(text);
+        if (writes != null && !_cache.containsKey(id) && !contains(id)) {
+            writes.write(_trees, id, text);
+        } else if (writes == null && !contains(id)) {
+            File temp = _trees.createTemp();
+            Utils.writeContents(temp, text);
+            _trees.install(temp, id);
+        }
+        _cache.put(id, entries);
+        return id;
+    }
+
+    /** Add the files in TREE, whose path is PREFIX, to RESULT. */
+    private void addFiles(String tree, String prefix,
+                          Map<String, String> result) {
+        for (Map.Entry<String, Entry> entry : read(tree).entrySet()) {
+            String path = prefix + entry.getKey();
+            if (entry.getValue().isTree()) {
+                addFiles(entry.getValue().id(), path + "/", result);
+            } else {
+                result.put(path, entry.getValue().id());
+            }
+        }
+    }
+
+    /** Add to RESULT the differences between trees BEFORE and AFTER,
+     *  either of which may be null, whose path is PREFIX. */
+    private void diff(String before, String after, String prefix,
+                      Map<String, String[]> result) {
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        TreeMap<String, Entry> a = before == null ? new TreeMap<>()
+            : read(before);
+        TreeMap<String, Entry> b = after == null ? new TreeMap<>()
+            : read(after);
+        TreeMap<String, Entry> names = new TreeMap<>(a);
+        names.putAll(b);
+        for (String name : names.keySet()) {
+            Entry x = a.get(name), y = b.get(name);
+            if (Objects.equals(x, y)) {
+                continue;
+            }
+            String path = prefix + name;
+            diff(x != null && x.isTree() ? x.id() : null,
+                 y != null && y.isTree() ? y.id() : null, path + "/",
+                 result);
+            String xBlob = x != null && !x.isTree() ? x.id() : null;
+            String yBlob = y != null && !y.isTree() ? y.id() : null;
+            if (!Objects.equals(xBlob, yBlob)) {
+                result.put(path, new String[] { xBlob, yBlob });
+            }
+        }
+    }
+
+    /** Stored trees. */
+    private final ObjectDirectory _trees;
+    /** Trees read or written, by sha1.  Trees never change, so entries
+     *  never go stale. */
+    private final ConcurrentHashMap<String, TreeMap<String, Entry>> _cache =
+        new ConcurrentHashMap<>();
+}
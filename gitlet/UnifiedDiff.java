@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.List;
+
+/** Writes the differences between two versions of a file in the unified
+ *  format, one file at a time, as soon as each has been compared.
+ *  @author Ethan Herrera
+ */
+class UnifiedDiff {
+
+    /** Lines of unchanged context shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** A printer writing to OUT, matching lines with ALGORITHM. */
+    UnifiedDiff(PrintStream out, Diff.Algorithm algorithm) {
+        _out = out;
+        _diff = new Diff();
+        _diff.setAlgorithm(algorithm);
+    }
+
+    /** Print the differences between BEFORE and AFTER, two versions of
+     *  the file PATH.  A null version denotes an absent file. */
+    void print(String path, byte[] before, byte[] after) {
+        String name1 = before == null ? "/dev/null" : "a/" + path;
+        String name2 = after == null ? "/dev/null" : "b/" + path;
+        _out.println("diff --git a/" + path + " b/" + path);
+        if (before == null) {
+            _out.println("new file");
+        } else if (after == null) {
+            _out.println("deleted file");
+        }
+        byte[] contents1 = before == null ? new byte[0] : before;
+        byte[] contents2 = after == null ? new byte[0] : after;
+        if (Diff.isBinary(contents1) || Diff.isBinary(contents2)) {
+            _out.println("Binary files " + name1 + " and " + name2
+                         + " differ");
+            return;
+        }
+        _out.println("--- " + name1);
+        _out.println("+++ " + name2);
+        List<String> lines1 = Diff.splitLines(contents1);
+        List<String> lines2 = Diff.splitLines(contents2);
+        _diff.setSequences(lines1, lines2);
+        int[] edits = _diff.diffs();
+        int first = 0;
+        while (first < edits.length) {
+            int last = first;
+            while (last + 4 < edits.length
+                   && edits[last + 4] - (edits[last] + edits[last + 1])
+                      <= 2 * CONTEXT) {
+                last += 4;
+            }
+            printHunk(lines1, lines2, edits, first, last);
+            first = last + 4;
+        }
+        _out.flush();
+    }
+
+    /** Print the hunk covering EDITS[FIRST .. LAST + 3] (as delivered by
+     *  Diff.diffs) between LINES1 and LINES2, with context. */
+    private void printHunk(List<String> lines1, List<String> lines2,
+                           int[] edits, int first, int last) {
+        int start1 = Math.max(0, edits[first] - CONTEXT);
+        int start2 = edits[first + 2] - (edits[first] - start1);
+        int end1 = Math.min(lines1.size(),
+                            edits[last] + edits[last + 1] + CONTEXT);
+        int end2 = edits[last + 2] + edits[last + 3]
+            + (end1 - edits[last] - edits[last + 1]);
+        _out.println("@@ -" + range(start1, end1 - start1)
+                     + " +" + range(start2, end2 - start2) + " @@");
+        int i1 = start1;
+        for (int k = first; k <= last; k += 4) {
+            for (; i1 < edits[k]; i1 += 1) {
+                printLine(' ', lines1.get(i1));
+            }
+            for (int i = 0; i < edits[k + 1]; i += 1) {
+                printLine('-', lines1.get(edits[k] + i));
+            }
+            for (int i = 0; i < edits[k + 3]; i += 1) {
+                printLine('+', lines2.get(edits[k + 2] + i));
+            }
+            i1 = edits[k] + edits[k + 1];
+        }
+        for (; i1 < end1; i1 += 1) {
+            printLine(' ', lines1.get(i1));
+        }
+    }
+
+    /** Return the hunk-header notation for the LEN lines starting at
+     *  0-based line START. */
+    private static String range(int start, int len) {
+        if (len == 1) {
+            return Integer.toString(start + 1);
+        } else if (len == 0) {
+            return start + ",0";
+        }
+        return (start + 1) + "," + len;
+    }
+
+    /** Print LINE with the marker character KIND in front of it. */
+    private void printLine(char kind, String line) {
+        _out.print(kind);
+        _out.print(line);
+        if (!line.endsWith("\n")) {
+            _out.println();
+            _out.println("\\ No newline at end of file");
+        }
+    }
+
+    /** Destination of the output. */
+    private final PrintStream _out;
+    /** Line comparison used for each file. */
+    private final Diff _diff;
+}
@@ -4,6 +4,24 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author
  */
@@ -20,6 +38,769 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
-}
+    /** Return the result of applying the edits EDITS (as from
+     *  Diff.diffs) that convert A into B. */
+    private static List<String> applyEdits(List<String> a, List<String> b,
+                                           int[] edits) {
+        ArrayList<String> result = new ArrayList<>();
+        int i = 0;
+        for (int k = 0; k < edits.length; k += 4) {
+            result.addAll(a.subList(i, edits[k]));
+            result.addAll(b.subList(edits[k + 2],
+                                    edits[k + 2] + edits[k + 3]));
+            i = edits[k] + edits[k + 1];
+        }
+        result.addAll(a.subList(i, a.size()));
+        return result;
+    }
+
+    @Test
+    public void histogramDiffSkipsLongCommonRuns() {
+        int n = 32000;
+        ArrayList<String> a = new ArrayList<>(), b = new ArrayList<>();
+        for (int i = 0; i < n; i += 1) {
+            String line = i % 7 == 0 ? "}" : "line " + i;
+            a.add(line);
+            b.add(line);
+        }
+        a.set(0, "first");
+        b.set(n - 1, "last");
+        for (int k = 1; k < 10; k += 1) {
+            b.set(k * n / 10, "changed " + k);
+        }
+        long start = System.currentTimeMillis();
+        int[] common = new HistogramDiff(a, b).commonSubsequence();
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        int matched = 0;
+        for (int k = 2; k < common.length; k += 3) {
+            matched += common[k];
+        }
+        assertEquals(n - 11, matched);
+    }
+
+    @Test
+    public void diffAlgorithmsProduceValidEdits() {
+        Random rand = new Random(61);
+        Diff diff = new Diff();
+        for (int trial = 0; trial < 200; trial += 1) {
+            ArrayList<String> a = new ArrayList<>();
+            ArrayList<String> b = new ArrayList<>();
+            for (int i = rand.nextInt(30); i > 0; i -= 1) {
+                a.add("line" + rand.nextInt(8));
+            }
+            for (int i = rand.nextInt(30); i > 0; i -= 1) {
+                b.add("line" + rand.nextInt(8));
+            }
+            for (Diff.Algorithm alg : Diff.Algorithm.values()) {
+                diff.setAlgorithm(alg);
+                diff.setSequences(a, b);
+                assertEquals(alg.toString(), b,
+                             applyEdits(a, b, diff.diffs()));
+            }
+        }
+    }
+
+    @Test
+    public void histogramAlignsOnRareLines() {
+        List<String> a = Arrays.asList("f() {", "  x;", "}", "",
+                                       "g() {", "  y;", "}");
+        List<String> b = Arrays.asList("f() {", "  x;", "}", "",
+                                       "h() {", "  z;", "}", "",
+                                       "g() {", "  y;", "}");
+        Diff diff = new Diff();
+        diff.setSequences(a, b);
+        for (Diff.Algorithm alg : new Diff.Algorithm[] {
+                Diff.Algorithm.PATIENCE, Diff.Algorithm.HISTOGRAM }) {
+            diff.setAlgorithm(alg);
+            assertArrayEquals(new int[] {4, 0, 4, 4}, diff.diffs());
+        }
+    }
 
+    @Test
+    public void splitLinesKeepsTerminators() {
+        assertEquals(Arrays.asList("a\n", "\n", "b"),
+                     Diff.splitLines("a\n\nb".getBytes()));
+        assertTrue(Diff.isBinary(new byte[] {'a', 0, 'b'}));
+        assertFalse(Diff.isBinary("text\n".getBytes()));
+    }
+
+    /** Return the result of merging OURS and THEIRS against BASE, with
+     *  "!" appended if the merge reported a conflict. */
+    private static String merge3(String base, String ours, String theirs)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        boolean conflict = new ThreeWayMerge(base.getBytes(),
+            ours == null ? null : ours.getBytes(),
+            theirs == null ? null : theirs.getBytes()).write(out);
+        return out.toString() + (conflict ? "!" : "");
+    }
+
+    @Test
+    public void threeWayMergeCombinesDistantChanges() throws IOException {
+        String base = "a\nb\nc\nd\ne\n";
+        assertEquals("A\nb\nc\nd\nE\n",
+                     merge3(base, "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\n"));
+        assertEquals("a\nc\nd\ne\nf\n",
+                     merge3(base, "a\nc\nd\ne\n", "a\nb\nc\nd\ne\nf\n"));
+        assertEquals("A\nb\nc\nd\ne\n",
+                     merge3(base, "A\nb\nc\nd\ne\n", "A\nb\nc\nd\ne\n"));
+    }
+
+    @Test
+    public void threeWayMergeConflictsAreMinimal() throws IOException {
+        String base = "a\nb\nc\nd\ne\n";
+        assertEquals("a\n<<<<<<< HEAD\nX\n=======\nY\n>>>>>>>\nc\nd\nE\n!",
+                     merge3(base, "a\nX\nc\nd\ne\n", "a\nY\nc\nd\nE\n"));
+        assertEquals("<<<<<<< HEAD\nAnother wug.\n=======\n>>>>>>>\n!",
+                     merge3("This is a wug.\n", "Another wug.\n", null));
+    }
 
+    @Test
+    public void threeWayMergeLeavesBinaryAlone() throws IOException {
+        assertEquals("o\0urs!", merge3("base", "o\0urs", "theirs"));
+    }
+
+    @Test
+    public void mergePlanDecidesFromBlobIds() {
+        assertEquals(MergePlan.Kind.KEEP, MergePlan.decide("s", "h", "s"));
+        assertEquals(MergePlan.Kind.KEEP, MergePlan.decide("s", "x", "x"));
+        assertEquals(MergePlan.Kind.TAKE, MergePlan.decide("s", "s", "o"));
+        assertEquals(MergePlan.Kind.TAKE, MergePlan.decide(null, null, "o"));
+        assertEquals(MergePlan.Kind.REMOVE, MergePlan.decide("s", "s", null));
+        assertEquals(MergePlan.Kind.MERGE, MergePlan.decide("s", "h", "o"));
+        assertEquals(MergePlan.Kind.MERGE, MergePlan.decide("s", null, "o"));
+    }
+
+    @Test
+    public void mergePlanCoversEveryFile() {
+        HashMap<String, String> head = new HashMap<>();
+        HashMap<String, String> other = new HashMap<>();
+        HashMap<String, String> split = new HashMap<>();
+        for (int i = 0; i < 5000; i += 1) {
+            split.put("f" + i, "s");
+            head.put("f" + i, i % 2 == 0 ? "h" : "s");
+            other.put("f" + i, i % 3 == 0 ? "o" : "s");
+        }
+        other.put("new", "n");
+        MergePlan plan = new MergePlan(head, other, split);
+        assertEquals(5001, plan.entries().size());
+        int merges = 0;
+        for (MergePlan.Entry entry : plan.entries()) {
+            if (entry.kind() == MergePlan.Kind.MERGE) {
+                merges += 1;
+            }
+        }
+        assertEquals(834, merges);
+    }
+
+    @Test
+    public void changedPathFiltersHaveNoFalseNegatives() {
+        ArrayList<String> paths = new ArrayList<>();
+        for (int i = 0; i < 100; i += 1) {
+            paths.add("dir/file" + i + ".txt");
+        }
+        ChangedPathIndex.Entry entry = new ChangedPathIndex.Entry(null, null,
+            ChangedPathIndex.filterOf(paths));
+        for (String path : paths) {
+            assertTrue(entry.mightHaveChanged(path));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i += 1) {
+            if (entry.mightHaveChanged("other" + i + ".txt")) {
+                falsePositives += 1;
+            }
+        }
+        assertTrue(falsePositives < 50);
+        assertTrue(new ChangedPathIndex.Entry(null, null, null)
+                   .mightHaveChanged("anything"));
+    }
+
+    @Test
+    public void changedPathIndexSurvivesTornRecords() throws IOException {
+        File file = Utils.join(Files.createTempDirectory("index").toFile(),
+                               "commit-graph");
+        ChangedPathIndex index = new ChangedPathIndex(file);
+        Commit first = new Commit(null, "first", TreeStore.EMPTY, "master");
+        Commit second = new Commit(first.getHash(), "second",
+                                   TreeStore.EMPTY, "master");
+        index.add(first, List.of("a.txt"));
+        long whole = file.length();
+        index.add(second, List.of("b.txt"));
+        byte[] data = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(data, data.length - 3));
+        assertEquals(Collections.singleton(first.getHash()),
+                     index.load().keySet());
+        data[(int) whole + 6] ^= 1;
+        Files.write(file.toPath(), data);
+        assertEquals(Collections.singleton(first.getHash()),
+                     index.load().keySet());
+        index.add(second, List.of("b.txt"));
+        assertEquals(data.length, file.length());
+        HashMap<String, ChangedPathIndex.Entry> entries = index.load();
+        assertEquals(2, entries.size());
+        assertEquals(first.getHash(), entries.get(second.getHash()).parent());
+        assertTrue(entries.get(second.getHash()).mightHaveChanged("b.txt"));
+    }
+
+    /** Return the sha1s of the chunks Chunker cuts DATA into. */
+    private static List<String> chunkHashes(byte[] data) throws IOException {
+        ArrayList<String> result = new ArrayList<>();
+        Chunker chunker = new Chunker(new ByteArrayInputStream(data));
+        int total = 0;
+        for (int n = chunker.next(); n >= 0; n = chunker.next()) {
+            assertTrue(n <= Chunker.MAX_SIZE);
+            assertTrue(n >= Chunker.MIN_SIZE || total + n == data.length);
+            total += n;
+            result.add(Utils.sha1(Arrays.copyOfRange(chunker.buffer(),
+                chunker.start(), chunker.start() + n)));
+        }
+        assertEquals(data.length, total);
+        return result;
+    }
+
+    @Test
+    public void chunkBoundariesFollowContent() throws IOException {
+        byte[] data = new byte[3 << 20];
+        new Random(7).nextBytes(data);
+        List<String> before = chunkHashes(data);
+        ByteArrayOutputStream edited = new ByteArrayOutputStream();
+        edited.write(data, 0, 1000);
+        edited.write(new byte[100], 0, 100);
+        edited.write(data, 1000, data.length - 1000);
+        List<String> after = chunkHashes(edited.toByteArray());
+        HashSet<String> shared = new HashSet<>(before);
+        shared.retainAll(after);
+        assertTrue(before.size() > 10);
+        assertTrue(shared.size() >= before.size() - 2);
+    }
+
+    @Test
+    public void blobStoreSharesChunksBetweenVersions() throws IOException {
+        File dir = Files.createTempDirectory("blobs").toFile();
+        BlobStore store = new BlobStore(dir);
+        byte[] data = new byte[2 << 20];
+        new Random(11).nextBytes(data);
+        String hash = store.store(new ByteArrayInputStream(data),
+                                  data.length);
+        assertEquals(Utils.sha1(data), hash);
+        assertArrayEquals(data, store.read(hash));
+        assertEquals(data.length, store.size(hash));
+        int chunks = store.chunksOf(hash).size();
+        data[data.length / 2] ^= 1;
+        String edited = store.store(new ByteArrayInputStream(data),
+                                    data.length);
+        assertArrayEquals(data, store.read(edited));
+        HashSet<String> all = new HashSet<>();
+        store.chunks().forEach(all::add);
+        assertTrue(all.size() <= chunks + 2);
+        String small = store.store(new ByteArrayInputStream(new byte[10]),
+                                   10);
+        assertTrue(store.whole().contains(small));
+        assertTrue(store.chunksOf(small).isEmpty());
+
+        long old = System.currentTimeMillis() - 30L * 24 * 60 * 60 * 1000;
+        ArrayList<File> files = new ArrayList<>(List.of(
+            store.whole().file(small)));
+        for (String chunk : store.chunksOf(edited)) {
+            files.add(store.chunks().file(chunk));
+        }
+        for (File file : files) {
+            assertTrue(file.setLastModified(old));
+        }
+        store.store(new ByteArrayInputStream(new byte[10]), 10);
+        File temp = store.createTemp();
+        Utils.writeContents(temp, (Object) data);
+        store.install(temp, edited);
+        for (File file : files) {
+            assertTrue(file.lastModified() > old + 1000);
+        }
+    }
+
+    @Test
+    public void treesShareUnchangedSubtrees() throws IOException {
+        TreeStore trees = new TreeStore(
+            Files.createTempDirectory("trees").toFile());
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < 50; i += 1) {
+            files.put("d" + (i % 5) + "/e" + (i % 3) + "/f" + i,
+                      Utils.sha1("blob" + i));
+        }
+        String tree = trees.write(files);
+        assertEquals(files, trees.files(tree));
+        assertEquals(tree, trees.write(new HashMap<>(files)));
+        HashMap<String, String> change = new HashMap<>();
+        change.put("d1/e0/f6", Utils.sha1("new"));
+        change.put("d2/e2/f2", null);
+        change.put("top", Utils.sha1("top"));
+        String after = trees.update(tree, change);
+        assertEquals(trees.read(tree).get("d0"), trees.read(after).get("d0"));
+        TreeMap<String, String[]> diff = trees.diff(tree, after);
+        assertEquals(change.keySet(), diff.keySet());
+        assertArrayEquals(new String[] { files.get("d1/e0/f6"),
+                                         Utils.sha1("new") },
+                          diff.get("d1/e0/f6"));
+        assertEquals(null, trees.lookup(after, "d2/e2/f2"));
+        assertEquals(Utils.sha1("top"), trees.lookup(after, "top"));
+        HashMap<String, String> removeAll = new HashMap<>();
+        for (String path : trees.files(after).keySet()) {
+            removeAll.put(path, null);
+        }
+        assertEquals(TreeStore.EMPTY, trees.update(after, removeAll));
+        for (String name
+                 : new String[] { "", ".", "..", "a/b", "a\tb", "a\rb",
+                                  "a\u007fb" }) {
+            try {
+                TreeStore.parse(("blob " + Utils.sha1("x") + " " + name)
+                                .getBytes(StandardCharsets.UTF_8));
+                assertTrue(false);
+            } catch (GitletException excp) {
+                assertEquals("Corrupt tree.", excp.getMessage());
+            }
+        }
+        assertEquals("a", Repo.workingPath("./a//"));
+        assertEquals(null, Repo.workingPath("a/../../b"));
+        assertEquals(null, Repo.workingPath("a\nb"));
+        try {
+            trees.update(after, Collections.singletonMap("d/a\nb",
+                                                         Utils.sha1("x")));
+            assertTrue(false);
+        } catch (GitletException excp) {
+            assertEquals("Invalid file name.", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void commitHashCoversHeaderOnly() {
+        Commit first = new Commit(null, "initial commit", TreeStore.EMPTY,
+                                  "master");
+        assertEquals(first.getHash(), new Commit(null, "initial commit",
+            TreeStore.EMPTY, "master").getHash());
+        assertTrue(first.isIntact());
+        String p = Utils.sha1("p");
+        MergeCommit one = new MergeCommit(p, Utils.sha1("a"), "m",
+                                          TreeStore.EMPTY, "master");
+        MergeCommit two = new MergeCommit(p, Utils.sha1("b"), "m",
+                                          TreeStore.EMPTY, "master");
+        assertTrue(one.isIntact() && two.isIntact());
+        assertTrue(!one.getHash().equals(two.getHash()));
+    }
+
+    @Test
+    public void ewahRoundTripsAndCompressesRuns() throws IOException {
+        BitSet bits = new BitSet();
+        bits.set(3);
+        bits.set(64 * 10, 64 * 5000);
+        bits.set(64 * 5000 + 17);
+        bits.set(64 * 9000, 64 * 9000 + 5);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            Ewah.write(out, bits);
+            Ewah.write(out, new BitSet());
+        }
+        assertTrue(bytes.size() < 100);
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(bits, Ewah.read(in));
+        assertEquals(new BitSet(), Ewah.read(in));
+    }
+
+    @Test
+    public void monitoredListingTracksChanges() throws Exception {
+        File work = Files.createTempDirectory("work").toFile();
+        File state = Utils.join(work, ".gitlet", "monitor");
+        Utils.writeContents(Utils.join(work, "a.txt"), "a");
+        WorkingFiles files = new WorkingFiles(work, state);
+        assertEquals(List.of("a.txt"), files.list());
+        Thread monitor = new Thread(() -> {
+            try {
+                new FileMonitor(work, state).run();
+            } catch (IOException excp) {
+                throw new AssertionError(excp);
+            }
+        });
+        monitor.start();
+        while (!FileMonitor.portFile(state).isFile()) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("a.txt"), files.list());
+        Utils.writeContents(Utils.join(work, "b.txt"), "b");
+        assertEquals(List.of("a.txt", "b.txt"), files.list());
+        Utils.join(work, "a.txt").delete();
+        assertEquals(List.of("b.txt"), files.list());
+        Utils.join(work, "sub").mkdir();
+        Utils.writeContents(Utils.join(work, "sub", "d.txt"), "d");
+        assertEquals(List.of("b.txt", "sub/d.txt"), files.list());
+        Utils.writeContents(Utils.join(work, "sub", "e.txt"), "e");
+        assertEquals(List.of("b.txt", "sub/d.txt", "sub/e.txt"),
+                     files.list());
+        Utils.writeContents(Utils.join(work, IgnoreRules.FILE_NAME), "sub/");
+        assertEquals(List.of(".gitletignore", "b.txt"), files.list());
+        Utils.writeContents(Utils.join(work, "sub", "f.txt"), "f");
+        Utils.writeContents(Utils.join(work, "g.log"), "g");
+        assertEquals(List.of(".gitletignore", "b.txt", "g.log"),
+                     files.list());
+        Utils.writeContents(Utils.join(work, IgnoreRules.FILE_NAME), "*.log");
+        assertEquals(List.of(".gitletignore", "b.txt", "sub/d.txt",
+                             "sub/e.txt", "sub/f.txt"), files.list());
+        assertTrue(FileMonitor.stop(state));
+        monitor.join();
+        Utils.writeContents(Utils.join(work, "c.txt"), "c");
+        assertEquals(List.of(".gitletignore", "b.txt", "c.txt", "sub/d.txt",
+                             "sub/e.txt", "sub/f.txt"), files.list());
+    }
+
+    /** Start gitlet with arguments ARGS in DIR, in a process of its
+     *  own. */
+    private static Process gitlet(File dir, String... args)
+        throws IOException {
+        ArrayList<String> command = new ArrayList<>(List.of(
+            Utils.join(System.getProperty("java.home"), "bin", "java")
+                .getPath(),
+            "-cp", System.getProperty("java.class.path"), "gitlet.Main"));
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command).directory(dir)
+            .redirectErrorStream(true).start();
+    }
+
+    /** Return the output of gitlet process PROCESS, once it exits. */
+    private static String output(Process process) throws Exception {
+        String result = new String(process.getInputStream().readAllBytes());
+        process.waitFor();
+        return result;
+    }
+
+    @Test
+    public void concurrentCommitsAreSerialized() throws Exception {
+        File dir = Files.createTempDirectory("repo").toFile();
+        output(gitlet(dir, "init"));
+        Utils.writeContents(Utils.join(dir, "f.txt"), "f");
+        output(gitlet(dir, "add", "f.txt"));
+        ArrayList<Process> commits = new ArrayList<>();
+        for (int i = 0; i < 4; i += 1) {
+            commits.add(gitlet(dir, "commit", "commit " + i));
+        }
+        int refused = 0;
+        for (Process commit : commits) {
+            if (output(commit).contains("No changes added")) {
+                refused += 1;
+            }
+        }
+        assertEquals(3, refused);
+        String log = output(gitlet(dir, "log"));
+        assertEquals(3, log.split("===").length);
+    }
+
+    @Test
+    public void headLockBlocksReaders() throws Exception {
+        File dir = Files.createTempDirectory("repo").toFile();
+        output(gitlet(dir, "init"));
+        RepoLock lock = new RepoLock(Utils.join(dir, ".gitlet"));
+        lock.repository(true);
+        lock.head(false);
+        Process status = gitlet(dir, "status");
+        Process find = gitlet(dir, "find", "initial commit");
+        assertTrue(output(find).length() > 0);
+        assertTrue(status.isAlive());
+        lock.release();
+        assertTrue(output(status).contains("=== Branches ==="));
+    }
+
+    @Test
+    public void repositoryServesConcurrentReaders() throws Exception {
+        File dir = Files.createTempDirectory("repo").toFile();
+        output(gitlet(dir, "init"));
+        Utils.join(dir, "d").mkdir();
+        Utils.writeContents(Utils.join(dir, "d", "f.txt"), "one");
+        output(gitlet(dir, "add", "d/f.txt"));
+        output(gitlet(dir, "commit", "one"));
+        Utils.writeContents(Utils.join(dir, "d", "f.txt"), "two");
+        output(gitlet(dir, "add", "d/f.txt"));
+        output(gitlet(dir, "commit", "two"));
+        Repository repo = Repository.open(dir);
+        assertEquals(List.of("master"), repo.branches());
+        assertEquals(repo.head(), repo.resolve("master"));
+        ArrayList<Thread> readers = new ArrayList<>();
+        ArrayList<String> failures = new ArrayList<>();
+        for (int i = 0; i < 8; i += 1) {
+            readers.add(new Thread(() -> {
+                ArrayList<String> messages = new ArrayList<>();
+                for (Commit commit : repo.history("master")) {
+                    messages.add(commit.getMessage());
+                }
+                Commit head = repo.commit(repo.head().substring(0, 8));
+                String blob = repo.tree(head).subtree("d").entry("f.txt");
+                if (!messages.equals(List.of("two", "one", "initial commit"))
+                    || !blob.equals(repo.blob(head, "d/f.txt"))
+                    || !new String(repo.contents(blob)).equals("two")) {
+                    synchronized (failures) {
+                        failures.add(messages.toString());
+                    }
+                }
+            }));
+        }
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(new ArrayList<String>(), failures);
+        try {
+            repo.commit("nosuch");
+            assertTrue(false);
+        } catch (GitletException excp) {
+            assertEquals("No commit with that id exists.", excp.getMessage());
+        }
+        for (String id : List.of("x", "../../" + "0".repeat(34))) {
+            try {
+                repo.tree(id);
+                assertTrue(false);
+            } catch (GitletException excp) {
+                assertEquals("No tree " + id + ".", excp.getMessage());
+            }
+            try {
+                repo.size(id);
+                assertTrue(false);
+            } catch (GitletException excp) {
+                assertEquals("No blob " + id + ".", excp.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void objectIdsRoundTripAndKeyMaps() throws IOException {
+        ObjectIdIntMap map = new ObjectIdIntMap();
+        ObjectId.Pool pool = new ObjectId.Pool();
+        for (int i = 0; i < 1000; i += 1) {
+            String hex = Utils.sha1("object" + i);
+            ObjectId id = ObjectId.fromHex(hex);
+            assertEquals(hex, id.toHex());
+            assertArrayEquals(Utils.fromHex(hex), id.toBytes());
+            assertEquals(id, ObjectId.fromBytes(Utils.fromHex(hex), 0));
+            assertTrue(pool.intern(hex) == pool.intern(id));
+            map.put(id, i);
+        }
+        assertEquals(1000, map.size());
+        assertEquals(1000, pool.size());
+        for (int i = 0; i < 1000; i += 1) {
+            assertEquals(i, map.get(ObjectId.fromHex(
+                Utils.sha1("object" + i)), -1));
+        }
+        assertEquals(-1, map.get(ObjectId.fromHex(Utils.sha1("none")), -1));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectId id = ObjectId.fromHex(Utils.sha1("x"));
+        id.write(new DataOutputStream(bytes));
+        assertArrayEquals(id.toBytes(), bytes.toByteArray());
+        assertEquals(id, ObjectId.read(new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+    @Test
+    public void bundlesWithBadBranchNamesAreRefused() throws IOException {
+        File file = Files.createTempFile("bad", ".bundle").toFile();
+        for (String name : List.of("../../../pwned", "a//b", ".x")) {
+            Utils.writeContents(file, Bundle.SIGNATURE + "\n"
+                                + Utils.sha1("c") + " " + name + "\n\n");
+            try {
+                new Bundle(file).close();
+                assertTrue(false);
+            } catch (GitletException excp) {
+                assertEquals("Corrupt bundle: bad branch name.",
+                             excp.getMessage());
+            }
+        }
+        Utils.writeContents(file, Bundle.SIGNATURE + "\n"
+                            + Utils.sha1("c") + " R1/master\n\n");
+        try (Bundle bundle = new Bundle(file)) {
+            assertEquals(Utils.sha1("c"), bundle.refs().get("R1/master"));
+        }
+    }
+
+    @Test
+    public void packedRefsFindEveryBranch() throws IOException {
+        File dir = Files.createTempDirectory("refs").toFile();
+        Refs refs = new Refs(dir);
+        HashMap<String, String> heads = new HashMap<>();
+        for (int i = 0; i < 2000; i += 1) {
+            String name = (i % 3 == 0 ? "R/" : "pr-") + i;
+            heads.put(name, Utils.sha1(name));
+            refs.set(name, Utils.sha1(name));
+        }
+        assertEquals(2000, refs.pack());
+        assertEquals(0, Utils.join(dir, "branches").list().length);
+        for (String name : heads.keySet()) {
+            assertEquals(heads.get(name), refs.get(name));
+        }
+        assertEquals(null, refs.get("pr-2000"));
+        assertEquals(null, refs.get("R"));
+        refs.set("pr-1", Utils.sha1("moved"));
+        assertEquals(Utils.sha1("moved"), refs.get("pr-1"));
+        assertTrue(refs.delete("pr-1") && refs.delete("R/3"));
+        assertEquals(null, refs.get("pr-1"));
+        assertEquals(1998, refs.names().size());
+        assertTrue(!refs.delete("R/3"));
+        for (String bad : List.of("", "a\nb", "../x", "a//b", "/a", "a/",
+                                  ".a", "a/.b", "a.lock", "a b", "a.",
+                                  "a@{1", "@", "a..b", "a\tb")) {
+            assertTrue(!Refs.isValid(bad));
+            assertEquals(null, refs.get(bad));
+            try {
+                refs.set(bad, Utils.sha1("bad"));
+                assertTrue(false);
+            } catch (GitletException excp) {
+                assertTrue(excp.getMessage().startsWith("Invalid branch"));
+            }
+        }
+        assertTrue(Refs.isValid("R1/master") && Refs.isValid("feature-2.x"));
+    }
+
+    @Test
+    public void ignoreRulesPruneIgnoredPaths() throws IOException {
+        IgnoreRules rules = new IgnoreRules("1:1", new String[] {
+            "# comment", "", "*.log", "build/", "/doc/*.tmp", "cache",
+            "src/**/gen", "?.bak", "x[0-9].txt" });
+        assertTrue(rules.excludes("a.log") && rules.excludes("d/e.tar.log"));
+        assertTrue(rules.excludes("build/x.txt")
+                   && rules.excludes("src/build/y/z.txt"));
+        assertTrue(!rules.excludes("build") && rules.ignores("build", true));
+        assertTrue(rules.excludes("doc/a.tmp") && !rules.excludes("x/doc/a.tmp")
+                   && !rules.excludes("doc/d/a.tmp"));
+        assertTrue(rules.excludes("cache") && rules.excludes("a/cache/b"));
+        assertTrue(rules.excludes("src/gen") && rules.excludes("src/a/b/gen")
+                   && !rules.excludes("lib/gen"));
+        assertTrue(rules.excludes("q.bak") && !rules.excludes("qq.bak"));
+        assertTrue(rules.excludes("x7.txt") && !rules.excludes("xa.txt"));
+        assertTrue(!rules.excludes("a.txt") && !rules.excludes("logs/a"));
+        IgnoreRules brackets = new IgnoreRules("1:1", new String[] {
+            "[]", "[z-a]", "[a-]x", "[\\d]y", "[!.]z", "[]]w", "[^&&a]v" });
+        assertEquals(List.of("[z-a]"), brackets.invalid());
+        assertTrue(brackets.excludes("[]") && brackets.excludes("-x")
+                   && brackets.excludes("ax") && !brackets.excludes("bx"));
+        assertTrue(brackets.excludes("\\y") && brackets.excludes("dy")
+                   && !brackets.excludes("1y"));
+        assertTrue(brackets.excludes("az") && !brackets.excludes(".z"));
+        assertTrue(brackets.excludes("]w") && !brackets.excludes("&v")
+                   && !brackets.excludes("av") && brackets.excludes("bv"));
+
+        File work = Files.createTempDirectory("work").toFile();
+        File state = Utils.join(work, ".gitlet", "monitor");
+        Utils.writeContents(Utils.join(work, IgnoreRules.FILE_NAME),
+                            "*.log\nbuild/\n");
+        Utils.join(work, "build", "deep").mkdirs();
+        Utils.writeContents(Utils.join(work, "build", "deep", "a.txt"), "a");
+        Utils.writeContents(Utils.join(work, "run.log"), "log");
+        Utils.writeContents(Utils.join(work, "b.txt"), "b");
+        WorkingFiles files = new WorkingFiles(work, state);
+        assertEquals(List.of(".gitletignore", "b.txt"), files.list());
+        File cache = Utils.join(state, "ignore");
+        long written = cache.lastModified();
+        assertEquals(files.rules().stamp(), IgnoreRules.load(work, cache)
+                     .stamp());
+        assertEquals(written, cache.lastModified());
+        Utils.writeContents(Utils.join(work, IgnoreRules.FILE_NAME), "");
+        assertEquals(List.of(".gitletignore", "b.txt", "build/deep/a.txt",
+                             "run.log"), files.list());
+    }
+
+    @Test
+    public void writePipelinePublishesAndRecovers() throws IOException {
+        File dir = Files.createTempDirectory("pipeline").toFile();
+        ObjectDirectory objects = new ObjectDirectory(
+            Utils.join(dir, "objects"));
+        File head = Utils.join(dir, "pointers", "HEAD-commit.txt");
+        for (WritePipeline.Durability durability
+                 : WritePipeline.Durability.values()) {
+            WritePipeline writes = new WritePipeline(dir, durability);
+            for (int i = 0; i < 50; i += 1) {
+                String text = durability + " " + i;
+                writes.write(objects, Utils.sha1(text), text.getBytes());
+            }
+            writes.replace(head, durability.name());
+            writes.publish();
+            assertEquals(durability.name(), Utils.readContentsAsString(head));
+            for (int i = 0; i < 50; i += 1) {
+                String text = durability + " " + i;
+                assertEquals(text, Utils.readContentsAsString(
+                    objects.file(Utils.sha1(text))));
+            }
+            assertTrue(!Utils.join(dir, WritePipeline.JOURNAL).exists());
+        }
+
+        File journal = Utils.join(dir, WritePipeline.JOURNAL);
+        File branch = Utils.join(dir, "branches", "master.txt");
+        WritePipeline crashed = new WritePipeline(
+            dir, WritePipeline.Durability.NONE);
+        crashed.replace(head, "replayed");
+        crashed.replaceBranch("master", branch, "replayed");
+        byte[] record = crashed.record();
+        RepoLock lock = new RepoLock(dir);
+        lock.repository(true);
+        lock.head(false);
+        Utils.writeContents(journal, Arrays.copyOf(record,
+                                                   record.length - 1));
+        WritePipeline.recover(dir, lock);
+        assertTrue(!journal.exists() && !branch.exists());
+        assertEquals("ALWAYS", Utils.readContentsAsString(head));
+        Utils.writeContents(journal, record);
+        assertEquals("replayed", Worktrees.headCommit(dir));
+        WritePipeline.recover(dir, lock);
+        assertTrue(!journal.exists());
+        assertEquals("replayed", Utils.readContentsAsString(head));
+        assertEquals("replayed", Utils.readContentsAsString(branch));
+
+        crashed = new WritePipeline(dir, WritePipeline.Durability.NONE);
+        crashed.replace(head, "again");
+        crashed.replaceBranch("master", branch, "again");
+        record = crashed.record();
+        Utils.writeContents(branch, "moved");
+        Utils.writeContents(journal, record);
+        WritePipeline.recover(dir, lock);
+        assertEquals("again", Utils.readContentsAsString(head));
+        assertEquals("moved", Utils.readContentsAsString(branch));
+        lock.release();
+
+        File copy = Files.createTempDirectory("copy").toFile();
+        Utils.writeContents(Utils.join(copy, WritePipeline.JOURNAL), record);
+        RepoLock copyLock = new RepoLock(copy);
+        copyLock.repository(true);
+        copyLock.head(false);
+        WritePipeline.recover(copy, copyLock);
+        copyLock.release();
+        assertEquals("again", Utils.readContentsAsString(
+            Utils.join(copy, "pointers", "HEAD-commit.txt")));
+        assertEquals("moved", Utils.readContentsAsString(branch));
+    }
+
+    @Test
+    public void objectPrefixesAreHexAndUnique() throws IOException {
+        ObjectDirectory objects = new ObjectDirectory(
+            Files.createTempDirectory("objects").toFile());
+        String a = "534" + "0".repeat(37), b = "535" + "0".repeat(37);
+        for (String hash : List.of(a, b)) {
+            Utils.writeContents(objects.create(hash), hash);
+        }
+        assertEquals(a, objects.findPrefix("534"));
+        assertEquals(b, objects.findPrefix(b));
+        assertEquals(null, objects.findPrefix("53*"));
+        assertEquals(null, objects.findPrefix("53[4]"));
+        assertEquals(null, objects.findPrefix(""));
+        assertEquals(null, objects.findPrefix("6"));
+        for (String prefix : List.of("5", "53")) {
+            try {
+                objects.findPrefix(prefix);
+                assertTrue(false);
+            } catch (GitletException excp) {
+                assertEquals("Ambiguous object id " + prefix + ".",
+                             excp.getMessage());
+            }
+        }
+        for (String hash : List.of("x", "../" + a.substring(3), "A" + b)) {
+            try {
+                objects.file(hash);
+                assertTrue(false);
+            } catch (GitletException excp) {
+                assertTrue(excp.getMessage().startsWith("Bad object id"));
+            }
+        }
+    }
+}
@@ -13,11 +13,11 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Formatter;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Arrays;
 
@@ -35,27 +35,48 @@ class Utils {
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        MessageDigest md = newSha1();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else if (val instanceof String) {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            } else {
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            return result.toString();
+        }
+        return toHex(md.digest());
+    }
+
+    /** Returns a fresh SHA-1 message digest, for hashing data as it is
+     *  streamed rather than all at once. */
+    static MessageDigest newSha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns DIGEST as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] digest) {
+        Formatter result = new Formatter();
+        for (byte b : digest) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX. */
+    static byte[] fromHex(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(hex.substring(2 * i,
+                                                              2 * i + 2), 16);
+        }
+        return result;
+    }
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -156,6 +177,32 @@ class Utils {
         writeContents(file, serialize(obj));
     }
 
+    /** As for writeContents, but write a temporary file beside FILE and
+     *  rename it over FILE, so that readers of FILE see either its old or
+     *  its new contents, never part of either. */
+    static void replaceContents(File file, Object... contents) {
+        File temp;
+        try {
+            temp = File.createTempFile(file.getName(), ".tmp",
+                                       file.getAbsoluteFile().getParentFile());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            writeContents(temp, contents);
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | IllegalArgumentException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** As for writeObject, but replacing FILE as for replaceContents. */
+    static void replaceObject(File file, Serializable obj) {
+        replaceContents(file, serialize(obj));
+    }
+
     /* DIRECTORIES */
 
     /** Filter out all but plain files. */
@@ -235,18 +282,4 @@ class Utils {
         System.out.printf(msg, args);
         System.out.println();
     }
-
-    /**
-     * Shallow copy of a Hashmap.
-     * @param toBeCloned hashmap input
-     * @return hashmap clone
-     */
-    public static HashMap<String, byte[]>
-        cloneBlobHashmap(HashMap<String, byte[]> toBeCloned) {
-        HashMap<String, byte[]> returnedMap = new HashMap<>();
-        for (String key : toBeCloned.keySet()) {
-            returnedMap.put(key, toBeCloned.get(key));
-        }
-        return returnedMap;
-    }
 }
@@ -0,0 +1,165 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/** The paths of the plain files in the working directory and its
+ *  subdirectories, other than .gitlet directories and the paths
+ *  .gitletignore excludes, relative to the working directory and with
+ *  components separated by "/".  Ignored directories are never entered.
+ *  With no
+ *  FileMonitor running, the directory is walked.  With one, the paths
+ *  found last time are kept in the state directory along with the
+ *  monitor's token, and only the paths the monitor reports changed since
+ *  are looked at; when it cannot say, the directory is walked again.
+ *  @author Ethan Herrera
+ */
+class WorkingFiles {
+
+    /** The files in WORKDIR, with monitor state kept in STATEDIR. */
+    WorkingFiles(File workDir, File stateDir) {
+        _workDir = workDir;
+        _stateDir = stateDir;
+        _stateFile = Utils.join(stateDir, "files");
+    }
+
+    /** Return the ignore rules of the working directory, compiled or
+     *  taken from the cache in the state directory. */
+    IgnoreRules rules() {
+        return IgnoreRules.load(_workDir, Utils.join(_stateDir, "ignore"));
+    }
+
+    /** Return the paths of the plain files in the working directory, in
+     *  order. */
+    List<String> list() {
+        File portFile = FileMonitor.portFile(_stateDir);
+        IgnoreRules rules = rules();
+        if (!portFile.isFile()) {
+            _stateFile.delete();
+            return new ArrayList<>(walk(_workDir, rules));
+        }
+        String token = "none";
+        TreeSet<String> names = new TreeSet<>();
+        if (_stateFile.isFile()) {
+            String[] lines = Utils.readContentsAsString(_stateFile)
+                .split("\n");
+            String[] header = lines[0].split(" ");
+            if (header.length == 2 && header[1].equals(rules.stamp())) {
+                token = header[0];
+                names.addAll(Arrays.asList(lines).subList(1, lines.length));
+            }
+        }
+        List<String> changed = query(portFile, token);
+        if (changed == null) {
+            _stateFile.delete();
+            return new ArrayList<>(walk(_workDir, rules));
+        }
+        String newToken = changed.remove(0);
+        if (changed.get(0).equals("full")) {
+            names = walk(_workDir, rules);
+        } else {
+            for (String name : changed.subList(1, changed.size())) {
+                names.remove(name);
+                names.subSet(name + "/", name + "0").clear();
+                File file = Utils.join(_workDir, name);
+                if (rules.excludes(name)) {
+                    continue;
+                } else if (file.isFile()) {
+                    names.add(name);
+                } else if (file.isDirectory()
+                           && !rules.ignores(name, true)) {
+                    walk(file, name + "/", rules, names);
+                }
+            }
+        }
+        StringBuilder state = new StringBuilder(newToken).append(' ')
+            .append(rules.stamp());
+        for (String name : names) {
+            state.append("\n").append(name);
+        }
+        Utils.writeContents(_stateFile, state.toString());
+        return new ArrayList<>(names);
+    }
+
+    /** Return the paths of the plain files beneath the working directory
+     *  DIR, relative to DIR, skipping .gitlet directories and the paths
+     *  RULES exclude. */
+    static TreeSet<String> walk(File dir, IgnoreRules rules) {
+        TreeSet<String> result = new TreeSet<>();
+        walk(dir, "", rules, result);
+        return result;
+    }
+
+    /** Add the paths of the plain files beneath DIR, whose path is PREFIX,
+     *  to RESULT, skipping .gitlet directories and the paths RULES
+     *  exclude.  Directories RULES ignore are not entered. */
+    private static void walk(File dir, String prefix, IgnoreRules rules,
+                             TreeSet<String> result) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String path = prefix + file.getName();
+            if (file.isFile()) {
+                if (!rules.ignores(path, false)) {
+                    result.add(path);
+                }
+            } else if (file.isDirectory()
+                       && !file.getName().equals(".gitlet")
+                       && !rules.ignores(path, true)) {
+                walk(file, path + "/", rules, result);
+            }
+        }
+    }
+
+    /** Ask the monitor listening where PORTFILE says for the changes
+     *  since TOKEN.  Returns the new token, then "full" or "changed",
+     *  then the names of changed files; or null if the monitor cannot be
+     *  reached. */
+    private List<String> query(File portFile, String token) {
+        String[] port = Utils.readContentsAsString(portFile).split(" ");
+        File cookie = Utils.join(_stateDir, FileMonitor.COOKIE
+            + Long.toHexString(new SecureRandom().nextLong()));
+        try {
+            Utils.writeContents(cookie, "");
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                            Integer.parseInt(port[0]))) {
+                PrintWriter out = new PrintWriter(socket.getOutputStream(),
+                                                  true,
+                                                  StandardCharsets.UTF_8);
+                out.println("query " + token + " " + cookie.getName());
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.UTF_8));
+                ArrayList<String> result = new ArrayList<>();
+                for (String line = in.readLine(); line != null;
+                     line = in.readLine()) {
+                    result.add(line);
+                }
+                return result.size() >= 2 ? result : null;
+            }
+        } catch (IOException | NumberFormatException excp) {
+            return null;
+        } finally {
+            cookie.delete();
+        }
+    }
+
+    /** The working directory. */
+    private final File _workDir;
+    /** Where monitor state is kept. */
+    private final File _stateDir;
+    /** The names found last time, after the monitor's token. */
+    private final File _stateFile;
+}
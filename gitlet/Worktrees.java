@@ -0,0 +1,157 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** The worktrees of a repository.  The main worktree's .gitlet directory
+ *  holds everything shared: commits, blobs, branches and remotes.  A
+ *  linked worktree, made by "worktree add", has a .gitlet directory of
+ *  its own holding only its head pointers, its stage and its other
+ *  per-worktree state, and a file "commondir" naming the main .gitlet
+ *  directory.  The main directory records each linked worktree's .gitlet
+ *  directory in worktrees/NAME.txt.  A branch is checked out in at most
+ *  one worktree, so each branch has one head to keep in step with it.
+ *  @author Ethan Herrera
+ */
+class Worktrees {
+
+    /** Name of the file in a linked worktree's .gitlet directory naming
+     *  the main .gitlet directory. */
+    static final String COMMONDIR = "commondir";
+
+    /** The worktrees of the repository whose main .gitlet directory is
+     *  COMMONDIR. */
+    Worktrees(File commonDir) {
+        _dir = commonDir;
+        _registry = Utils.join(commonDir, "worktrees");
+        _refs = new Refs(commonDir);
+    }
+
+    /** Return the main .gitlet directory of the worktree whose .gitlet
+     *  directory is DIR. */
+    static File commonDir(File dir) {
+        File link = Utils.join(dir, COMMONDIR);
+        if (!link.isFile()) {
+            return dir;
+        }
+        return new File(Utils.readContentsAsString(link));
+    }
+
+    /** Return the .gitlet directories of all worktrees, the main one
+     *  first.  Linked worktrees that have been deleted are left out. */
+    List<File> all() {
+        ArrayList<File> result = new ArrayList<>();
+        result.add(_dir);
+        List<String> names = Utils.plainFilenamesIn(_registry);
+        if (names != null) {
+            for (String name : names) {
+                if (!name.endsWith(".txt")) {
+                    continue;
+                }
+                File dir = new File(Utils.readContentsAsString(
+                    Utils.join(_registry, name)));
+                if (dir.isDirectory()) {
+                    result.add(dir);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the current branch of the worktree whose .gitlet directory
+     *  is DIR, or "" if it has none yet.  Updates published to its
+     *  journal but not yet applied are seen. */
+    static String headBranch(File dir) {
+        File file = Utils.join(dir, "pointers", "HEAD-branch.txt");
+        String published = WritePipeline.published(dir, file);
+        if (published != null) {
+            return published;
+        }
+        return file.isFile() ? Utils.readContentsAsString(file) : "";
+    }
+
+    /** Return the head commit of the worktree whose .gitlet directory is
+     *  DIR, seeing updates published to its journal. */
+    static String headCommit(File dir) {
+        File file = Utils.join(dir, "pointers", "HEAD-commit.txt");
+        String published = WritePipeline.published(dir, file);
+        return published != null ? published
+            : Utils.readContentsAsString(file);
+    }
+
+    /** Return the stage of the worktree whose .gitlet directory is
+     *  DIR. */
+    static StagingArea stage(File dir) {
+        return Utils.readObject(
+            Utils.join(dir, "staging-area", "stage.txt"), StagingArea.class);
+    }
+
+    /** Return the .gitlet directory of a worktree other than the one
+     *  whose .gitlet directory is SELF that has BRANCH checked out, or
+     *  null if there is none. */
+    File checkedOut(String branch, File self) {
+        String me = canonical(self);
+        for (File dir : all()) {
+            if (!canonical(dir).equals(me)
+                && headBranch(dir).equals(branch)) {
+                return dir;
+            }
+        }
+        return null;
+    }
+
+    /** Point BRANCH at COMMIT, creating it if need be, and move the head
+     *  of the worktree that has it checked out, if any. */
+    void setBranch(String branch, String commit) {
+        _refs.set(branch, commit);
+        for (File dir : all()) {
+            if (headBranch(dir).equals(branch)) {
+                Utils.replaceContents(
+                    Utils.join(dir, "pointers", "HEAD-commit.txt"), commit);
+            }
+        }
+    }
+
+    /** Make DIR the .gitlet directory of a new linked worktree with
+     *  BRANCH, whose head is COMMIT, checked out and nothing staged. */
+    void add(File dir, String branch, String commit) {
+        Utils.join(dir, "pointers").mkdirs();
+        Utils.join(dir, "staging-area").mkdirs();
+        Utils.writeContents(Utils.join(dir, COMMONDIR), canonical(_dir));
+        Utils.writeContents(Utils.join(dir, "pointers", "HEAD-branch.txt"),
+                            branch);
+        Utils.writeContents(Utils.join(dir, "pointers", "HEAD-commit.txt"),
+                            commit);
+        Utils.writeObject(Utils.join(dir, "staging-area", "stage.txt"),
+                          new StagingArea());
+        _registry.mkdirs();
+        String base = dir.getAbsoluteFile().getParentFile().getName();
+        File entry = Utils.join(_registry, base + ".txt");
+        try {
+            for (int i = 2; !entry.createNewFile(); i += 1) {
+                entry = Utils.join(_registry, base + "-" + i + ".txt");
+            }
+        } catch (IOException excp) {
+            throw Utils.error("Cannot record worktree %s.", base);
+        }
+        Utils.replaceContents(entry, canonical(dir));
+    }
+
+    /** Return the canonical path of DIR. */
+    private static String canonical(File dir) {
+        try {
+            return dir.getCanonicalPath();
+        } catch (IOException excp) {
+            return dir.getAbsolutePath();
+        }
+    }
+
+    /** The main .gitlet directory. */
+    private final File _dir;
+    /** Where linked worktrees are recorded. */
+    private final File _registry;
+    /** The branches. */
+    private final Refs _refs;
+}
@@ -0,0 +1,528 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/** The writes of one command that makes commits.  New objects are
+ *  written in the background, on a small pool of threads, while the
+ *  command goes on computing; updates to the head pointers, branches and
+ *  stage are queued.  Publishing waits for the objects, then writes the
+ *  queued updates as one journal record, renamed into place, and only
+ *  then applies them file by file and deletes the record.  Renaming the
+ *  record into place publishes every update at once: a command that dies
+ *  before then has published nothing, and one that dies part way through
+ *  applying leaves the record behind for the next command on that
+ *  worktree to replay, before it reads the head or branches.  A branch is
+ *  replayed only if no other command has moved it since, so a stale
+ *  record never undoes a later update.  Readers that take no locks see
+ *  the record's updates through published().
+ *
+ *  How much is forced to disk is set per repository by its Durability.
+ *  With NONE nothing is; with ALWAYS every file and directory is synced
+ *  as it is written; with BATCHED, the default, the objects are synced
+ *  together once all are written, before the record that refers to
+ *  them, and the applied files together before the record is deleted,
+ *  so a commit costs three rounds of syncs however many files it
+ *  writes.
+ *  @author Ethan Herrera
+ */
+class WritePipeline {
+
+    /** How much of what is written is forced to disk. */
+    enum Durability {
+        /** Nothing is synced. */
+        NONE,
+        /** Files are synced in groups, at each step of publishing. */
+        BATCHED,
+        /** Every file is synced as it is written. */
+        ALWAYS;
+
+        /** Return the durability of the repository whose main .gitlet
+         *  directory is DIR: BATCHED unless set otherwise. */
+        static Durability of(File dir) {
+            File file = Utils.join(dir, FILE_NAME);
+            if (!file.isFile()) {
+                return BATCHED;
+            }
+            Durability result = parse(Utils.readContentsAsString(file));
+            return result == null ? BATCHED : result;
+        }
+
+        /** Return the durability named NAME, in either case, or null if
+         *  there is none. */
+        static Durability parse(String name) {
+            for (Durability durability : values()) {
+                if (durability.name().equalsIgnoreCase(name.trim())) {
+                    return durability;
+                }
+            }
+            return null;
+        }
+
+        /** Make this the durability of the repository whose main .gitlet
+         *  directory is DIR. */
+        void set(File dir) {
+            Utils.replaceContents(Utils.join(dir, FILE_NAME),
+                                  name().toLowerCase());
+        }
+
+        /** Name of the file recording a repository's durability. */
+        private static final String FILE_NAME = "durability";
+    }
+
+    /** Name of the journal file. */
+    static final String JOURNAL = "journal";
+    /** Number of threads writing objects. */
+    static final int THREADS = 4;
+
+    /** One queued update: a file and its new contents.  The file is named
+     *  by its path, with components separated by "/", relative to the
+     *  .gitlet directory holding the journal or, for a branch, to the main
+     *  .gitlet directory, so that a repository copied whole replays into
+     *  the copy.  A branch update also records the branch and what its
+     *  file held when queued, null if it did not exist. */
+    private static final class Update {
+        /** An update of the file at PATH to CONTENTS; of BRANCH's file,
+         *  which held EXPECTED, unless BRANCH is null. */
+        Update(String branch, String path, byte[] expected,
+               byte[] contents) {
+            _branch = branch;
+            _path = path;
+            _expected = expected;
+            _contents = contents;
+        }
+
+        /** Return the file updated, for a journal kept in DIR. */
+        File file(File dir) {
+            return Utils.join(_branch == null ? dir
+                              : Worktrees.commonDir(dir), _path);
+        }
+
+        /** Return true iff replaying this update, for a journal kept in
+         *  DIR, is sound: it is not of a branch, or the branch's file
+         *  still holds what it held when queued, or the new contents
+         *  already.  A branch that has moved since is left alone. */
+        boolean applies(File dir) {
+            if (_branch == null) {
+                return true;
+            }
+            File file = file(dir);
+            byte[] current = file.isFile() ? Utils.readContents(file) : null;
+            return Arrays.equals(current, _expected)
+                || Arrays.equals(current, _contents);
+        }
+
+        /** The branch updated, or null. */
+        private final String _branch;
+        /** Path of the file updated. */
+        private final String _path;
+        /** What a branch's file held when queued, or null. */
+        private final byte[] _expected;
+        /** New contents. */
+        private final byte[] _contents;
+    }
+
+    /** A pipeline whose journal is kept in the .gitlet directory DIR,
+     *  syncing as DURABILITY says. */
+    WritePipeline(File dir, Durability durability) {
+        _dir = dir;
+        _journal = Utils.join(dir, JOURNAL);
+        _durability = durability;
+    }
+
+    /** Write CONTENTS in the background as the object with sha1 HASH in
+     *  OBJECTS. */
+    void write(ObjectDirectory objects, String hash, byte[] contents) {
+        _objects.add(POOL.submit(() -> {
+            File temp = objects.createTemp();
+            try {
+                writeFile(temp, contents, _durability == Durability.ALWAYS);
+            } catch (IOException excp) {
+                temp.delete();
+                throw Utils.error("Cannot store object %s.", hash);
+            }
+            objects.install(temp, hash);
+            File result = objects.file(hash);
+            if (_durability == Durability.ALWAYS) {
+                syncDirectory(result.getParentFile());
+            }
+            return result;
+        }));
+    }
+
+    /** Queue replacing FILE, which must lie in the .gitlet directory of
+     *  this pipeline, with CONTENTS when published.  A later update of
+     *  the same file replaces an earlier one. */
+    void replace(File file, String contents) {
+        replace(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Queue replacing FILE with CONTENTS when published. */
+    void replace(File file, byte[] contents) {
+        _updates.put(file.getAbsoluteFile(),
+                     new Update(null, relative(_dir, file), null, contents));
+    }
+
+    /** Queue pointing BRANCH, whose file is FILE in the main .gitlet
+     *  directory, at COMMIT when published.  The caller must hold
+     *  BRANCH's stripe. */
+    void replaceBranch(String branch, File file, String commit) {
+        Update queued = _updates.get(file.getAbsoluteFile());
+        byte[] expected = queued != null ? queued._expected
+            : file.isFile() ? Utils.readContents(file) : null;
+        _updates.put(file.getAbsoluteFile(), new Update(
+            branch, relative(Worktrees.commonDir(_dir), file), expected,
+            commit.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Wait for the objects written, then publish the queued updates as
+     *  described above.  The pipeline may be used again afterward. */
+    void publish() {
+        ArrayList<File> objects = new ArrayList<>();
+        for (Future<File> object : _objects) {
+            objects.add(await(object));
+        }
+        _objects.clear();
+        if (_durability == Durability.BATCHED) {
+            syncAll(objects);
+        }
+        if (_updates.isEmpty()) {
+            return;
+        }
+        try {
+            File temp = Utils.join(_dir, JOURNAL + ".tmp");
+            writeFile(temp, record(), _durability != Durability.NONE);
+            Files.move(temp.toPath(), _journal.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot write the journal.");
+        }
+        if (_durability != Durability.NONE) {
+            syncDirectory(_dir);
+        }
+        apply(_dir, _updates.values(), _durability);
+        _updates.clear();
+        _journal.delete();
+    }
+
+    /** Return the journal record of the updates queued: a count, then
+     *  each update, then a checksum of all that. */
+    byte[] record() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(_updates.size());
+            for (Update update : _updates.values()) {
+                out.writeBoolean(update._branch != null);
+                if (update._branch != null) {
+                    out.writeUTF(update._branch);
+                    out.writeBoolean(update._expected != null);
+                    if (update._expected != null) {
+                        writeBytes(out, update._expected);
+                    }
+                }
+                out.writeUTF(update._path);
+                writeBytes(out, update._contents);
+            }
+        } catch (IOException excp) {
+            throw new AssertionError(excp);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        ByteBuffer result = ByteBuffer.allocate(bytes.size() + Long.BYTES);
+        return result.put(bytes.toByteArray()).putLong(crc.getValue())
+            .array();
+    }
+
+    /** Return true iff the .gitlet directory DIR holds a journal record,
+     *  left by a command that did not finish publishing or being
+     *  written by one that has not yet. */
+    static boolean pending(File dir) {
+        return Utils.join(dir, JOURNAL).isFile();
+    }
+
+    /** Replay the journal left in the .gitlet directory DIR by a command
+     *  that did not finish publishing, if there is one, and delete it.  A
+     *  record that is incomplete was never published, and is dropped.
+     *  Branches are updated holding their stripes, and only if they have
+     *  not moved since.  The caller must hold, in LOCK, the head of DIR's
+     *  worktree exclusive and no stripes; it holds none afterward. */
+    static void recover(File dir, RepoLock lock) {
+        File journal = Utils.join(dir, JOURNAL);
+        if (!journal.isFile()) {
+            return;
+        }
+        List<Update> updates = decode(Utils.readContents(journal));
+        if (updates != null) {
+            ArrayList<String> branches = new ArrayList<>();
+            for (Update update : updates) {
+                if (update._branch != null) {
+                    branches.add(update._branch);
+                }
+            }
+            lock.branches(branches);
+            try {
+                ArrayList<Update> sound = new ArrayList<>();
+                for (Update update : updates) {
+                    if (update.applies(dir)) {
+                        sound.add(update);
+                    }
+                }
+                apply(dir, sound, Durability.of(Worktrees.commonDir(dir)));
+            } finally {
+                lock.releaseBranches();
+            }
+        }
+        journal.delete();
+    }
+
+    /** Return the contents FILE has once the journal in the .gitlet
+     *  directory DIR, if any, is replayed, or null if it does not update
+     *  FILE.  Readers that take no locks use this to see the updates of
+     *  a command from the moment they are published. */
+    static String published(File dir, File file) {
+        File journal = Utils.join(dir, JOURNAL);
+        if (!journal.isFile()) {
+            return null;
+        }
+        List<Update> updates;
+        try {
+            updates = decode(Utils.readContents(journal));
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+        if (updates == null) {
+            return null;
+        }
+        File target = file.getAbsoluteFile();
+        for (Update update : updates) {
+            if (update.file(dir).getAbsoluteFile().equals(target)
+                && update.applies(dir)) {
+                return new String(update._contents, StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /** Replace the file of each of UPDATES, for a journal kept in DIR,
+     *  with its contents, syncing as DURABILITY says. */
+    private static void apply(File dir, Collection<Update> updates,
+                              Durability durability) {
+        boolean always = durability == Durability.ALWAYS;
+        ArrayList<File> files = new ArrayList<>();
+        for (Update update : updates) {
+            File file = update.file(dir);
+            files.add(file);
+            file.getParentFile().mkdirs();
+            try {
+                File temp = File.createTempFile(file.getName(), ".tmp",
+                                                file.getParentFile());
+                try {
+                    writeFile(temp, update._contents, always);
+                    Files.move(temp.toPath(), file.toPath(),
+                               StandardCopyOption.REPLACE_EXISTING,
+                               StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    temp.delete();
+                }
+            } catch (IOException excp) {
+                throw Utils.error("Cannot write %s.", file.getName());
+            }
+            if (always) {
+                syncDirectory(file.getParentFile());
+            }
+        }
+        if (durability == Durability.BATCHED) {
+            syncAll(files);
+        }
+    }
+
+    /** Return the path of FILE relative to the directory DIR, with
+     *  components separated by "/".  FILE must lie in DIR. */
+    private static String relative(File dir, File file) {
+        Path base = dir.getAbsoluteFile().toPath().normalize();
+        Path path = file.getAbsoluteFile().toPath().normalize();
+        if (!path.startsWith(base) || path.equals(base)) {
+            throw Utils.error("Cannot journal %s.", file.getName());
+        }
+        return base.relativize(path).toString()
+            .replace(File.separatorChar, '/');
+    }
+
+    /** Return the updates in the journal record RECORD, or null if it is
+     *  incomplete or damaged. */
+    private static List<Update> decode(byte[] record) {
+        if (record.length < Integer.BYTES + Long.BYTES) {
+            return null;
+        }
+        int length = record.length - Long.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, length);
+        if (crc.getValue() != ByteBuffer.wrap(record, length, Long.BYTES)
+            .getLong()) {
+            return null;
+        }
+        ArrayList<Update> result = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(record, 0, length))) {
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                String branch = null;
+                byte[] expected = null;
+                if (in.readBoolean()) {
+                    branch = in.readUTF();
+                    expected = in.readBoolean() ? readBytes(in) : null;
+                }
+                String path = in.readUTF();
+                if (!isRelative(path)) {
+                    return null;
+                }
+                result.add(new Update(branch, path, expected,
+                                      readBytes(in)));
+            }
+        } catch (IOException excp) {
+            return null;
+        }
+        return result;
+    }
+
+    /** Return true iff PATH names a file beneath a directory: it is not
+     *  absolute and has no empty, "." or ".." components. */
+    private static boolean isRelative(String path) {
+        for (String name : path.split("/", -1)) {
+            if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Write the length of BYTES, then BYTES, to OUT. */
+    private static void writeBytes(DataOutputStream out, byte[] bytes)
+        throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Return the bytes next in IN, preceded by their length. */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return result;
+    }
+
+    /** Write CONTENTS to FILE, replacing what was there, and force them
+     *  to disk if SYNC. */
+    private static void writeFile(File file, byte[] contents, boolean sync)
+        throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(true);
+            }
+        }
+    }
+
+    /** Force FILES, and the directories holding them, to disk, all at
+     *  once on the pool. */
+    private static void syncAll(Iterable<File> files) {
+        LinkedHashSet<File> dirs = new LinkedHashSet<>();
+        ArrayList<Future<File>> syncs = new ArrayList<>();
+        for (File file : files) {
+            dirs.add(file.getParentFile());
+            syncs.add(POOL.submit(() -> {
+                sync(file, StandardOpenOption.WRITE);
+                return file;
+            }));
+        }
+        for (File dir : dirs) {
+            syncs.add(POOL.submit(() -> {
+                syncDirectory(dir);
+                return dir;
+            }));
+        }
+        for (Future<File> sync : syncs) {
+            await(sync);
+        }
+    }
+
+    /** Force the entries of DIR to disk, where the platform allows. */
+    private static void syncDirectory(File dir) {
+        try {
+            sync(dir, StandardOpenOption.READ);
+        } catch (GitletException excp) {
+            return;
+        }
+    }
+
+    /** Force FILE, opened with OPTION, to disk. */
+    private static void sync(File file, StandardOpenOption option) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), option)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            throw Utils.error("Cannot sync %s.", file.getName());
+        }
+    }
+
+    /** Return the result of TASK once it is done, rethrowing what it
+     *  threw. */
+    private static File await(Future<File> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw Utils.error("%s", excp.getCause().getMessage());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw Utils.error("Interrupted.");
+        }
+    }
+
+    /** Threads writing and syncing objects, shared by all pipelines. */
+    private static final ExecutorService POOL =
+        Executors.newFixedThreadPool(THREADS, task -> {
+            Thread thread = new Thread(task, "gitlet-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /** The .gitlet directory holding the journal. */
+    private final File _dir;
+    /** The journal file. */
+    private final File _journal;
+    /** How much is synced. */
+    private final Durability _durability;
+    /** Objects being written, each yielding its file. */
+    private final List<Future<File>> _objects = new ArrayList<>();
+    /** Updates queued, by file, in order. */
+    private final LinkedHashMap<File, Update> _updates =
+        new LinkedHashMap<>();
+}
@@ -0,0 +1,175 @@
+import sys
+from subprocess import run, DEVNULL
+from getopt import getopt, GetoptError
+from os import chdir
+from os.path import abspath, exists, isfile, join
+from shutil import rmtree
+from statistics import median
+from tempfile import mkdtemp
+from time import perf_counter
+
+USAGE = """\
+Usage: python3 startup.py OPTIONS
+
+   OPTIONS may include
+       --progdir=DIR   Directory or JAR file containing gitlet application
+                       (default "..").
+       --train=FILE    Run the command mix once per command, recording the
+                       classes each loads, and dump an application
+                       class-data-sharing archive of them all into FILE.
+       --archive=FILE  Time each command of the mix without and with the
+                       archive FILE, as made by --train.
+       --runs=N        Number of timed runs of each command (default 10).
+
+Without --archive or --train, times each command without an archive.
+Each command runs in a fresh JVM in a scratch repository, so the times
+are cold starts: JVM startup, class loading and the command's own work.
+Class-data sharing archives only classes loaded from JAR files, so
+--train and --archive need --progdir to name a JAR file, as made by
+"make jar", and the archive must be used with that same class path.
+"""
+
+# The representative command mix: SETUP builds the scratch repository
+# and MIX is run against it.  Each command in MIX leaves the repository
+# as it found it, so it can be repeated.
+SETUP = [
+    ["init"],
+    ["add", "f.txt"],
+    ["commit", "Add f"],
+    ["branch", "other"],
+    ["checkout", "other"],
+    ["add", "g.txt"],
+    ["commit", "Add g"],
+    ["checkout", "master"],
+]
+
+MIX = [
+    ["status"],
+    ["log"],
+    ["global-log"],
+    ["find", "Add f"],
+    ["add", "f.txt"],
+    ["add", "nosuch.txt"],
+    ["branch", "scratch"],
+    ["rm-branch", "scratch"],
+    ["checkout", "--", "f.txt"],
+    ["diff", "master", "other"],
+    ["fsck", "--quick"],
+]
+
+def java(progdir, args, options=[], check=False):
+    """Run gitlet.Main ARGS in a fresh JVM with extra JVM OPTIONS."""
+    result = run(["java"] + options + ["-cp", progdir, "gitlet.Main"] + args,
+                 stdout=DEVNULL, stderr=DEVNULL)
+    if check and result.returncode != 0:
+        raise RuntimeError("gitlet " + " ".join(args) + " failed")
+
+def scratch(progdir):
+    """Make and enter a scratch directory holding a small repository,
+    returning its name."""
+    dir = mkdtemp(prefix="gitlet-startup-")
+    chdir(dir)
+    for name, text in (("f.txt", "This is a wug.\n"),
+                       ("g.txt", "This is not a wug.\n")):
+        with open(name, "w") as out:
+            out.write(text)
+    for args in SETUP:
+        java(progdir, args, check=True)
+    return dir
+
+def train(progdir, archive):
+    """Dump into ARCHIVE the classes loaded by every command of the
+    mix, the setup commands included."""
+    lists = mkdtemp(prefix="gitlet-classes-")
+    dir = mkdtemp(prefix="gitlet-startup-")
+    chdir(dir)
+    for name in ("f.txt", "g.txt"):
+        with open(name, "w") as out:
+            out.write(name + "\n")
+    classes = []
+    for i, args in enumerate(SETUP + MIX):
+        classlist = join(lists, "%d.lst" % i)
+        java(progdir, args, ["-XX:DumpLoadedClassList=" + classlist])
+        with open(classlist) as inp:
+            for line in inp:
+                if line not in classes:
+                    classes.append(line)
+    classlist = join(lists, "all.lst")
+    with open(classlist, "w") as out:
+        out.writelines(classes)
+    result = run(["java", "-Xshare:dump",
+                  "-XX:SharedClassListFile=" + classlist,
+                  "-XX:SharedArchiveFile=" + archive,
+                  "-cp", progdir], stdout=DEVNULL)
+    chdir("/")
+    rmtree(dir)
+    rmtree(lists)
+    if result.returncode != 0:
+        raise RuntimeError("could not dump " + archive)
+    print("Wrote %s (%d classes)." % (archive, len(classes)))
+
+def time(progdir, args, options, runs):
+    """Return the median time in milliseconds of RUNS runs of ARGS."""
+    times = []
+    for _ in range(runs):
+        start = perf_counter()
+        java(progdir, args, options)
+        times.append((perf_counter() - start) * 1000)
+    return median(times)
+
+def bench(progdir, archive, runs):
+    """Print the median cold-start time of each command of the mix, with
+    and without ARCHIVE if it is not None."""
+    dir = scratch(progdir)
+    configs = [("default", [])]
+    if archive is not None:
+        configs = [("no CDS", ["-Xshare:off"]),
+                   ("default", []),
+                   ("AppCDS", ["-XX:SharedArchiveFile=" + archive])]
+    print("%-22s" % "command"
+          + "".join("%12s" % name for name, _ in configs))
+    totals = [0.0] * len(configs)
+    for args in MIX:
+        line = "%-22s" % " ".join(args)
+        for i, (_, options) in enumerate(configs):
+            ms = time(progdir, args, options, runs)
+            totals[i] += ms
+            line += "%10.1fms" % ms
+        print(line)
+    print("%-22s" % "total" + "".join("%10.1fms" % t for t in totals))
+    chdir("/")
+    rmtree(dir)
+
+if __name__ == "__main__":
+    try:
+        opts, args = getopt(sys.argv[1:], '',
+                            ['progdir=', 'train=', 'archive=', 'runs='])
+        if args:
+            raise GetoptError("unexpected operand")
+    except GetoptError:
+        print(USAGE, file=sys.stderr)
+        sys.exit(1)
+    progdir = abspath("..")
+    trainTo = archive = None
+    runs = 10
+    for opt, val in opts:
+        if opt == '--progdir':
+            progdir = abspath(val)
+        elif opt == '--train':
+            trainTo = abspath(val)
+        elif opt == '--archive':
+            archive = abspath(val)
+        elif opt == '--runs':
+            runs = int(val)
+    if (trainTo is not None or archive is not None) and not isfile(progdir):
+        print("Class-data sharing needs a JAR file; see 'make jar'.",
+              file=sys.stderr)
+        sys.exit(1)
+    if trainTo is not None:
+        train(progdir, trainTo)
+    else:
+        if archive is not None and not exists(archive):
+            print("No archive %s; make it with --train." % archive,
+                  file=sys.stderr)
+            sys.exit(1)
+        bench(progdir, archive, runs)